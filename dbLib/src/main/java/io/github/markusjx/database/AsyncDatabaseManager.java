@@ -0,0 +1,400 @@
+package io.github.markusjx.database;
+
+import io.github.markusjx.database.filter.DocumentFilter;
+import io.github.markusjx.database.types.Directory;
+import io.github.markusjx.database.types.Document;
+import io.github.markusjx.database.types.Property;
+import io.github.markusjx.database.types.PropertyValue;
+import io.github.markusjx.database.types.Tag;
+import io.github.markusjx.datatypes.DocumentPage;
+import io.github.markusjx.datatypes.DocumentSearchPage;
+import io.github.markusjx.datatypes.DocumentSearchResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * An asynchronous facade for a {@link DatabaseManager}.
+ * All operations run on a dedicated executor with a bounded queue and
+ * return {@link CompletableFuture}s, so callers like the ui are never
+ * blocked by long running operations. If the queue is full, the returned
+ * future fails with a {@link RejectedExecutionException}. Identical read
+ * operations which are requested while the same read is still running are
+ * coalesced into a single execution, all callers receive the same result.
+ */
+public class AsyncDatabaseManager implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncDatabaseManager.class);
+
+    /**
+     * The default number of operations to run in parallel
+     */
+    public static final int DEFAULT_THREADS = 4;
+
+    /**
+     * The default maximum number of operations waiting to be run
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * The database manager to run the operations on
+     */
+    private final DatabaseManager manager;
+
+    /**
+     * The executor to run the operations on
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The running read operations by their operation name and arguments
+     */
+    private final Map<List<?>, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new asynchronous database manager
+     * using the default number of threads and queue capacity
+     *
+     * @param manager the database manager to run the operations on
+     */
+    public AsyncDatabaseManager(DatabaseManager manager) {
+        this(manager, DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Create a new asynchronous database manager
+     *
+     * @param manager       the database manager to run the operations on
+     * @param threads       the number of operations to run in parallel
+     * @param queueCapacity the maximum number of operations waiting to be run
+     */
+    public AsyncDatabaseManager(DatabaseManager manager, int threads, int queueCapacity) {
+        Objects.requireNonNull(manager);
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of threads must be greater than zero");
+        } else if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("The queue capacity must be greater than zero");
+        }
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "AsyncDatabaseManager-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        this.manager = manager;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory);
+    }
+
+    /**
+     * Run an operation on the executor
+     *
+     * @param operation the operation to run
+     * @param <T>       the result type
+     * @return the future completed with the result of the operation
+     */
+    public <T> CompletableFuture<T> submit(Function<DatabaseManager, T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(operation.apply(manager));
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("Could not submit an operation, the queue is full");
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    /**
+     * Run a read operation on the executor. If an operation with the same key is
+     * already running, no new operation is started and the result of the running
+     * one is returned instead. The operation must not modify the database.
+     *
+     * @param key       the key identifying the operation and its arguments
+     * @param operation the operation to run
+     * @param <T>       the result type
+     * @return the future completed with the result of the operation
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> read(List<?> key, Function<DatabaseManager, T> operation) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final CompletableFuture<?> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            logger.debug("Coalescing the read operation {}", key);
+            return ((CompletableFuture<T>) running).copy();
+        }
+
+        submit(operation).whenComplete((result, error) -> {
+            // Remove the operation before completing it, so callers
+            // reacting to the result will start a new operation
+            inFlight.remove(key, future);
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        });
+
+        // Return a copy, so callers can't complete the shared future
+        return future.copy();
+    }
+
+    /**
+     * Run a read operation using a {@link DocumentFilter}. Filters are mutable and
+     * don't implement equals, so the operation is run with a copy of the filter and
+     * keyed by the cache key of the filter at the time of the call. Operations using
+     * filters which can't be cached are never coalesced.
+     *
+     * @param name      the name of the operation
+     * @param filter    the filter used by the operation
+     * @param arguments the other arguments of the operation
+     * @param operation the operation to run, called with the copy of the filter
+     * @param <T>       the result type
+     * @return the future completed with the result of the operation
+     */
+    private <T> CompletableFuture<T> readFiltered(String name, DocumentFilter filter, List<?> arguments,
+                                                  BiFunction<DatabaseManager, DocumentFilter, T> operation) {
+        final DocumentFilter snapshot = new DocumentFilter(filter);
+        final List<Object> filterKey = snapshot.getCacheKey();
+        if (filterKey == null) {
+            return submit(m -> operation.apply(m, snapshot));
+        }
+
+        final List<Object> key = new ArrayList<>(arguments.size() + 2);
+        key.add(name);
+        key.add(filterKey);
+        key.addAll(arguments);
+        return read(key, m -> operation.apply(m, snapshot));
+    }
+
+    /**
+     * Get all tags like a name
+     *
+     * @param name the name of the tag
+     * @return the future completed with the tags similar to the name
+     */
+    public CompletableFuture<List<Tag>> getTagsLike(String name) {
+        return read(Arrays.asList("getTagsLike", name), m -> m.getTagsLike(name));
+    }
+
+    /**
+     * Get all properties like a name
+     *
+     * @param name the name of the property to search for
+     * @return the future completed with the properties similar to the name
+     */
+    public CompletableFuture<List<Property>> getPropertiesLike(String name) {
+        return read(Arrays.asList("getPropertiesLike", name), m -> m.getPropertiesLike(name));
+    }
+
+    /**
+     * Get all property values like a value
+     *
+     * @param value the value of the property value to search for
+     * @return the future completed with the property values similar to the value
+     */
+    public CompletableFuture<List<PropertyValue>> getPropertyValuesLike(String value) {
+        return read(Arrays.asList("getPropertyValuesLike", value), m -> m.getPropertyValuesLike(value));
+    }
+
+    /**
+     * Check if a tag exists
+     *
+     * @param name the name of the tag
+     * @return the future completed with whether the tag exists
+     */
+    public CompletableFuture<Boolean> tagExists(String name) {
+        return read(Arrays.asList("tagExists", name), m -> m.tagExists(name));
+    }
+
+    /**
+     * Check if a property exists
+     *
+     * @param name the name of the property
+     * @return the future completed with whether the property exists
+     */
+    public CompletableFuture<Boolean> propertyExists(String name) {
+        return read(Arrays.asList("propertyExists", name), m -> m.propertyExists(name));
+    }
+
+    /**
+     * Check if a property value exists
+     *
+     * @param value the property value
+     * @return the future completed with whether the property value exists
+     */
+    public CompletableFuture<Boolean> propertyValueExists(String value) {
+        return read(Arrays.asList("propertyValueExists", value), m -> m.propertyValueExists(value));
+    }
+
+    /**
+     * Get all documents by a {@link DocumentFilter}.
+     * See {@link DatabaseManager#getDocumentsBy(DocumentFilter, int)}.
+     *
+     * @param filter the filters
+     * @param offset the elements in the result list to skip
+     * @return the future completed with the retrieved documents
+     */
+    public CompletableFuture<List<Document>> getDocumentsBy(DocumentFilter filter, int offset) {
+        return readFiltered("getDocumentsBy", filter, List.of(offset), (m, f) -> m.getDocumentsBy(f, offset));
+    }
+
+    /**
+     * Get a page of documents matching a {@link DocumentFilter} and the total number of matching documents.
+     * See {@link DatabaseManager#getDocumentsWithCount(DocumentFilter, int)}.
+     *
+     * @param filter the filters
+     * @param offset the elements in the result list to skip
+     * @return the future completed with the retrieved page and the total number of documents
+     */
+    public CompletableFuture<DocumentSearchPage> getDocumentsWithCount(DocumentFilter filter, int offset) {
+        return readFiltered("getDocumentsWithCount", filter, List.of(offset),
+                (m, f) -> m.getDocumentsWithCount(f, offset));
+    }
+
+    /**
+     * Get the documents best matching a {@link DocumentFilter}, sorted by their accuracy.
+     * See {@link DatabaseManager#getDocumentsRanked(DocumentFilter, int)}.
+     *
+     * @param filter     the filters
+     * @param maxResults the maximum number of results to return
+     * @return the future completed with the best results, the most accurate first
+     */
+    public CompletableFuture<List<DocumentSearchResult>> getDocumentsRanked(DocumentFilter filter, int maxResults) {
+        return readFiltered("getDocumentsRanked", filter, List.of(maxResults),
+                (m, f) -> m.getDocumentsRanked(f, maxResults));
+    }
+
+    /**
+     * Get a page of documents matching a {@link DocumentFilter} using keyset pagination.
+     * See {@link DatabaseManager#getDocumentPage(DocumentFilter, String, int)}.
+     *
+     * @param filter            the filters
+     * @param continuationToken the token of the previous page or null for the first page
+     * @param pageSize          the maximum number of documents in the page
+     * @return the future completed with the retrieved page
+     */
+    public CompletableFuture<DocumentPage> getDocumentPage(DocumentFilter filter, String continuationToken,
+                                                           int pageSize) {
+        return readFiltered("getDocumentPage", filter, Arrays.asList(continuationToken, pageSize),
+                (m, f) -> m.getDocumentPage(f, continuationToken, pageSize));
+    }
+
+    /**
+     * Get the number of documents matching a {@link DocumentFilter}
+     *
+     * @param filter the filter
+     * @return the future completed with the number of documents
+     */
+    public CompletableFuture<Long> getNumDocumentsBy(DocumentFilter filter) {
+        return readFiltered("getNumDocumentsBy", filter, List.of(), DatabaseManager::getNumDocumentsBy);
+    }
+
+    /**
+     * Get the {@link DatabaseInfo} of the database
+     *
+     * @return the future completed with the database info
+     */
+    public CompletableFuture<DatabaseInfo> getDatabaseInfo() {
+        return read(List.of("getDatabaseInfo"), DatabaseManager::getDatabaseInfo);
+    }
+
+    /**
+     * Get a directory by its path
+     *
+     * @param path the path of the directory
+     * @return the future completed with the directory or null if not found
+     */
+    public CompletableFuture<Directory> getDirectory(String path) {
+        return submit(m -> m.getDirectory(path));
+    }
+
+    /**
+     * Persist a directory, its subdirectories and all of their documents
+     *
+     * @param directory  the directory to persist
+     * @param sourcePath the source path of the directory
+     * @return the future completed with whether all objects could be persisted
+     */
+    public CompletableFuture<Boolean> persistDirectory(Directory directory, String sourcePath) {
+        return submit(m -> m.persistDirectory(directory, sourcePath));
+    }
+
+    /**
+     * Synchronize the database with a scanned directory.
+     * See {@link DatabaseManager#synchronizeDirectory(Directory, String)}.
+     *
+     * @param directory  the scanned directory
+     * @param sourcePath the source path of the directory
+     * @return the future completed with whether the database could be synchronized
+     */
+    public CompletableFuture<Boolean> synchronizeDirectory(Directory directory, String sourcePath) {
+        return submit(m -> m.synchronizeDirectory(directory, sourcePath));
+    }
+
+    /**
+     * Write a changed document to the database
+     *
+     * @param document the document to persist
+     * @return the future completed once the document has been written
+     */
+    public CompletableFuture<Void> persistDocument(Document document) {
+        return submit(m -> {
+            m.persistDocument(document);
+            return null;
+        });
+    }
+
+    /**
+     * Copy the database to another database
+     *
+     * @param toCopyTo the database manager managing the database to copy to
+     * @param listener the listener to report the progress to. May be null.
+     * @return the future completed with whether the database could be copied
+     */
+    public CompletableFuture<Boolean> copyDatabaseTo(DatabaseManager toCopyTo, CopyProgressListener listener) {
+        return submit(m -> m.copyDatabaseTo(toCopyTo, DatabaseManager.DEFAULT_COPY_PAGE_SIZE,
+                DatabaseManager.DEFAULT_COPY_QUEUE_CAPACITY, listener));
+    }
+
+    /**
+     * Get the database manager the operations are run on
+     *
+     * @return the database manager
+     */
+    public DatabaseManager getManager() {
+        return manager;
+    }
+
+    /**
+     * Stop accepting new operations. Operations already
+     * submitted are still run. Does not close the database manager.
+     */
+    @Override
+    public void close() {
+        logger.info("Shutting down the async database manager");
+        executor.shutdown();
+    }
+}
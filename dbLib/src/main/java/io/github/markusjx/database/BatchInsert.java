@@ -0,0 +1,332 @@
+package io.github.markusjx.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A batched insert into a single table. Writes multiple
+ * rows per statement if the database supports it and
+ * sends the statements to the database in batches.
+ * Rows can also be updated by their key, which is
+ * always the first column.
+ */
+final class BatchInsert {
+    /**
+     * The maximum number of parameters in a single statement.
+     * Older SQLite versions don't allow more than 999 parameters.
+     */
+    private static final int MAX_PARAMETERS = 999;
+
+    /**
+     * The number of statements to send to the database in one batch
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * The database products supporting multi-row inserts
+     */
+    private static final Set<String> MULTI_ROW_PRODUCTS = Set.of("SQLite", "MySQL", "MariaDB");
+
+    /**
+     * The database products using the multi-table update syntax
+     */
+    private static final Set<String> JOIN_UPDATE_PRODUCTS = Set.of("MySQL", "MariaDB");
+
+    /**
+     * The length of the key column of a staging table.
+     * Matches the default length of the string ids.
+     */
+    private static final int STAGING_KEY_LENGTH = 255;
+
+    /**
+     * The name of the table
+     */
+    private final String table;
+
+    /**
+     * The names of the columns to insert
+     */
+    private final String[] columns;
+
+    /**
+     * The sql types of the columns
+     */
+    private final int[] types;
+
+    /**
+     * Create a new batch insert
+     *
+     * @param table   the name of the table
+     * @param columns the names of the columns to insert
+     * @param types   the sql types of the columns
+     */
+    BatchInsert(String table, String[] columns, int[] types) {
+        this.table = table;
+        this.columns = columns;
+        this.types = types;
+    }
+
+    /**
+     * Get the name of the table
+     *
+     * @return the name of the table
+     */
+    String getTable() {
+        return table;
+    }
+
+    /**
+     * Get the name of a column
+     *
+     * @param index the index of the column
+     * @return the name of the column
+     */
+    String getColumn(int index) {
+        return columns[index];
+    }
+
+    /**
+     * Create a batch insert into a temporary staging table containing
+     * some of the columns of this table with the same names and types.
+     * The key column is always copied to the staging table.
+     *
+     * @param name    the name of the staging table
+     * @param columns the indices of the columns to copy, excluding the key
+     * @return the batch insert into the staging table
+     */
+    BatchInsert staging(String name, int... columns) {
+        String[] stagedColumns = new String[columns.length + 1];
+        int[] stagedTypes = new int[columns.length + 1];
+        stagedColumns[0] = this.columns[0];
+        stagedTypes[0] = types[0];
+        for (int i = 0; i < columns.length; i++) {
+            stagedColumns[i + 1] = this.columns[columns[i]];
+            stagedTypes[i + 1] = types[columns[i]];
+        }
+
+        return new BatchInsert(name, stagedColumns, stagedTypes);
+    }
+
+    /**
+     * Check if a database supports inserting multiple rows in one statement
+     *
+     * @param connection the connection to the database
+     * @return true if multi-row inserts are supported
+     * @throws SQLException if the database could not be queried
+     */
+    static boolean supportsMultiRow(Connection connection) throws SQLException {
+        return MULTI_ROW_PRODUCTS.contains(connection.getMetaData().getDatabaseProductName());
+    }
+
+    /**
+     * Create an insert statement
+     *
+     * @param numRows the number of rows to insert with the statement
+     * @return the sql statement
+     */
+    private String createStatement(int numRows) {
+        StringBuilder values = new StringBuilder("(");
+        for (int i = 0; i < columns.length; i++) {
+            values.append(i == 0 ? "?" : ", ?");
+        }
+        values.append(')');
+
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append('(')
+                .append(String.join(", ", columns)).append(") VALUES ");
+        for (int i = 0; i < numRows; i++) {
+            if (i > 0) sql.append(", ");
+            sql.append(values);
+        }
+
+        return sql.toString();
+    }
+
+    /**
+     * Insert rows into the table
+     *
+     * @param connection the connection to insert with
+     * @param rows       the rows to insert
+     * @param multiRow   whether to insert multiple rows per statement
+     * @throws SQLException if the rows could not be inserted
+     */
+    void insert(Connection connection, List<Object[]> rows, boolean multiRow) throws SQLException {
+        if (rows.isEmpty()) return;
+
+        final int rowsPerStatement = multiRow ? Math.max(1, MAX_PARAMETERS / columns.length) : 1;
+        final int numFull = rows.size() / rowsPerStatement;
+
+        // Insert all full statements in batches
+        if (numFull > 0) {
+            try (PreparedStatement statement = connection.prepareStatement(createStatement(rowsPerStatement))) {
+                for (int i = 0; i < numFull; i++) {
+                    bind(statement, rows, i * rowsPerStatement, rowsPerStatement);
+                    statement.addBatch();
+
+                    if ((i + 1) % BATCH_SIZE == 0) {
+                        statement.executeBatch();
+                    }
+                }
+
+                statement.executeBatch();
+            }
+        }
+
+        // Insert the remaining rows in a single statement
+        final int remaining = rows.size() - numFull * rowsPerStatement;
+        if (remaining > 0) {
+            try (PreparedStatement statement = connection.prepareStatement(createStatement(remaining))) {
+                bind(statement, rows, numFull * rowsPerStatement, remaining);
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Update rows of the table by their keys. Sends one statement
+     * per row to the database in batches.
+     *
+     * @param connection the connection to update with
+     * @param rows       the rows to update, containing all columns of the table
+     * @param updated    the indices of the columns to update
+     * @throws SQLException if the rows could not be updated
+     */
+    void update(Connection connection, List<Object[]> rows, int... updated) throws SQLException {
+        if (rows.isEmpty()) return;
+
+        StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        for (int i = 0; i < updated.length; i++) {
+            if (i > 0) sql.append(", ");
+            sql.append(columns[updated[i]]).append(" = ?");
+        }
+        sql.append(" WHERE ").append(columns[0]).append(" = ?");
+
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            for (int i = 0; i < rows.size(); i++) {
+                Object[] row = rows.get(i);
+                for (int c = 0; c < updated.length; c++) {
+                    bind(statement, c + 1, row[updated[c]], types[updated[c]]);
+                }
+                bind(statement, updated.length + 1, row[0], types[0]);
+                statement.addBatch();
+
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    statement.executeBatch();
+                }
+            }
+
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Update rows of the table using a single statement. The rows are inserted
+     * into a temporary staging table created by {@link #staging(String, int...)}
+     * first and all rows of this table with a staged key are set to the
+     * staged values. Must be called inside of a transaction.
+     *
+     * @param connection the connection to update with
+     * @param stage      the staging table to use
+     * @param rows       the staged rows, starting with their keys
+     * @return the number of updated rows
+     * @throws SQLException if the rows could not be updated
+     */
+    int updateStaged(Connection connection, BatchInsert stage, List<Object[]> rows) throws SQLException {
+        if (rows.isEmpty()) return 0;
+
+        // MySQL can't reference a temporary table more than once per statement, use its join syntax
+        final boolean join = JOIN_UPDATE_PRODUCTS.contains(connection.getMetaData().getDatabaseProductName());
+        final String key = columns[0];
+
+        StringBuilder definition = new StringBuilder(key).append(" VARCHAR(").append(STAGING_KEY_LENGTH)
+                .append(") NOT NULL PRIMARY KEY");
+        StringBuilder assignments = new StringBuilder();
+        for (int i = 1; i < stage.columns.length; i++) {
+            definition.append(", ").append(stage.columns[i]).append(' ').append(typeName(stage.types[i]));
+            if (i > 1) assignments.append(", ");
+            assignments.append(join ? "t." : "").append(stage.columns[i]).append(" = s.").append(stage.columns[i]);
+        }
+
+        final String sql;
+        if (join) {
+            sql = "UPDATE " + table + " t JOIN " + stage.table + " s ON s." + key + " = t." + key +
+                    " SET " + assignments;
+        } else {
+            sql = "UPDATE " + table + " SET " + assignments + " FROM " + stage.table + " s WHERE s." + key +
+                    " = " + table + "." + key;
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            // The table is private to the connection and only created once per connection
+            statement.execute("CREATE TEMPORARY TABLE IF NOT EXISTS " + stage.table + "(" + definition + ")");
+            statement.executeUpdate("DELETE FROM " + stage.table);
+
+            stage.insert(connection, rows, supportsMultiRow(connection));
+            final int updated = statement.executeUpdate(sql);
+
+            statement.executeUpdate("DELETE FROM " + stage.table);
+            return updated;
+        }
+    }
+
+    /**
+     * Get the name of a sql type for a column definition
+     *
+     * @param type the sql type
+     * @return the name of the type
+     */
+    private static String typeName(int type) {
+        switch (type) {
+            case Types.VARCHAR:
+                return "VARCHAR(" + STAGING_KEY_LENGTH + ")";
+            case Types.DATE:
+                return "DATE";
+            case Types.BIGINT:
+                return "BIGINT";
+            case Types.INTEGER:
+                return "INTEGER";
+            default:
+                throw new IllegalArgumentException("Unsupported sql type: " + type);
+        }
+    }
+
+    /**
+     * Bind a value to a parameter of a statement
+     *
+     * @param statement the statement to bind to
+     * @param index     the index of the parameter
+     * @param value     the value to bind, may be null
+     * @param type      the sql type of the value
+     * @throws SQLException if the parameter could not be bound
+     */
+    private static void bind(PreparedStatement statement, int index, Object value, int type) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, type);
+        } else {
+            statement.setObject(index, value, type);
+        }
+    }
+
+    /**
+     * Bind rows to the parameters of a statement
+     *
+     * @param statement the statement to bind to
+     * @param rows      all rows
+     * @param start     the index of the first row to bind
+     * @param numRows   the number of rows to bind
+     * @throws SQLException if a parameter could not be bound
+     */
+    private void bind(PreparedStatement statement, List<Object[]> rows, int start, int numRows) throws SQLException {
+        int index = 1;
+        for (int i = start; i < start + numRows; i++) {
+            Object[] row = rows.get(i);
+            for (int c = 0; c < columns.length; c++, index++) {
+                bind(statement, index, row[c], types[c]);
+            }
+        }
+    }
+}
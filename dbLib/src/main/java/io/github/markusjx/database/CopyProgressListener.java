@@ -0,0 +1,36 @@
+package io.github.markusjx.database;
+
+/**
+ * A listener for the progress of copying a database
+ * using {@link DatabaseManager#copyDatabaseTo(DatabaseManager, int, int, CopyProgressListener)}
+ */
+@FunctionalInterface
+public interface CopyProgressListener {
+    /**
+     * The stages of a database copy, in the order they are run in
+     */
+    enum Stage {
+        /**
+         * The documents including their tags and properties are copied
+         */
+        DOCUMENTS,
+        /**
+         * The directories are copied without their contents
+         */
+        DIRECTORIES,
+        /**
+         * The links between the directories and their documents and subdirectories are copied
+         */
+        LINKS
+    }
+
+    /**
+     * Called every time a page has been written to the database copied to.
+     * Called on the thread writing to the database copied to.
+     *
+     * @param stage     the current stage
+     * @param numCopied the number of elements of the current stage copied so far
+     * @param total     the total number of elements of the current stage
+     */
+    void progress(Stage stage, long numCopied, long total);
+}
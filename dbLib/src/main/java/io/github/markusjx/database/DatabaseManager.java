@@ -1,28 +1,71 @@
 package io.github.markusjx.database;
 
 import io.github.markusjx.database.filter.DocumentFilter;
+import io.github.markusjx.database.filter.DocumentFilterBase;
+import io.github.markusjx.database.filter.filters.FilenameFilter;
+import io.github.markusjx.database.filter.filters.PathFilter;
+import io.github.markusjx.database.persistence.SQLiteProvider;
 import io.github.markusjx.database.types.*;
 import io.github.markusjx.datatypes.ChainedHashMap;
+import io.github.markusjx.datatypes.DocumentPage;
+import io.github.markusjx.datatypes.DocumentSearchPage;
 import io.github.markusjx.datatypes.DocumentSearchResult;
+import io.github.markusjx.scanning.DuplicateFinder;
+import io.github.markusjx.scanning.FileScanner;
+import io.github.markusjx.scanning.ScanManifest;
 import io.github.markusjx.util.DatabaseUtils;
 import io.github.markusjx.util.ListUtils;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jdbc.Work;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.persistence.EntityManager;
-import javax.persistence.EntityNotFoundException;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
- * A class for managing the database
+ * A class for managing the database.
+ * All write operations and operations returning entities which may be
+ * modified and written back are synchronized and use a single entity manager.
+ * Read-only queries like searches and auto completions are not synchronized
+ * and use a short-lived entity manager per call, so they run in parallel
+ * with each other and with running write operations.
  */
 public class DatabaseManager {
     private static final Logger logger = LoggerFactory.getLogger(DatabaseManager.class);
@@ -32,6 +75,11 @@ public class DatabaseManager {
      */
     private static final int FUZZY_SEARCH_MAX_RESULTS = 25;
 
+    /**
+     * The number of documents in a page of search results
+     */
+    private static final int SEARCH_PAGE_SIZE = 100;
+
     /**
      * The maximum input array length for sql operation.
      * This is required as SQLite only allows 1000 up to
@@ -39,11 +87,110 @@ public class DatabaseManager {
      */
     private static final int MAX_INPUT_ARRAY_LENGTH = 1000;
 
+    /**
+     * The default number of documents and directories
+     * to persist in one batch when streaming a scan
+     */
+    public static final int DEFAULT_STREAMING_BATCH_SIZE = 5000;
+
+    /**
+     * The default number of documents or directories
+     * to insert per transaction when importing a directory
+     */
+    public static final int DEFAULT_IMPORT_COMMIT_INTERVAL = 10000;
+
+    /**
+     * The default number of scanned directories which may be queued
+     * up by the scanner while a batch is being persisted
+     */
+    public static final int DEFAULT_STREAMING_QUEUE_CAPACITY = 256;
+
+    /**
+     * The marker passed through the streaming queue when the scan is done
+     */
+    private static final Directory END_OF_SCAN = new Directory();
+
+    /**
+     * The default number of documents, directories or links
+     * to read in one page when copying a database
+     */
+    public static final int DEFAULT_COPY_PAGE_SIZE = 5000;
+
+    /**
+     * The default number of pages which may be read
+     * ahead while a page is written when copying a database
+     */
+    public static final int DEFAULT_COPY_QUEUE_CAPACITY = 4;
+
+    /**
+     * The marker passed through the copy queue when all pages have been read
+     */
+    private static final BooleanSupplier END_OF_COPY = () -> true;
+
+    /**
+     * The maximum number of tags, properties, property values and
+     * links between properties and values in the dictionary cache
+     */
+    public static final int DEFAULT_DICTIONARY_CACHE_CAPACITY = 16384;
+
+    /**
+     * The maximum number of pages and document counts in the search result cache
+     */
+    public static final int DEFAULT_SEARCH_CACHE_ENTRIES = 256;
+
+    /**
+     * The maximum approximate size of the documents in the search result cache in bytes
+     */
+    public static final long DEFAULT_SEARCH_CACHE_SIZE = 32L * 1024 * 1024;
+
     /**
      * The entity manager instance
      */
     private final EntityManager manager;
 
+    /**
+     * The factory to create the entity managers for read-only queries with
+     */
+    private final EntityManagerFactory factory;
+
+    /**
+     * The loader to insert new documents with or null
+     * if the documents must be persisted one by one
+     */
+    private final DocumentBulkLoader bulkLoader;
+
+    /**
+     * The staging table to find new entities with or null if
+     * the existing entities must be loaded using in-queries
+     */
+    private final KeyStagingTable stagingTable;
+
+    /**
+     * The cache for the tags, properties and property values in the database
+     */
+    private final DictionaryCache dictionary;
+
+    /**
+     * The index for substring and wildcard searches of the filenames
+     */
+    private final FilenameIndex filenameIndex;
+
+    /**
+     * The number of write operations run on the database.
+     * Results read before the last write may be outdated.
+     */
+    private final AtomicLong writeGeneration;
+
+    /**
+     * The cache for the pages and numbers of documents matching a filter
+     */
+    private final SearchResultCache searchResults;
+
+    /**
+     * Whether to switch SQLite databases to the bulk import profile while importing
+     */
+    private volatile boolean useBulkImportProfile = false;
+
     /**
      * Create a new DocumentManager instance
      *
@@ -52,12 +199,134 @@ public class DatabaseManager {
     public DatabaseManager(EntityManager manager) {
         Objects.requireNonNull(manager);
         this.manager = manager;
+        this.factory = manager.getEntityManagerFactory();
+        this.bulkLoader = DocumentBulkLoader.create(factory);
+        this.stagingTable = KeyStagingTable.create(factory);
+        this.dictionary = new DictionaryCache(DEFAULT_DICTIONARY_CACHE_CAPACITY);
+        this.filenameIndex = FilenameIndex.create(factory);
+        this.writeGeneration = new AtomicLong();
+        this.searchResults = new SearchResultCache(DEFAULT_SEARCH_CACHE_ENTRIES, DEFAULT_SEARCH_CACHE_SIZE);
         logger.info("Creating the database manager");
+
+        try {
+            read(reader -> {
+                dictionary.warm(reader);
+                return null;
+            });
+        } catch (Exception e) {
+            logger.warn("Could not warm the dictionary cache", e);
+        }
     }
 
     @SuppressWarnings("unused")
     public DatabaseManager(DatabaseManager other) {
         this.manager = other.manager;
+        this.factory = other.factory;
+        this.bulkLoader = other.bulkLoader;
+        this.stagingTable = other.stagingTable;
+        this.dictionary = other.dictionary;
+        this.filenameIndex = other.filenameIndex;
+        this.writeGeneration = other.writeGeneration;
+        this.searchResults = other.searchResults;
+        this.useBulkImportProfile = other.useBulkImportProfile;
+    }
+
+    /**
+     * Set whether to switch SQLite databases to the bulk import profile while
+     * importing directories. The profile is disabled by default. See
+     * {@link SQLiteProvider#enableBulkImportProfile(java.sql.Connection)} for details.
+     *
+     * @param useBulkImportProfile whether to use the bulk import profile
+     */
+    public void setUseBulkImportProfile(boolean useBulkImportProfile) {
+        this.useBulkImportProfile = useBulkImportProfile;
+    }
+
+    /**
+     * Get the number of tag, property and property value
+     * lookups answered by the dictionary cache
+     *
+     * @return the number of cache hits
+     */
+    @SuppressWarnings("unused")
+    public long getDictionaryCacheHits() {
+        return dictionary.getHits();
+    }
+
+    /**
+     * Get the number of tag, property and property value
+     * lookups which had to query the database
+     *
+     * @return the number of cache misses
+     */
+    @SuppressWarnings("unused")
+    public long getDictionaryCacheMisses() {
+        return dictionary.getMisses();
+    }
+
+    /**
+     * Get the number of searches answered by the search result cache
+     *
+     * @return the number of cache hits
+     */
+    @SuppressWarnings("unused")
+    public long getSearchCacheHits() {
+        return searchResults.getHits();
+    }
+
+    /**
+     * Get the number of searches which had to query the database
+     * and could have been answered by the search result cache
+     *
+     * @return the number of cache misses
+     */
+    @SuppressWarnings("unused")
+    public long getSearchCacheMisses() {
+        return searchResults.getMisses();
+    }
+
+    /**
+     * Run a read-only operation using a new entity manager.
+     * Does not lock this database manager, so it may run in
+     * parallel with other operations. All returned entities are
+     * detached, lazy associations must be loaded by the operation.
+     *
+     * @param operation the operation to run
+     * @param <T>       the result type
+     * @return the result of the operation
+     */
+    private <T> T read(Function<EntityManager, T> operation) {
+        EntityManager reader = factory.createEntityManager();
+        try {
+            return operation.apply(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Commit the transaction of the entity manager.
+     * Marks all results read before as outdated.
+     */
+    private void commit() {
+        manager.getTransaction().commit();
+        writeGeneration.incrementAndGet();
+    }
+
+    /**
+     * Do manual work on the database using the entity manager.
+     * Marks all results read before as outdated.
+     * See {@link DatabaseUtils#doSessionWork(EntityManager, Work)}.
+     *
+     * @param work the work to do
+     * @return true, if the operation was successful
+     */
+    private boolean doSessionWork(Work work) {
+        try {
+            return DatabaseUtils.doSessionWork(manager, work);
+        } finally {
+            writeGeneration.incrementAndGet();
+        }
     }
 
     /**
@@ -93,6 +362,7 @@ public class DatabaseManager {
         manager.getTransaction().begin();
         // Create a PropertyValueSet list
         List<PropertyValueSet> propList = new ArrayList<>();
+        List<String[]> links = new ArrayList<>();
         for (Map.Entry<String, List<String>> e : properties.entrySet()) {
             for (String v : e.getValue()) {
                 // The property value
@@ -100,6 +370,11 @@ public class DatabaseManager {
 
                 // Add the property value set to the list
                 propList.add(pvs);
+
+                // The value is linked to existing properties when committing
+                if (manager.contains(pvs.property)) {
+                    links.add(new String[]{e.getKey(), v});
+                }
             }
         }
 
@@ -111,7 +386,53 @@ public class DatabaseManager {
 
         // Persist the document
         manager.persist(doc);
-        manager.getTransaction().commit();
+        commit();
+
+        dictionary.putTags(Arrays.asList(tags));
+        links.forEach(link -> dictionary.putPropertyLink(link[0], link[1]));
+        filenameIndex.documentsAdded(Collections.singletonList(doc));
+    }
+
+    /**
+     * Remove all entities which already exist in the database from a list.
+     * Uses the staging table if available, so only the keys of the missing
+     * entities are loaded from the database. Otherwise all existing entities
+     * are loaded using {@code getAllIn} and removed from the list.
+     *
+     * @param type     the entity class
+     * @param entities the entities to filter
+     * @param key      a function returning the id of an entity
+     * @param getAllIn a function returning all entities of a list which exist in the database
+     * @param <T>      the entity type
+     * @return the distinct entities which don't exist in the database
+     */
+    private <T extends Comparable<? super T>> List<T> removeExisting(Class<T> type, List<T> entities,
+                                                                    Function<T, String> key,
+                                                                    Function<List<T>, List<T>> getAllIn) {
+        if (stagingTable == null) {
+            return ListUtils.removeAll(entities, getAllIn.apply(entities), true, true);
+        }
+
+        final Map<String, T> byKey = new LinkedHashMap<>();
+        for (T entity : entities) {
+            String k = key.apply(entity);
+            if (k != null) byKey.putIfAbsent(k, entity);
+        }
+
+        if (byKey.isEmpty()) return new ArrayList<>();
+
+        final List<String> missing = new ArrayList<>();
+        if (!DatabaseUtils.doSessionWork(manager, connection ->
+                missing.addAll(stagingTable.findMissing(connection, type, byKey.keySet())))) {
+            throw new IllegalStateException("Could not stage the " + type.getSimpleName() + " keys");
+        }
+
+        List<T> result = new ArrayList<>(missing.size());
+        for (String k : missing) {
+            result.add(byKey.get(k));
+        }
+
+        return result;
     }
 
     /**
@@ -138,21 +459,22 @@ public class DatabaseManager {
      * @return true, if the operation was successful
      */
     public synchronized boolean persistTags(final List<Tag> tags) {
-        // Get all tags already in the database
-        List<Tag> toRemove;
+        // Remove all tags already in the database
+        final List<Tag> ts;
         try {
-            toRemove = getAllTagsIn(tags);
+            ts = removeExisting(Tag.class, tags, t -> t.name, this::getAllTagsIn);
         } catch (Exception e) {
             logger.error("Could not get all tags in both in the database and a list", e);
             return false;
         }
 
-        // Remove all tags already in the database
-        final List<Tag> ts = ListUtils.removeAll(tags, toRemove, true, true);
-        if (ts.isEmpty()) return true;
+        if (ts.isEmpty()) {
+            dictionary.putTags(tags);
+            return true;
+        }
 
         // Insert the tags manually into the database
-        return DatabaseUtils.doSessionWork(manager, connection -> {
+        boolean ok = doSessionWork(connection -> {
             for (List<Tag> limited : ListUtils.partition(ts, MAX_INPUT_ARRAY_LENGTH)) {
                 PreparedStatement statement = connection.prepareStatement("INSERT INTO Tag(name) values (?)");
                 for (Tag t : limited) {
@@ -163,6 +485,9 @@ public class DatabaseManager {
                 statement.executeBatch();
             }
         });
+
+        if (ok) dictionary.putTags(tags);
+        return ok;
     }
 
     /**
@@ -190,18 +515,19 @@ public class DatabaseManager {
      * @return true, if the operation was successful
      */
     public synchronized boolean persistProperties(final List<Property> properties, boolean merge) {
-        // Get all already inserted properties
-        List<Property> toRemove;
+        // Remove all already persisted properties
+        final List<Property> ps;
         try {
-            toRemove = getAllPropertiesIn(properties);
+            ps = removeExisting(Property.class, properties, p -> p.name, this::getAllPropertiesIn);
         } catch (Exception e) {
             logger.error("Could not get all properties both in a list and the database", e);
             return false;
         }
 
-        // Remove all already persisted properties
-        final List<Property> ps = ListUtils.removeAll(properties, toRemove, true, true);
-        if (ps.isEmpty()) return true;
+        if (ps.isEmpty()) {
+            properties.forEach(p -> dictionary.putProperty(p.name));
+            return true;
+        }
 
         // Persist all properties
         manager.getTransaction().begin();
@@ -212,7 +538,12 @@ public class DatabaseManager {
                 manager.persist(p);
             }
         }
-        manager.getTransaction().commit();
+        commit();
+
+        properties.forEach(p -> dictionary.putProperty(p.name));
+        for (Property p : ps) {
+            p.values.forEach(v -> dictionary.putPropertyLink(p.name, v.value));
+        }
 
         return true;
     }
@@ -241,21 +572,22 @@ public class DatabaseManager {
      * @return whether the operation was successful
      */
     public synchronized boolean persistPropertyValues(final List<PropertyValue> propertyValues) {
-        // Get all already existing property values
-        List<PropertyValue> toRemove;
+        // Remove all already existing property values
+        final List<PropertyValue> ps;
         try {
-            toRemove = getAllPropertyValuesIn(propertyValues);
+            ps = removeExisting(PropertyValue.class, propertyValues, p -> p.value, this::getAllPropertyValuesIn);
         } catch (Exception e) {
             logger.error("Could not get all property values both in a list and the database", e);
             return false;
         }
 
-        // Remove all already existing property values
-        final List<PropertyValue> ps = ListUtils.removeAll(propertyValues, toRemove, true, true);
-        if (ps.isEmpty()) return true;
+        if (ps.isEmpty()) {
+            dictionary.putPropertyValues(propertyValues);
+            return true;
+        }
 
         // Insert the values manually
-        return DatabaseUtils.doSessionWork(manager, connection -> {
+        boolean ok = doSessionWork(connection -> {
             for (List<PropertyValue> limited : ListUtils.partition(ps, MAX_INPUT_ARRAY_LENGTH)) {
                 PreparedStatement statement = connection.prepareStatement("INSERT INTO PropertyValue(value) values (?)");
                 for (PropertyValue p : limited) {
@@ -266,6 +598,9 @@ public class DatabaseManager {
                 statement.executeBatch();
             }
         });
+
+        if (ok) dictionary.putPropertyValues(propertyValues);
+        return ok;
     }
 
     /**
@@ -325,7 +660,9 @@ public class DatabaseManager {
     }
 
     /**
-     * Persist a list of documents
+     * Persist a list of documents. If the documents are not merged,
+     * they are inserted using batched statements and are not
+     * attached to the entity manager afterwards.
      *
      * @param documents the documents to persist
      * @param merge     whether to merge rather than persist
@@ -344,23 +681,32 @@ public class DatabaseManager {
         if (!persistProperties(properties, merge)) return false;
         if (!persistPropertyValues(propertyValues)) return false;
 
-        // Get all documents already existing in the database
-        // and also existing in the list of documents to persist
-        List<Document> toRemove;
+        // Remove all documents already existing in the database
         try {
-            toRemove = getAllDocumentsIn(documents);
+            documents = removeExisting(Document.class, documents, d -> d.absolutePath, this::getAllDocumentsIn);
         } catch (Exception e) {
             logger.error("Could not get all documents both in a list and the database", e);
             return false;
         }
 
-        // Remove all documents already existing in the database
-        documents = ListUtils.removeAll(documents, toRemove, true, true);
         if (documents.isEmpty()) {
             logger.debug("The document list was empty after removing all documents already in the database");
             return true;
         }
 
+        // Insert new documents using batched statements, if possible
+        if (!merge && bulkLoader != null) {
+            final List<Document> toInsert = documents;
+            if (!doSessionWork(connection -> bulkLoader.insert(connection, toInsert))) {
+                logger.error("Could not insert the documents");
+                return false;
+            }
+
+            filenameIndex.documentsAdded(documents);
+            logger.info("Successfully inserted {} documents", documents.size());
+            return true;
+        }
+
         // Start a transaction and persist all documents
         try {
             manager.getTransaction().begin();
@@ -372,12 +718,13 @@ public class DatabaseManager {
                 }
             }
             manager.flush();
-            manager.getTransaction().commit();
+            commit();
         } catch (Exception e) {
             logger.error("Could not persist the documents", e);
             return false;
         }
 
+        filenameIndex.documentsAdded(documents);
         logger.info("Successfully persisted {} documents", documents.size());
         return true;
     }
@@ -391,7 +738,8 @@ public class DatabaseManager {
     public synchronized void persistDocument(Document document) {
         manager.getTransaction().begin();
         manager.merge(document);
-        manager.getTransaction().commit();
+        commit();
+        filenameIndex.documentsAdded(Collections.singletonList(document));
     }
 
     /**
@@ -429,17 +777,14 @@ public class DatabaseManager {
      * @return true, if the operation was successful
      */
     public synchronized boolean persistDirectories(List<Directory> directories, boolean copy) {
-        List<Directory> toRemove;
+        // Remove all already existing directories
         try {
-            toRemove = getAllDirectoriesIn(directories);
+            directories = removeExisting(Directory.class, directories, d -> d.path, this::getAllDirectoriesIn);
         } catch (Exception e) {
             logger.error("Could not get all directories both in a list and the database:", e);
             return false;
         }
 
-        // Remove all already existing directories
-        directories = ListUtils.removeAll(directories, toRemove, true, true);
-
         // Begin a transaction and persist the directories
         try {
             manager.getTransaction().begin();
@@ -451,7 +796,7 @@ public class DatabaseManager {
                 }
             }
             manager.flush();
-            manager.getTransaction().commit();
+            commit();
         } catch (Exception e) {
             logger.error("Could not persist the directories", e);
             return false;
@@ -466,9 +811,9 @@ public class DatabaseManager {
      * @return the retrieved {@link DatabaseInfo}
      */
     @SuppressWarnings("unused")
-    public synchronized DatabaseInfo getDatabaseInfo() {
+    public DatabaseInfo getDatabaseInfo() {
         try {
-            return manager.find(DatabaseInfo.class, 0);
+            return read(reader -> reader.find(DatabaseInfo.class, 0));
         } catch (Exception e) {
             logger.error("Could not get the database info:", e);
             return null;
@@ -476,7 +821,8 @@ public class DatabaseManager {
     }
 
     /**
-     * Persist a {@link DatabaseInfo} instance
+     * Persist a {@link DatabaseInfo} instance.
+     * Replaces the database info if the database already has one.
      *
      * @param info the {@link DatabaseInfo} to persist
      * @return true, if the operation was successful
@@ -484,8 +830,8 @@ public class DatabaseManager {
     public synchronized boolean persistDatabaseInfo(DatabaseInfo info) {
         try {
             manager.getTransaction().begin();
-            manager.persist(info);
-            manager.getTransaction().commit();
+            manager.merge(info);
+            commit();
             return true;
         } catch (Exception e) {
             logger.error("Could not persist the database info", e);
@@ -501,120 +847,622 @@ public class DatabaseManager {
      * @return whether all objects could be persisted
      */
     public synchronized boolean persistDirectory(Directory directory, String sourcePath) {
-        return persistDatabaseInfo(new DatabaseInfo(sourcePath)) &&
-                persistDocuments(directory.getAllDocuments()) &&
-                persistDirectories(directory.getAllDirectories());
+        return importDirectory(directory, sourcePath, DEFAULT_IMPORT_COMMIT_INTERVAL);
     }
 
     /**
-     * Get the number of documents in a directory but not in the database
+     * Import a directory, its subdirectories and all stored files for the first time.
+     * Inserts all documents and directories using a {@link StatelessSession}, so the
+     * persistence context does not grow with the size of the directory tree.
+     * The import is committed every {@code commitInterval} documents or directories,
+     * so a failed import may leave some of the documents and directories in the database.
+     * Documents and directories which already exist in the database are skipped.
+     * SQLite databases are switched to the bulk import profile during the import
+     * if enabled using {@link #setUseBulkImportProfile(boolean)}.
      *
-     * @param directory the directory to match
-     * @return the number of matching documents
+     * @param directory      the directory to import
+     * @param sourcePath     the source path of the directory
+     * @param commitInterval the number of documents or directories to insert per transaction
+     * @return whether all objects could be persisted
      */
-    @SuppressWarnings("unused")
-    public synchronized long getDocumentsNotIn(Directory directory) {
+    public synchronized boolean importDirectory(Directory directory, String sourcePath, int commitInterval) {
+        if (commitInterval < 1) {
+            throw new IllegalArgumentException("The commit interval must be greater than zero");
+        }
+
+        if (!persistDatabaseInfo(new DatabaseInfo(sourcePath))) return false;
+
+        List<Document> documents = directory.getAllDocuments();
+        List<Directory> directories = directory.getAllDirectories();
+        if (bulkLoader == null) {
+            return persistDocuments(documents) && persistDirectories(directories);
+        }
+
+        // Persist the tags, properties and property values. There
+        // are only few of them, so the entity manager may be used.
+        List<Tag> tags = new ArrayList<>();
+        List<Property> properties = new ArrayList<>();
+        List<PropertyValue> propertyValues = new ArrayList<>();
+        DatabaseUtils.copyPropsAndTags(documents, tags, properties, propertyValues);
+        if (!persistTags(tags) || !persistProperties(properties, false) || !persistPropertyValues(propertyValues)) {
+            return false;
+        }
+
         try {
-            final List<Document> documents = directory.getAllDocuments();
-            long res = 0;
+            documents = removeExisting(Document.class, documents, d -> d.absolutePath, this::getAllDocumentsIn);
+            directories = removeExisting(Directory.class, directories, d -> d.path, this::getAllDirectoriesIn);
+        } catch (Exception e) {
+            logger.error("Could not get all documents and directories both in a list and the database", e);
+            return false;
+        }
+
+        // Use a single connection for the whole import, so the bulk import profile
+        // applies to all statements and can be restored on the same connection
+        final SessionFactoryImplementor sessionFactory = factory.unwrap(SessionFactoryImplementor.class);
+        final ConnectionProvider connectionProvider = sessionFactory.getServiceRegistry()
+                .getService(ConnectionProvider.class);
+        final Connection connection;
+        try {
+            connection = connectionProvider.getConnection();
+        } catch (SQLException e) {
+            logger.error("Could not get a connection for the import", e);
+            return false;
+        }
 
-            for (List<Document> docs : ListUtils.partition(documents, 1000)) {
-                res += manager.createQuery("select count(d) from Document d where d in :docs", Long.class)
-                        .setParameter("docs", docs)
-                        .getSingleResult();
+        boolean ok = false;
+        boolean autoCommit = true;
+        SQLiteProvider.BulkImportProfile profile = null;
+        try {
+            autoCommit = connection.getAutoCommit();
+            if (useBulkImportProfile && SQLiteProvider.isSQLite(connection)) {
+                profile = enableBulkImportProfile(connection);
             }
 
-            return manager.createQuery("select count(d) from Document d", Long.class)
-                    .getSingleResult() - res;
-        } catch (Exception e) {
-            logger.error("Could not get the documents not in a directory:", e);
-            return -1;
+            ok = importBatches(sessionFactory.openStatelessSession(connection), documents, directories,
+                    commitInterval);
+        } catch (SQLException e) {
+            logger.error("Could not prepare the import connection", e);
+        } finally {
+            // Restore the settings before the connection is returned to the pool, even if the import failed
+            if (profile != null) {
+                restoreBulkImportProfile(connection, profile);
+            }
+
+            try {
+                connection.setAutoCommit(autoCommit);
+            } catch (SQLException e) {
+                logger.error("Could not reset the auto commit mode of the import connection", e);
+            }
+
+            try {
+                connectionProvider.closeConnection(connection);
+            } catch (SQLException e) {
+                logger.error("Could not close the import connection", e);
+            }
         }
+
+        if (ok) {
+            logger.info("Successfully imported {} documents and {} directories", documents.size(),
+                    directories.size());
+        }
+
+        return ok;
     }
 
     /**
-     * Get the number of directories in another directory but not in the database
+     * Switch the import connection to the bulk import profile. The profile is only
+     * an optimization, so the import continues with the default settings if the
+     * profile can't be enabled.
      *
-     * @param directory the directory to match
-     * @return the number of matching directories
+     * @param connection the import connection
+     * @return the enabled profile or null if it could not be enabled
      */
-    @SuppressWarnings("unused")
-    public synchronized long getDirectoriesNotIn(Directory directory) {
+    private static SQLiteProvider.BulkImportProfile enableBulkImportProfile(Connection connection) {
         try {
-            final List<Directory> directories = directory.getAllDirectories();
-            long res = 0;
-
-            for (List<Directory> dirs : ListUtils.partition(directories, 1000)) {
-                res += manager.createQuery("select count(d) from Directory d where d in :dirs", Long.class)
-                        .setParameter("dirs", dirs)
-                        .getSingleResult();
-            }
+            // Pragmas can't be changed inside of a transaction
+            connection.setAutoCommit(true);
+            return SQLiteProvider.enableBulkImportProfile(connection);
+        } catch (SQLException e) {
+            logger.warn("Could not enable the bulk import profile, importing with the default settings", e);
+            return null;
+        }
+    }
 
-            return manager.createQuery("select count(d) from Directory d", Long.class)
-                    .getSingleResult() - res;
-        } catch (Exception e) {
-            logger.error("Could not get the directories not in a directory:", e);
-            return -1;
+    /**
+     * Restore the settings of the import connection after the import. A failure
+     * is only logged, as all batches are already committed at this point.
+     *
+     * @param connection the import connection
+     * @param profile    the profile to restore
+     */
+    private static void restoreBulkImportProfile(Connection connection, SQLiteProvider.BulkImportProfile profile) {
+        try {
+            connection.setAutoCommit(true);
+            profile.restore();
+        } catch (SQLException e) {
+            logger.warn("Could not restore the settings after the bulk import", e);
         }
     }
 
     /**
-     * Copy all properties and tags from the documents in the database into {@code documents}
+     * Insert documents and directories using a stateless session,
+     * committing every {@code commitInterval} documents or directories.
+     * Closes the session afterwards.
      *
-     * @param documents the list of documents to copy to
-     * @return {@code documents}
+     * @param session        the session to insert with
+     * @param documents      the documents to insert
+     * @param directories    the directories to insert
+     * @param commitInterval the number of documents or directories to insert per transaction
+     * @return whether all objects could be inserted
      */
-    private synchronized List<Document> copyPropertiesAndTags(List<Document> documents) {
-        for (Document document : documents) {
-            Document toCopy = manager.getReference(Document.class, document.absolutePath);
+    private boolean importBatches(StatelessSession session, List<Document> documents, List<Directory> directories,
+                                  int commitInterval) {
+        Transaction transaction = null;
+        try {
+            // All documents and directories must be inserted before the links between them
+            for (List<Document> batch : ListUtils.partition(documents, commitInterval)) {
+                transaction = session.beginTransaction();
+                session.doWork(connection -> bulkLoader.insert(connection, batch));
+                transaction.commit();
+                filenameIndex.documentsAdded(batch);
+            }
 
-            try {
-                if (toCopy.properties != null) {
-                    for (PropertyValueSet pvs : toCopy.properties) {
-                        document.properties.add(new PropertyValueSet(pvs));
-                    }
+            for (List<Directory> batch : ListUtils.partition(directories, commitInterval)) {
+                transaction = session.beginTransaction();
+                for (Directory d : batch) {
+                    session.insert(d);
                 }
+                transaction.commit();
+            }
 
-                if (toCopy.tags != null) {
-                    for (Tag tag : toCopy.tags) {
-                        document.tags.add(new Tag(tag));
-                    }
-                }
-            } catch (EntityNotFoundException ignored) {
-                // The entity is not in the database,
-                // continue without updating the current document
+            // The stateless session ignores collections, insert the links manually
+            for (List<Directory> batch : ListUtils.partition(directories, commitInterval)) {
+                transaction = session.beginTransaction();
+                session.doWork(connection -> bulkLoader.insertDirectoryLinks(connection, batch));
+                transaction.commit();
             }
-        }
 
-        return documents;
+            return true;
+        } catch (Exception e) {
+            logger.error("Could not import the directory", e);
+            if (transaction != null && transaction.isActive()) {
+                transaction.rollback();
+            }
+
+            return false;
+        } finally {
+            session.close();
+
+            // Some batches may have been committed even if the import failed
+            writeGeneration.incrementAndGet();
+        }
     }
 
     /**
-     * Synchronize a directory
+     * Scan a directory and persist it while scanning, using the default batch size and queue capacity
      *
-     * @param directory  the directory to sync with
-     * @param sourcePath the path od the source directory
-     * @return true if the operation was successful
+     * @param scanner    the scanner to scan the directory with
+     * @param sourcePath the source path of the directory
+     * @return whether all objects could be persisted
      */
     @SuppressWarnings("unused")
-    public synchronized boolean synchronizeDirectory(Directory directory, String sourcePath) {
-        try {
-            final List<Directory> directories = directory.getAllDirectories();
-            final List<Document> documents = copyPropertiesAndTags(directory.getAllDocuments());
-            logger.info("Synchronizing {} documents and {} directories", documents.size(), directories.size());
+    public synchronized boolean persistDirectoryStreaming(FileScanner scanner, String sourcePath) {
+        return persistDirectoryStreaming(scanner, sourcePath, DEFAULT_STREAMING_BATCH_SIZE,
+                DEFAULT_STREAMING_QUEUE_CAPACITY);
+    }
 
-            this.clear();
+    /**
+     * Scan a directory and persist it while scanning.
+     * The scanner runs on its own thread and passes all scanned directories
+     * through a bounded queue to the calling thread, which persists them in
+     * batches of a fixed size. The directory tree is never held in memory
+     * as a whole, so the memory usage does not depend on the size of the tree.
+     *
+     * @param scanner       the scanner to scan the directory with
+     * @param sourcePath    the source path of the directory
+     * @param batchSize     the number of documents and directories to persist in one transaction
+     * @param queueCapacity the maximum number of scanned directories waiting to be persisted
+     * @return whether all objects could be persisted
+     */
+    public synchronized boolean persistDirectoryStreaming(FileScanner scanner, String sourcePath, int batchSize, int queueCapacity) {
+        if (!persistDatabaseInfo(new DatabaseInfo(sourcePath))) return false;
 
-            manager.getTransaction().begin();
-            logger.info("Removing all documents from the database");
-            manager.createQuery("delete from Document").executeUpdate();
+        final BlockingQueue<Directory> queue = new ArrayBlockingQueue<>(queueCapacity);
+        final AtomicReference<Throwable> scanError = new AtomicReference<>();
+
+        // Start the scanner thread
+        Thread scannerThread = new Thread(() -> {
+            try {
+                scanner.scan(queue::put);
+            } catch (InterruptedException e) {
+                // The consumer stopped early, stop scanning
+                return;
+            } catch (Throwable t) {
+                scanError.set(t);
+            }
+
+            try {
+                queue.put(END_OF_SCAN);
+            } catch (InterruptedException ignored) {
+                // The consumer stopped early, nothing to do
+            }
+        }, "FileScanner");
+        scannerThread.setDaemon(true);
+        scannerThread.start();
+
+        List<Document> documents = new ArrayList<>();
+        List<Directory> directories = new ArrayList<>();
+        long numPersisted = 0;
+
+        try {
+            while (true) {
+                Directory directory = queue.take();
+                if (directory == END_OF_SCAN) break;
+
+                documents.addAll(directory.documents);
+                directories.add(directory);
+
+                if (documents.size() + directories.size() >= batchSize) {
+                    if (!persistBatch(documents, directories)) return false;
+                    numPersisted += documents.size() + directories.size();
+                    documents.clear();
+                    directories.clear();
+                }
+            }
+
+            if (scanError.get() != null) {
+                logger.error("Could not scan the directory", scanError.get());
+                return false;
+            }
+
+            // Persist the remaining documents and directories
+            if (!persistBatch(documents, directories)) return false;
+            numPersisted += documents.size() + directories.size();
+
+            logger.info("Successfully persisted {} documents and directories while scanning", numPersisted);
+            return true;
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while waiting for the scanner", e);
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            // Stop the scanner if it is still running
+            scannerThread.interrupt();
+        }
+    }
+
+    /**
+     * Persist a batch of streamed documents and directories
+     * and clear the entity manager afterwards
+     *
+     * @param documents   the documents to persist
+     * @param directories the directories to persist. Their subdirectories must either
+     *                    already be persisted or be part of this batch.
+     * @return whether all objects could be persisted
+     */
+    private boolean persistBatch(List<Document> documents, List<Directory> directories) {
+        boolean ok = persistDocuments(documents) && persistDirectories(directories);
+        manager.clear();
+
+        return ok;
+    }
+
+    /**
+     * Get the number of documents in a directory but not in the database
+     *
+     * @param directory the directory to match
+     * @return the number of matching documents
+     */
+    @SuppressWarnings("unused")
+    public long getDocumentsNotIn(Directory directory) {
+        try {
+            final List<Document> documents = directory.getAllDocuments();
+
+            return read(reader -> {
+                long res = 0;
+                for (List<Document> docs : ListUtils.partition(documents, 1000)) {
+                    res += reader.createQuery("select count(d) from Document d where d in :docs", Long.class)
+                            .setParameter("docs", docs)
+                            .getSingleResult();
+                }
+
+                return reader.createQuery("select count(d) from Document d", Long.class)
+                        .getSingleResult() - res;
+            });
+        } catch (Exception e) {
+            logger.error("Could not get the documents not in a directory:", e);
+            return -1;
+        }
+    }
+
+    /**
+     * Get the number of directories in another directory but not in the database
+     *
+     * @param directory the directory to match
+     * @return the number of matching directories
+     */
+    @SuppressWarnings("unused")
+    public long getDirectoriesNotIn(Directory directory) {
+        try {
+            final List<Directory> directories = directory.getAllDirectories();
+
+            return read(reader -> {
+                long res = 0;
+                for (List<Directory> dirs : ListUtils.partition(directories, 1000)) {
+                    res += reader.createQuery("select count(d) from Directory d where d in :dirs", Long.class)
+                            .setParameter("dirs", dirs)
+                            .getSingleResult();
+                }
+
+                return reader.createQuery("select count(d) from Directory d", Long.class)
+                        .getSingleResult() - res;
+            });
+        } catch (Exception e) {
+            logger.error("Could not get the directories not in a directory:", e);
+            return -1;
+        }
+    }
+
+    /**
+     * Copy all properties and tags from the documents in the database into {@code documents}.
+     * The content hash is copied too if the size and the modification time of a document are unchanged.
+     * The persisted documents are loaded with their tags and properties in chunks of
+     * {@link #MAX_INPUT_ARRAY_LENGTH} paths and matched with the documents by their paths.
+     * Documents which are not in the database are left unchanged.
+     *
+     * @param documents the list of documents to copy to
+     * @return {@code documents}
+     */
+    private synchronized List<Document> copyPropertiesAndTags(List<Document> documents) {
+        final Map<String, Document> byPath = new HashMap<>();
+        documents.forEach(d -> byPath.put(d.absolutePath, d));
+
+        read(reader -> {
+            for (List<String> paths : ListUtils.partition(new ArrayList<>(byPath.keySet()), MAX_INPUT_ARRAY_LENGTH)) {
+                // Bags can't be fetched in a single query, fetch the tags and the properties separately
+                for (Document persisted : reader.createQuery("select distinct d from Document as d " +
+                        "left join fetch d.tags where d.absolutePath in :paths", Document.class)
+                        .setParameter("paths", paths)
+                        .getResultList()) {
+                    Document document = byPath.get(persisted.absolutePath);
+                    if (document == null) continue;
+
+                    for (Tag tag : persisted.tags) {
+                        document.tags.add(new Tag(tag));
+                    }
+
+                    // Keep the content hash if the file did not change, like synchronizeDirectory does
+                    if ((persisted.fileSize != null || persisted.lastModified != null) &&
+                            Objects.equals(persisted.fileSize, document.fileSize) &&
+                            Objects.equals(persisted.lastModified, document.lastModified)) {
+                        document.contentHash = persisted.contentHash;
+                    }
+                }
+
+                for (Document persisted : reader.createQuery("select distinct d from Document as d " +
+                        "left join fetch d.properties where d.absolutePath in :paths", Document.class)
+                        .setParameter("paths", paths)
+                        .getResultList()) {
+                    Document document = byPath.get(persisted.absolutePath);
+                    if (document == null) continue;
+
+                    for (PropertyValueSet pvs : persisted.properties) {
+                        document.properties.add(new PropertyValueSet(pvs));
+                    }
+                }
+
+                // Don't keep the loaded documents in memory
+                reader.clear();
+            }
+
+            return null;
+        });
+
+        return documents;
+    }
+
+    /**
+     * Synchronize a directory. Compares the sorted paths of the scanned documents and
+     * directories with the sorted paths in the database and only writes the difference:
+     * new documents and directories are inserted, vanished ones are deleted and changed
+     * ones are updated. Existing documents keep their tags and properties.
+     * If the directory was scanned incrementally, {@link #synchronizeDirectoryIncremental}
+     * is used instead.
+     *
+     * @param directory  the directory to sync with
+     * @param sourcePath the path od the source directory
+     * @return true if the operation was successful
+     */
+    @SuppressWarnings("unused")
+    public synchronized boolean synchronizeDirectory(Directory directory, String sourcePath) {
+        final List<Directory> directories = directory.getAllDirectories();
+        if (directories.stream().anyMatch(d -> d.unchanged)) {
+            // Unchanged directories don't contain their documents,
+            // so only the listed directories can be compared
+            return synchronizeDirectoryIncremental(directory, sourcePath);
+        } else if (bulkLoader == null) {
+            return synchronizeDirectoryFully(directory, sourcePath);
+        }
+
+        final List<Document> documents = directory.getAllDocuments();
+        logger.info("Synchronizing {} documents and {} directories", documents.size(), directories.size());
+
+        // Persist the tags, properties and property values of the new documents
+        List<Tag> tags = new ArrayList<>();
+        List<Property> properties = new ArrayList<>();
+        List<PropertyValue> propertyValues = new ArrayList<>();
+        DatabaseUtils.copyPropsAndTags(documents, tags, properties, propertyValues);
+        if (!persistTags(tags) || !persistProperties(properties, false) || !persistPropertyValues(propertyValues)) {
+            return false;
+        }
+
+        try {
+            this.clear();
+
+            // Merge the scanned documents with the documents in the database.
+            // Documents persisted before the scanned columns existed are backfilled.
+            final List<Document> addedDocuments = new ArrayList<>();
+            final List<String> removedDocuments = new ArrayList<>();
+            final List<Document> changedDocuments = new ArrayList<>();
+            final List<Document> backfilledDocuments = new ArrayList<>();
+            final Set<String> hashOutdated = new HashSet<>();
+            mergeSorted(documents, d -> d.absolutePath, new ArrayList<>(manager.createQuery("select d.absolutePath, " +
+                            "d.fileSize, d.lastModified, d.creationDate from Document as d", Object[].class).getResultList()),
+                    addedDocuments::add, removedDocuments::add, (scanned, row) -> {
+                        if (row[1] == null && row[2] == null) {
+                            if (scanned.fileSize != null || scanned.lastModified != null) {
+                                backfilledDocuments.add(scanned);
+                            }
+                            return;
+                        }
+
+                        boolean fileChanged = !Objects.equals(scanned.fileSize, row[1]) ||
+                                !Objects.equals(scanned.lastModified, row[2]);
+                        if (fileChanged || !Objects.equals(scanned.creationDate, row[3])) {
+                            changedDocuments.add(scanned);
+                            if (fileChanged) hashOutdated.add(scanned.absolutePath);
+                        }
+                    });
+
+            // Merge the scanned directories with the directories in the database
+            final List<Directory> addedDirectories = new ArrayList<>();
+            final List<String> removedDirectories = new ArrayList<>();
+            final List<Directory> changedDirectories = new ArrayList<>();
+            final List<Directory> backfilledDirectories = new ArrayList<>();
+            mergeSorted(directories, d -> d.path, new ArrayList<>(manager.createQuery("select d.path, d.lastModified, " +
+                            "d.numChildren, d.fingerprint from Directory as d", Object[].class).getResultList()),
+                    addedDirectories::add, removedDirectories::add, (scanned, row) -> {
+                        if (row[1] == null && row[2] == null && row[3] == null) {
+                            if (scanned.lastModified != null || scanned.numChildren != null ||
+                                    scanned.fingerprint != null) {
+                                backfilledDirectories.add(scanned);
+                            }
+                        } else if (!Objects.equals(scanned.lastModified, row[1]) ||
+                                !Objects.equals(scanned.numChildren, row[2]) ||
+                                !Objects.equals(scanned.fingerprint, row[3])) {
+                            changedDirectories.add(scanned);
+                        }
+                    });
+
+            // Link the new documents and directories to their parent directories
+            final Set<String> addedPaths = new HashSet<>();
+            addedDocuments.forEach(d -> addedPaths.add(d.absolutePath));
+            addedDirectories.forEach(d -> addedPaths.add(d.path));
+            final List<Object[]> documentLinks = new ArrayList<>();
+            final List<Object[]> directoryLinks = new ArrayList<>();
+            for (Directory d : directories) {
+                for (Document document : d.documents) {
+                    if (addedPaths.contains(document.absolutePath)) documentLinks.add(new Object[]{d.path, document.absolutePath});
+                }
+
+                for (Directory sub : d.directories) {
+                    if (addedPaths.contains(sub.path)) directoryLinks.add(new Object[]{d.path, sub.path});
+                }
+            }
+
+            manager.getTransaction().begin();
+            manager.unwrap(Session.class).doWork(connection -> {
+                bulkLoader.deleteDocuments(connection, removedDocuments);
+                bulkLoader.deleteDirectories(connection, removedDirectories);
+                bulkLoader.insert(connection, addedDocuments);
+                bulkLoader.insertDirectories(connection, addedDirectories);
+                bulkLoader.insertLinks(connection, documentLinks, directoryLinks);
+                bulkLoader.updateDocuments(connection, changedDocuments, hashOutdated);
+                bulkLoader.updateDirectories(connection, changedDirectories);
+                bulkLoader.backfillDocuments(connection, backfilledDocuments);
+                bulkLoader.backfillDirectories(connection, backfilledDirectories);
+            });
+
+            manager.merge(new DatabaseInfo(sourcePath));
+            commit();
+            filenameIndex.documentsRemoved(removedDocuments);
+            filenameIndex.documentsAdded(addedDocuments);
+            this.clear();
+
+            logger.info("Added {}, removed {} and updated {} documents, added {}, removed {} and updated {} directories",
+                    addedDocuments.size(), removedDocuments.size(), changedDocuments.size(), addedDirectories.size(),
+                    removedDirectories.size(), changedDirectories.size());
+            if (!backfilledDocuments.isEmpty() || !backfilledDirectories.isEmpty()) {
+                logger.info("Backfilled {} documents and {} directories", backfilledDocuments.size(),
+                        backfilledDirectories.size());
+            }
+            return true;
+        } catch (Exception e) {
+            logger.error("Could not synchronize the directory:", e);
+            if (manager.getTransaction().isActive()) {
+                manager.getTransaction().rollback();
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Merge a list of scanned entities with the keys of the persisted entities.
+     * Both lists are sorted by their keys and compared element by element.
+     *
+     * @param scanned   the scanned entities
+     * @param key       a function returning the key of a scanned entity
+     * @param persisted the rows of the persisted entities, starting with their keys
+     * @param added     called for every scanned entity which is not persisted
+     * @param removed   called for every persisted key which was not scanned
+     * @param both      called for every scanned entity and its persisted row
+     * @param <T>       the entity type
+     */
+    private static <T> void mergeSorted(List<T> scanned, Function<T, String> key, List<Object[]> persisted,
+                                        Consumer<T> added, Consumer<String> removed, BiConsumer<T, Object[]> both) {
+        scanned.sort(Comparator.comparing(key));
+        persisted.sort(Comparator.comparing(row -> (String) row[0]));
+
+        int i = 0, j = 0;
+        while (i < scanned.size() || j < persisted.size()) {
+            int cmp;
+            if (i == scanned.size()) {
+                cmp = 1;
+            } else if (j == persisted.size()) {
+                cmp = -1;
+            } else {
+                cmp = key.apply(scanned.get(i)).compareTo((String) persisted.get(j)[0]);
+            }
+
+            if (cmp < 0) {
+                added.accept(scanned.get(i++));
+            } else if (cmp > 0) {
+                removed.accept((String) persisted.get(j++)[0]);
+            } else {
+                both.accept(scanned.get(i++), persisted.get(j++));
+            }
+        }
+    }
+
+    /**
+     * Synchronize a directory by deleting all documents and directories and
+     * persisting the scanned ones. Tags and properties of existing documents
+     * are copied to the scanned documents. Used if bulk inserts are not supported.
+     *
+     * @param directory  the directory to sync with
+     * @param sourcePath the path od the source directory
+     * @return true if the operation was successful
+     */
+    private boolean synchronizeDirectoryFully(Directory directory, String sourcePath) {
+        try {
+            final List<Directory> directories = directory.getAllDirectories();
+            final List<Document> documents = copyPropertiesAndTags(directory.getAllDocuments());
+            logger.info("Synchronizing {} documents and {} directories", documents.size(), directories.size());
+
+            this.clear();
+
+            manager.getTransaction().begin();
+            logger.info("Removing all documents from the database");
+            manager.createQuery("delete from Document").executeUpdate();
 
             logger.info("Removing all directories from the database");
             manager.createQuery("delete from Directory").executeUpdate();
 
             logger.info("Updating the database info");
             manager.merge(new DatabaseInfo(sourcePath));
-            manager.getTransaction().commit();
+            commit();
+            filenameIndex.allRemoved();
 
             logger.info("Successfully removed all directories from the database");
             logger.info("Persisting all documents and directories");
@@ -635,13 +1483,424 @@ public class DatabaseManager {
     }
 
     /**
-     * Copy the database of this database manager to another database
+     * Get the manifest of all directories in the database.
+     * Used by the {@link FileScanner} to scan incrementally.
+     *
+     * @return the scan manifest or null if it could not be retrieved
+     */
+    @SuppressWarnings("unused")
+    public synchronized ScanManifest getScanManifest() {
+        try {
+            Map<String, Long> lastModified = new HashMap<>();
+            for (Object[] row : manager.createQuery("select d.path, d.lastModified from Directory as d", Object[].class)
+                    .getResultList()) {
+                lastModified.put((String) row[0], (Long) row[1]);
+            }
+
+            ChainedHashMap<String, String> subDirectories = new ChainedHashMap<>();
+            for (Object[] row : manager.createQuery("select d.path, s.name from Directory as d join d.directories as s",
+                    Object[].class).getResultList()) {
+                subDirectories.putValue((String) row[0], (String) row[1]);
+            }
+
+            return new ScanManifest(lastModified, subDirectories);
+        } catch (Exception e) {
+            logger.error("Could not get the scan manifest", e);
+            return null;
+        }
+    }
+
+    /**
+     * Synchronize a directory scanned with a {@link ScanManifest}.
+     * Only the directories which were listed by the scanner are updated,
+     * directories marked as {@link Directory#unchanged} are left untouched.
+     * See {@link #synchronizeListedDirectories(List)} for details.
+     *
+     * @param directory  the scanned directory
+     * @param sourcePath the path of the source directory
+     * @return true if the operation was successful
+     */
+    @SuppressWarnings("unused")
+    public synchronized boolean synchronizeDirectoryIncremental(Directory directory, String sourcePath) {
+        // Get all directories listed by the scanner
+        final List<Directory> listed = directory.getAllDirectories()
+                .stream()
+                .filter(d -> !d.unchanged)
+                .collect(Collectors.toList());
+
+        if (!synchronizeListedDirectories(listed)) return false;
+
+        try {
+            manager.getTransaction().begin();
+            manager.merge(new DatabaseInfo(sourcePath));
+            commit();
+            return true;
+        } catch (Exception e) {
+            logger.error("Could not update the database info", e);
+            return false;
+        }
+    }
+
+    /**
+     * Synchronize a list of listed directories with the database.
+     * Directories which don't exist in the database are persisted with all of
+     * their documents. Existing directories whose fingerprint and number of
+     * children did not change are left untouched. For all other directories, only
+     * added and removed documents and subdirectories are written, existing
+     * documents keep their tags and properties. Removed subdirectories are
+     * deleted with all of their subdirectories and documents.
+     * New subdirectories of a listed directory must be part of the list.
+     *
+     * @param listed the listed directories
+     * @return true if the operation was successful
+     */
+    public synchronized boolean synchronizeListedDirectories(List<Directory> listed) {
+        try {
+            // Get all listed directories which already exist in the database
+            final Map<String, Directory> existing = new HashMap<>();
+            for (Directory d : getAllDirectoriesIn(listed)) {
+                existing.put(d.path, d);
+            }
+
+            logger.info("Synchronizing {} changed directories, {} of them are new", listed.size(),
+                    listed.size() - existing.size());
+
+            // Persist all new directories and their documents
+            final List<Document> newDocuments = new ArrayList<>();
+            final List<Directory> newDirectories = new ArrayList<>();
+            for (Directory scanned : listed) {
+                if (!existing.containsKey(scanned.path)) {
+                    newDocuments.addAll(scanned.documents);
+                    newDirectories.add(scanned);
+                }
+            }
+
+            if (!persistDocuments(newDocuments) || !persistDirectories(newDirectories)) {
+                logger.error("Could not persist the new documents or directories");
+                return false;
+            }
+
+            // Link new subdirectories by their persisted instances.
+            // The new directories themselves are skipped below, as
+            // their fingerprints are always equal to themselves.
+            newDirectories.forEach(d -> existing.put(d.path, d));
+
+            // Update the existing directories
+            final List<Document> addedDocuments = new ArrayList<>();
+            final List<String> removedDocuments = new ArrayList<>();
+            final List<String> removedDirectories = new ArrayList<>();
+
+            manager.getTransaction().begin();
+            for (Directory scanned : listed) {
+                Directory persisted = existing.get(scanned.path);
+                if (persisted == null) continue;
+
+                persisted.lastModified = scanned.lastModified;
+                if (Objects.equals(persisted.fingerprint, scanned.fingerprint) &&
+                        Objects.equals(persisted.numChildren, scanned.numChildren)) {
+                    continue;
+                }
+
+                persisted.fingerprint = scanned.fingerprint;
+                persisted.numChildren = scanned.numChildren;
+
+                // Update the documents, remove all documents which don't exist anymore
+                Map<String, Document> scannedDocuments = new LinkedHashMap<>();
+                scanned.documents.forEach(d -> scannedDocuments.put(d.absolutePath, d));
+                for (Iterator<Document> it = persisted.documents.iterator(); it.hasNext(); ) {
+                    Document document = it.next();
+                    Document scannedDocument = scannedDocuments.remove(document.absolutePath);
+                    if (scannedDocument == null) {
+                        it.remove();
+                        removedDocuments.add(document.absolutePath);
+                    } else {
+                        // The content hash is outdated if the file was changed
+                        if (!Objects.equals(document.fileSize, scannedDocument.fileSize) ||
+                                !Objects.equals(document.lastModified, scannedDocument.lastModified)) {
+                            document.contentHash = null;
+                        }
+
+                        document.creationDate = scannedDocument.creationDate;
+                        document.fileSize = scannedDocument.fileSize;
+                        document.lastModified = scannedDocument.lastModified;
+                    }
+                }
+
+                for (Document d : scannedDocuments.values()) {
+                    manager.persist(d);
+                    persisted.documents.add(d);
+                    addedDocuments.add(d);
+                }
+
+                // Update the subdirectories, remove all subdirectories which don't exist anymore
+                Map<String, Directory> scannedDirectories = new LinkedHashMap<>();
+                scanned.directories.forEach(d -> scannedDirectories.put(d.path, d));
+                for (Iterator<Directory> it = persisted.directories.iterator(); it.hasNext(); ) {
+                    Directory dir = it.next();
+                    if (scannedDirectories.remove(dir.path) == null) {
+                        it.remove();
+                        removedDirectories.add(dir.path);
+                    }
+                }
+
+                for (Directory dir : scannedDirectories.values()) {
+                    persisted.directories.add(existing.getOrDefault(dir.path, dir));
+                }
+            }
+
+            // Write the updated join tables before deleting
+            // the removed documents and directories
+            manager.flush();
+
+            // Collect the removed directory trees before deleting anything
+            final List<String> deletedDocuments = new ArrayList<>(removedDocuments);
+            final List<String> deletedDirectories = new ArrayList<>();
+            for (String path : removedDirectories) {
+                collectDirectoryTree(path, deletedDocuments, deletedDirectories);
+            }
+
+            deleteDocumentsAndDirectories(deletedDocuments, deletedDirectories);
+            commit();
+            removedDirectories.forEach(filenameIndex::directoryRemoved);
+            filenameIndex.documentsRemoved(removedDocuments);
+            filenameIndex.documentsAdded(addedDocuments);
+
+            logger.info("Added {} documents, removed {} documents and {} directory trees",
+                    newDocuments.size() + addedDocuments.size(), removedDocuments.size(), removedDirectories.size());
+            manager.clear();
+            return true;
+        } catch (Exception e) {
+            logger.error("Could not synchronize the listed directories:", e);
+            if (manager.getTransaction().isActive()) {
+                manager.getTransaction().rollback();
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Collect the paths of a directory, all of its subdirectories and all documents in those
+     *
+     * @param path        the path of the directory
+     * @param documents   the list to add the paths of the documents to
+     * @param directories the list to add the paths of the directories to
+     */
+    private void collectDirectoryTree(String path, List<String> documents, List<String> directories) {
+        final String prefix = escapeLike(path) + "/%";
+
+        directories.addAll(manager.createQuery("select d.path from Directory as d " +
+                "where d.path = :path or d.path like :prefix escape '!'", String.class)
+                .setParameter("path", path)
+                .setParameter("prefix", prefix)
+                .getResultList());
+
+        documents.addAll(manager.createQuery("select d.absolutePath from Document as d " +
+                "where d.absolutePath like :prefix escape '!'", String.class)
+                .setParameter("prefix", prefix)
+                .getResultList());
+    }
+
+    /**
+     * Delete documents and directories with their tags, properties and all links
+     * to and from them. JPQL bulk deletes don't cascade to the collection tables,
+     * so the rows are deleted by the bulk loader or, if there is none, by removing
+     * the entities. The directories must already be removed from their parents,
+     * if those aren't deleted as well. Must be called inside of a transaction.
+     *
+     * @param documents   the paths of the documents to delete
+     * @param directories the paths of the directories to delete
+     */
+    private void deleteDocumentsAndDirectories(List<String> documents, List<String> directories) {
+        if (bulkLoader != null) {
+            manager.unwrap(Session.class).doWork(connection -> {
+                bulkLoader.deleteDocuments(connection, documents);
+                bulkLoader.deleteDirectories(connection, directories);
+            });
+        } else {
+            for (String path : directories) {
+                Directory directory = manager.find(Directory.class, path);
+                if (directory != null) manager.remove(directory);
+            }
+
+            for (String path : documents) {
+                Document document = manager.find(Document.class, path);
+                if (document != null) manager.remove(document);
+            }
+        }
+    }
+
+    /**
+     * Escape a string to be used in a like expression with '!' as the escape character
+     *
+     * @param value the value to escape
+     * @return the escaped value
+     */
+    private static String escapeLike(String value) {
+        return value.replace("!", "!!")
+                .replace("%", "!%")
+                .replace("_", "!_");
+    }
+
+    /**
+     * Find all documents in the database with identical contents.
+     * Only documents sharing their file size with another document are loaded.
+     * Content hashes computed by the finder are stored in the database,
+     * so later calls only read new or changed files.
+     * The returned documents are detached from the database.
+     *
+     * @param finder the duplicate finder to use
+     * @return all groups of documents with identical contents or null if the operation failed
+     */
+    @SuppressWarnings("unused")
+    public synchronized List<List<Document>> findDuplicates(DuplicateFinder finder) {
+        try {
+            final List<Document> candidates = manager.createQuery("select d from Document as d where d.fileSize in " +
+                    "(select s.fileSize from Document as s where s.fileSize > 0 group by s.fileSize having count(s) > 1)",
+                    Document.class).getResultList();
+
+            // The finder sets the content hashes of the managed
+            // documents, which are written on commit
+            manager.getTransaction().begin();
+            final List<List<Document>> duplicates = finder.findDuplicates(candidates);
+            commit();
+
+            manager.clear();
+            return duplicates;
+        } catch (Exception e) {
+            logger.error("Could not find the duplicates:", e);
+            if (manager.getTransaction().isActive()) {
+                manager.getTransaction().rollback();
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Copy the database of this database manager to another database,
+     * using the default page size and queue capacity
      *
      * @param toCopyTo the database manager managing the database to copy to
      * @return true if the operation was successful
      */
     @SuppressWarnings("unused")
     public synchronized boolean copyDatabaseTo(final DatabaseManager toCopyTo) {
+        return copyDatabaseTo(toCopyTo, DEFAULT_COPY_PAGE_SIZE, DEFAULT_COPY_QUEUE_CAPACITY, null);
+    }
+
+    /**
+     * Copy the database of this database manager to another database.
+     * Forward-only cursors read the documents, directories and the links between
+     * them in pages of a fixed size. Every page is passed through a bounded queue
+     * to a writer thread, which inserts it into the other database while the next
+     * page is being read. As only a few pages are held in memory at once, the memory
+     * usage does not depend on the size of the database. Only the tags, properties
+     * and property values are copied at once. Documents and directories which
+     * already exist in the other database are skipped.
+     *
+     * @param toCopyTo      the database manager managing the database to copy to
+     * @param pageSize      the number of elements to read and write at once
+     * @param queueCapacity the maximum number of pages waiting to be written
+     * @param listener      the listener to report the progress to. May be null.
+     * @return true if the operation was successful
+     */
+    public synchronized boolean copyDatabaseTo(final DatabaseManager toCopyTo, int pageSize, int queueCapacity,
+                                               CopyProgressListener listener) {
+        if (toCopyTo == this) {
+            throw new IllegalArgumentException("A database can't be copied to itself");
+        } else if (pageSize <= 0) {
+            throw new IllegalArgumentException("The page size must be greater than zero");
+        } else if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("The queue capacity must be greater than zero");
+        }
+
+        if (toCopyTo.bulkLoader == null) {
+            logger.warn("The database to copy to does not support bulk inserts, copying all elements at once");
+            return copyDatabaseFully(toCopyTo);
+        }
+
+        logger.info("Copying the database to another database");
+        try {
+            if (!toCopyTo.persistDatabaseInfo(this.getDatabaseInfo())) {
+                logger.error("Could not persist the database info");
+                return false;
+            }
+
+            if (!copyTagsAndPropertiesTo(toCopyTo)) {
+                logger.error("Could not copy the tags and properties");
+                return false;
+            }
+        } catch (Exception e) {
+            logger.error("Could not copy the database:", e);
+            return false;
+        }
+
+        final BlockingQueue<BooleanSupplier> queue = new ArrayBlockingQueue<>(queueCapacity);
+        final AtomicBoolean writeFailed = new AtomicBoolean(false);
+
+        // Start the writer thread
+        Thread writerThread = new Thread(() -> {
+            try {
+                while (true) {
+                    BooleanSupplier page = queue.take();
+                    if (page == END_OF_COPY) break;
+
+                    // Keep taking pages after a failure, so the reader is never blocked
+                    if (writeFailed.get()) continue;
+                    try {
+                        if (!page.getAsBoolean()) writeFailed.set(true);
+                    } catch (Exception e) {
+                        logger.error("Could not write a page to the database", e);
+                        writeFailed.set(true);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // The reader stopped early, stop writing
+                writeFailed.set(true);
+            }
+        }, "DatabaseCopyWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        boolean ok = false;
+        EntityManager cursor = factory.createEntityManager();
+        EntityManager loader = factory.createEntityManager();
+        try {
+            ok = copyPages(cursor.unwrap(Session.class), loader, toCopyTo, pageSize, queue, writeFailed, listener);
+            queue.put(END_OF_COPY);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while copying the database", e);
+            Thread.currentThread().interrupt();
+            writerThread.interrupt();
+            return false;
+        } catch (Exception e) {
+            logger.error("Could not read the database to copy", e);
+            writerThread.interrupt();
+            return false;
+        } finally {
+            cursor.close();
+            loader.close();
+        }
+
+        if (!ok || writeFailed.get()) {
+            logger.error("Could not copy the database");
+            return false;
+        } else {
+            logger.info("Successfully copied the database");
+            return true;
+        }
+    }
+
+    /**
+     * Copy the database of this database manager to another database
+     * by loading and merging all documents and directories at once
+     *
+     * @param toCopyTo the database manager managing the database to copy to
+     * @return true if the operation was successful
+     */
+    private boolean copyDatabaseFully(final DatabaseManager toCopyTo) {
         try {
             logger.info("Copying the database to another database");
             boolean ok = toCopyTo.persistDatabaseInfo(this.getDatabaseInfo());
@@ -672,6 +1931,311 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Copy all tags, property values and properties to another database.
+     * The properties are copied with all of their values.
+     *
+     * @param toCopyTo the database manager managing the database to copy to
+     * @return true if the operation was successful
+     */
+    private boolean copyTagsAndPropertiesTo(final DatabaseManager toCopyTo) {
+        return read(reader -> {
+            List<Tag> tags = reader.createQuery("select t from Tag as t", Tag.class)
+                    .getResultStream()
+                    .map(Tag::new)
+                    .collect(Collectors.toList());
+
+            List<PropertyValue> values = reader.createQuery("select v from PropertyValue as v", PropertyValue.class)
+                    .getResultStream()
+                    .map(v -> new PropertyValue(v.value))
+                    .collect(Collectors.toList());
+
+            List<Property> properties = reader.createQuery("select distinct p from Property as p left join fetch p.values",
+                    Property.class)
+                    .getResultStream()
+                    .map(p -> new Property(p, p.values.stream()
+                            .map(v -> new PropertyValue(v.value))
+                            .collect(Collectors.toList())))
+                    .collect(Collectors.toList());
+
+            return toCopyTo.persistTags(tags) && toCopyTo.persistPropertyValues(values) &&
+                    toCopyTo.persistProperties(properties, false);
+        });
+    }
+
+    /**
+     * Read all documents, directories and links in pages and pass them to the writer thread
+     *
+     * @param cursor      the session to read the pages with
+     * @param loader      the entity manager to load the documents of a page with
+     * @param toCopyTo    the database manager managing the database to copy to
+     * @param pageSize    the number of elements to read at once
+     * @param queue       the queue to pass the pages to the writer thread with
+     * @param writeFailed whether the writer thread failed to write a page
+     * @param listener    the listener to report the progress to. May be null.
+     * @return false if the writer thread failed to write a page
+     * @throws InterruptedException if the thread was interrupted while waiting for the writer thread
+     */
+    private boolean copyPages(Session cursor, EntityManager loader, DatabaseManager toCopyTo, int pageSize,
+                              BlockingQueue<BooleanSupplier> queue, AtomicBoolean writeFailed,
+                              CopyProgressListener listener) throws InterruptedException {
+        cursor.setDefaultReadOnly(true);
+
+        final long numDocuments = count(cursor, "select count(d) from Document as d");
+        boolean ok = scrollPages(cursor, "select d.absolutePath from Document as d", pageSize, (page, numRead) -> {
+            final List<Document> documents = loadDocumentCopies(loader, page);
+            return putPage(queue, writeFailed, withProgress(() -> toCopyTo.persistDocuments(documents), listener,
+                    CopyProgressListener.Stage.DOCUMENTS, numRead, numDocuments));
+        });
+        if (!ok) return false;
+
+        // The paths of the directories which already existed in the database copied to.
+        // Only accessed by the writer thread.
+        final Set<String> existing = new HashSet<>();
+
+        final long numDirectories = count(cursor, "select count(d) from Directory as d");
+        ok = scrollPages(cursor, "select d.path, d.name, d.lastModified, d.numChildren, d.fingerprint " +
+                "from Directory as d", pageSize, (page, numRead) -> {
+            final List<Directory> directories = new ArrayList<>(page.size());
+            for (Object[] row : page) {
+                Directory directory = new Directory((String) row[0], (String) row[1]);
+                directory.lastModified = (Long) row[2];
+                directory.numChildren = (Integer) row[3];
+                directory.fingerprint = (Long) row[4];
+                directories.add(directory);
+            }
+
+            return putPage(queue, writeFailed, withProgress(() -> toCopyTo.insertCopiedDirectories(directories,
+                    existing), listener, CopyProgressListener.Stage.DIRECTORIES, numRead, numDirectories));
+        });
+        if (!ok) return false;
+
+        final long numDocumentLinks = count(cursor, "select count(c) from Directory as d join d.documents as c");
+        final long numLinks = numDocumentLinks +
+                count(cursor, "select count(c) from Directory as d join d.directories as c");
+
+        ok = scrollPages(cursor, "select d.path, c.absolutePath from Directory as d join d.documents as c", pageSize,
+                (page, numRead) -> putPage(queue, writeFailed, withProgress(() -> toCopyTo.insertCopiedLinks(page,
+                        Collections.emptyList(), existing), listener, CopyProgressListener.Stage.LINKS, numRead,
+                        numLinks)));
+        if (!ok) return false;
+
+        return scrollPages(cursor, "select d.path, c.path from Directory as d join d.directories as c", pageSize,
+                (page, numRead) -> putPage(queue, writeFailed, withProgress(() -> toCopyTo.insertCopiedLinks(
+                        Collections.emptyList(), page, existing), listener, CopyProgressListener.Stage.LINKS,
+                        numDocumentLinks + numRead, numLinks)));
+    }
+
+    /**
+     * A consumer for the pages read by a cursor
+     */
+    @FunctionalInterface
+    private interface PageConsumer {
+        /**
+         * Accept a page
+         *
+         * @param page    the rows of the page
+         * @param numRead the number of rows read so far, including this page
+         * @return false if no more pages should be read
+         * @throws InterruptedException if the thread was interrupted while waiting
+         */
+        boolean accept(List<Object[]> page, long numRead) throws InterruptedException;
+    }
+
+    /**
+     * Read the results of a query using a forward-only cursor
+     * and pass them to a consumer in pages of a fixed size.
+     * The results are streamed from the database, see
+     * {@link #getStreamingFetchSize(Session, int)}.
+     *
+     * @param cursor   the session to read with
+     * @param query    the query to read the results of
+     * @param pageSize the number of rows per page
+     * @param consumer the consumer to pass the pages to
+     * @return false if the consumer stopped reading
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    private static boolean scrollPages(Session cursor, String query, int pageSize, PageConsumer consumer)
+            throws InterruptedException {
+        ScrollableResults results = cursor.createQuery(query)
+                .setReadOnly(true)
+                .setFetchSize(getStreamingFetchSize(cursor, pageSize))
+                .scroll(ScrollMode.FORWARD_ONLY);
+
+        try {
+            long numRead = 0;
+            List<Object[]> page = new ArrayList<>(pageSize);
+            while (results.next()) {
+                page.add(results.get());
+
+                if (page.size() == pageSize) {
+                    numRead += page.size();
+                    if (!consumer.accept(page, numRead)) return false;
+                    page = new ArrayList<>(pageSize);
+                }
+            }
+
+            return page.isEmpty() || consumer.accept(page, numRead + page.size());
+        } finally {
+            results.close();
+        }
+    }
+
+    /**
+     * Get the fetch size to stream the results of a query with.
+     * The SQLite and MariaDB drivers fetch as many rows at once as the fetch size.
+     * MySQL Connector/J reads the whole result set into memory for any positive
+     * fetch size unless cursor fetching is enabled and only streams the results
+     * row by row if the fetch size is {@link Integer#MIN_VALUE}. No other query may
+     * be run on the connection until a streamed result set is closed.
+     *
+     * @param session  the session to run the query with
+     * @param pageSize the number of rows to fetch at once
+     * @return the fetch size to use
+     */
+    private static int getStreamingFetchSize(Session session, int pageSize) {
+        return session.doReturningWork(connection -> connection.getMetaData().getDriverName()
+                .startsWith("MySQL Connector") ? Integer.MIN_VALUE : pageSize);
+    }
+
+    /**
+     * Get the result of a count query
+     *
+     * @param reader the entity manager to use
+     * @param query  the count query
+     * @return the result of the query
+     */
+    private static long count(EntityManager reader, String query) {
+        return reader.createQuery(query, Long.class).getSingleResult();
+    }
+
+    /**
+     * Load documents with their tags and properties and copy them, so
+     * they are no longer associated with the entity manager they were
+     * loaded with. The entity manager is cleared afterwards.
+     *
+     * @param loader the entity manager to load the documents with
+     * @param page   the rows containing the paths of the documents to load
+     * @return the copied documents
+     */
+    private static List<Document> loadDocumentCopies(EntityManager loader, List<Object[]> page) {
+        final List<String> paths = page.stream().map(row -> (String) row[0]).collect(Collectors.toList());
+        final List<Document> copies = new ArrayList<>(paths.size());
+
+        for (List<String> chunk : ListUtils.partition(paths, MAX_INPUT_ARRAY_LENGTH)) {
+            loader.createQuery("select distinct d from Document as d left join fetch d.tags " +
+                    "where d.absolutePath in :paths", Document.class)
+                    .setParameter("paths", chunk)
+                    .getResultList();
+
+            List<Document> documents = loader.createQuery("select distinct d from Document as d " +
+                    "left join fetch d.properties where d.absolutePath in :paths", Document.class)
+                    .setParameter("paths", chunk)
+                    .getResultList();
+
+            for (Document document : documents) {
+                Document copy = new Document(document);
+                copy.properties.replaceAll(set -> new PropertyValueSet(new Property(set.property.name),
+                        new PropertyValue(set.propertyValue.value)));
+                copies.add(copy);
+            }
+
+            loader.clear();
+        }
+
+        return copies;
+    }
+
+    /**
+     * Pass a page to the writer thread, unless the writer thread failed
+     *
+     * @param queue       the queue to pass the page with
+     * @param writeFailed whether the writer thread failed to write a page
+     * @param page        the operation writing the page
+     * @return false if the writer thread failed
+     * @throws InterruptedException if the thread was interrupted while waiting for the writer thread
+     */
+    private static boolean putPage(BlockingQueue<BooleanSupplier> queue, AtomicBoolean writeFailed,
+                                   BooleanSupplier page) throws InterruptedException {
+        if (writeFailed.get()) return false;
+
+        queue.put(page);
+        return true;
+    }
+
+    /**
+     * Report the progress of a copy after a page has been written
+     *
+     * @param write     the operation writing the page
+     * @param listener  the listener to report the progress to. May be null.
+     * @param stage     the current stage
+     * @param numCopied the number of elements copied after the page has been written
+     * @param total     the total number of elements of the current stage
+     * @return the operation writing the page and reporting the progress
+     */
+    private static BooleanSupplier withProgress(BooleanSupplier write, CopyProgressListener listener,
+                                                CopyProgressListener.Stage stage, long numCopied, long total) {
+        return () -> {
+            if (!write.getAsBoolean()) return false;
+
+            logger.debug("Copied {} of {} elements of stage {}", numCopied, total, stage);
+            if (listener != null) {
+                listener.progress(stage, numCopied, total);
+            }
+
+            return true;
+        };
+    }
+
+    /**
+     * Insert directories copied from another database without their contents.
+     * Directories already in the database are skipped and their paths are added
+     * to a set, so their links can be skipped as well.
+     *
+     * @param directories the directories to insert
+     * @param existing    the set to add the paths of existing directories to
+     * @return true if the operation was successful
+     */
+    private synchronized boolean insertCopiedDirectories(List<Directory> directories, Set<String> existing) {
+        final List<Directory> toInsert;
+        try {
+            toInsert = removeExisting(Directory.class, directories, d -> d.path, this::getAllDirectoriesIn);
+        } catch (Exception e) {
+            logger.error("Could not get all directories both in a list and the database", e);
+            return false;
+        }
+
+        if (toInsert.size() < directories.size()) {
+            final Set<String> inserted = toInsert.stream().map(d -> d.path).collect(Collectors.toSet());
+            directories.stream().map(d -> d.path).filter(p -> !inserted.contains(p)).forEach(existing::add);
+        }
+
+        return toInsert.isEmpty() ||
+                doSessionWork(connection -> bulkLoader.insertDirectories(connection, toInsert));
+    }
+
+    /**
+     * Insert links between directories copied from another database and their
+     * documents and subdirectories. Links of directories which existed before the
+     * copy are skipped, as they are already in the database.
+     *
+     * @param documentLinks  the paths of the directories and their documents
+     * @param directoryLinks the paths of the directories and their subdirectories
+     * @param existing       the paths of the directories which existed before the copy
+     * @return true if the operation was successful
+     */
+    private synchronized boolean insertCopiedLinks(List<Object[]> documentLinks, List<Object[]> directoryLinks,
+                                                   Set<String> existing) {
+        final List<Object[]> documents = documentLinks.stream()
+                .filter(link -> !existing.contains((String) link[0]))
+                .collect(Collectors.toList());
+        final List<Object[]> directories = directoryLinks.stream()
+                .filter(link -> !existing.contains((String) link[0]) && !existing.contains((String) link[1]))
+                .collect(Collectors.toList());
+
+        return doSessionWork(connection -> bulkLoader.insertLinks(connection, documents, directories));
+    }
+
     /**
      * Get a directory element by a path
      *
@@ -700,7 +2264,8 @@ public class DatabaseManager {
         // Persist the tag
         manager.getTransaction().begin();
         manager.persist(t);
-        manager.getTransaction().commit();
+        commit();
+        dictionary.putTags(List.of(t));
 
         return t;
     }
@@ -734,7 +2299,8 @@ public class DatabaseManager {
         // Persist the property
         manager.getTransaction().begin();
         manager.persist(p);
-        manager.getTransaction().commit();
+        commit();
+        dictionary.putProperty(name);
     }
 
     /**
@@ -748,19 +2314,31 @@ public class DatabaseManager {
      * @return the created {@link PropertyValueSet}
      */
     public synchronized PropertyValueSet createPropertyValueSet(String property, String value) {
-        Property p = manager.getReference(Property.class, property);
-        PropertyValue pv;
+        // Nothing has to be created if the value is already a value of the property
+        if (dictionary.containsPropertyLink(property, value)) {
+            return new PropertyValueSet(new Property(property), new PropertyValue(value));
+        }
 
-        try {
-            pv = manager.getReference(PropertyValue.class, value).get();
-        } catch (Exception ignored) {
-            pv = new PropertyValue(value);
+        Property p = manager.find(Property.class, property);
+        PropertyValue pv = dictionary.getPropertyValue(value);
+
+        if (pv == null) {
+            pv = manager.find(PropertyValue.class, value);
+            if (pv != null) {
+                dictionary.putPropertyValues(List.of(pv));
+            } else {
+                // Neither properties nor documents cascade to their values
+                pv = new PropertyValue(value);
+                manager.persist(pv);
+            }
         }
 
-        try {
+        if (p != null) {
             p.addValue(pv);
-        } catch (Exception ignored) {
+            dictionary.putProperty(property);
+        } else {
             p = new Property(property, pv);
+            manager.persist(p);
         }
 
         // Return the property value set
@@ -774,8 +2352,14 @@ public class DatabaseManager {
      * @return the found tag or null if not found
      */
     public synchronized Tag getTagByName(String name) {
+        Tag cached = dictionary.getTag(name);
+        if (cached != null) return cached;
+
         try {
-            return manager.find(Tag.class, name);
+            Tag tag = manager.find(Tag.class, name);
+            if (tag != null) dictionary.putTags(List.of(tag));
+
+            return tag;
         } catch (Exception e) {
             logger.error("Could not get a tag by its name", e);
             return null;
@@ -789,10 +2373,12 @@ public class DatabaseManager {
      * @return whether the tag exists
      */
     @SuppressWarnings("unused")
-    public synchronized boolean tagExists(String name) {
-        return manager.createQuery("select distinct count(t) from Tag as t where t.name = :name", Long.class)
+    public boolean tagExists(String name) {
+        if (dictionary.getTag(name) != null) return true;
+
+        return read(reader -> reader.createQuery("select distinct count(t) from Tag as t where t.name = :name", Long.class)
                 .setParameter("name", name)
-                .getSingleResult() > 0;
+                .getSingleResult() > 0);
     }
 
     /**
@@ -802,11 +2388,11 @@ public class DatabaseManager {
      * @return the tags similar to the name
      */
     @SuppressWarnings("unused")
-    public synchronized List<Tag> getTagsLike(String name) {
-        return manager.createQuery("select t from Tag as t where t.name like :name", Tag.class)
+    public List<Tag> getTagsLike(String name) {
+        return read(reader -> reader.createQuery("select t from Tag as t where t.name like :name", Tag.class)
                 .setParameter("name", name + '%')
                 .setMaxResults(FUZZY_SEARCH_MAX_RESULTS)
-                .getResultList();
+                .getResultList());
     }
 
     /**
@@ -831,11 +2417,11 @@ public class DatabaseManager {
      * @return the properties similar to name
      */
     @SuppressWarnings("unused")
-    public synchronized List<Property> getPropertiesLike(String name) {
-        return manager.createQuery("select p from Property as p where p.name like :name", Property.class)
+    public List<Property> getPropertiesLike(String name) {
+        return read(reader -> reader.createQuery("select p from Property as p where p.name like :name", Property.class)
                 .setParameter("name", name + '%')
                 .setMaxResults(FUZZY_SEARCH_MAX_RESULTS)
-                .getResultList();
+                .getResultList());
     }
 
     /**
@@ -845,11 +2431,12 @@ public class DatabaseManager {
      * @return the properties with a value similar to {@code value}
      */
     @SuppressWarnings("unused")
-    public synchronized List<PropertyValue> getPropertyValuesLike(String value) {
-        return manager.createQuery("select p from PropertyValue as p where p.value like :value", PropertyValue.class)
+    public List<PropertyValue> getPropertyValuesLike(String value) {
+        return read(reader -> reader.createQuery("select p from PropertyValue as p where p.value like :value",
+                PropertyValue.class)
                 .setParameter("value", value + '%')
                 .setMaxResults(FUZZY_SEARCH_MAX_RESULTS)
-                .getResultList();
+                .getResultList());
     }
 
     /**
@@ -859,8 +2446,10 @@ public class DatabaseManager {
      * @return true if the property exists
      */
     @SuppressWarnings("unused")
-    public synchronized boolean propertyExists(String value) {
-        return manager.find(Property.class, value) != null;
+    public boolean propertyExists(String value) {
+        if (dictionary.containsProperty(value)) return true;
+
+        return read(reader -> reader.find(Property.class, value) != null);
     }
 
     /**
@@ -870,53 +2459,329 @@ public class DatabaseManager {
      * @return true if the property value exists
      */
     @SuppressWarnings("unused")
-    public synchronized boolean propertyValueExists(String value) {
-        return manager.find(PropertyValue.class, value) != null;
+    public boolean propertyValueExists(String value) {
+        if (dictionary.getPropertyValue(value) != null) return true;
+
+        return read(reader -> reader.find(PropertyValue.class, value) != null);
     }
 
     /**
      * Get all documents by a {@link DocumentFilter},
-     * Returns a list of documents sorted by the
-     * calculated filter accuracy.
+     * Returns a list of up to 100 documents in no particular order,
+     * use {@link #getDocumentsRanked(DocumentFilter, int)} to get the
+     * documents sorted by their accuracy. The tags and properties of the
+     * returned documents are loaded, the documents are detached and
+     * changes must be written using {@link #persistDocument(Document)}.
+     * The page is cached for equivalent filters until the next write operation.
      *
      * @param filter the filters
      * @param offset the elements in the result list to skip
      * @return the retrieved documents
      */
-    public synchronized List<Document> getDocumentsBy(DocumentFilter filter, int offset) {
-        CriteriaBuilder cb = manager.getCriteriaBuilder();
-        CriteriaQuery<Document> query = filter.getFilterRequest(cb);
+    public List<Document> getDocumentsBy(DocumentFilter filter, int offset) {
+        final long generation = writeGeneration.get();
+        final List<Object> cacheKey = filter.getCacheKey();
+        final List<Document> cached = searchResults.getPage(cacheKey, offset, generation);
+        if (cached != null) return cached;
+
+        return read(reader -> {
+            CriteriaBuilder cb = reader.getCriteriaBuilder();
+            CriteriaQuery<Document> query = useFilenameIndex(reader, filter).getFilterRequest(cb);
+
+            List<Document> documents = reader.createQuery(query)
+                    .setFirstResult(offset)
+                    .setMaxResults(SEARCH_PAGE_SIZE)
+                    .getResultList();
+
+            loadTagsAndProperties(reader, documents);
+            searchResults.putPage(cacheKey, offset, generation, documents);
+            return documents;
+        });
+    }
 
-        // Create the query and use streams to convert and sort the results
-        return manager.createQuery(query)
-                .setFirstResult(offset)
-                .setMaxResults(100)
-                .getResultList()
-                .stream()
-                .map(d -> new DocumentSearchResult(d, filter.getFilters()))
-                .map(d -> d.document)
-                .collect(Collectors.toList());
+    /**
+     * Get the documents best matching a {@link DocumentFilter}, sorted by their accuracy.
+     * All matching documents are read in pages without their tags and properties.
+     * The number of tags and properties of every page is counted in bulk to calculate
+     * the accuracy, only the best results are kept in a bounded heap. Only the tags and
+     * properties of the returned documents are loaded, the documents are detached.
+     *
+     * @param filter     the filters
+     * @param maxResults the maximum number of results to return
+     * @return the best results, the most accurate first
+     */
+    public List<DocumentSearchResult> getDocumentsRanked(DocumentFilter filter, int maxResults) {
+        if (maxResults <= 0) {
+            throw new IllegalArgumentException("The maximum number of results must be greater than zero");
+        }
+
+        final List<DocumentFilterBase> filters = filter.getFilters();
+
+        // Lower accuracies are better, use the path to sort equally accurate results
+        final Comparator<Map.Entry<String, Integer>> ranking = Map.Entry.<String, Integer>comparingByValue()
+                .thenComparing(Map.Entry.comparingByKey());
+
+        return read(reader -> {
+            CriteriaBuilder cb = reader.getCriteriaBuilder();
+            DocumentFilter indexed = useFilenameIndex(reader, filter);
+
+            // The worst of the best results is at the head of the heap
+            PriorityQueue<Map.Entry<String, Integer>> best = new PriorityQueue<>(maxResults + 1, ranking.reversed());
+            String afterPath = null;
+            List<Document> candidates;
+
+            do {
+                candidates = reader.createQuery(indexed.getFilterRequestAfter(cb, afterPath))
+                        .setMaxResults(MAX_INPUT_ARRAY_LENGTH)
+                        .getResultList();
+                if (candidates.isEmpty()) break;
+
+                List<String> paths = candidates.stream().map(d -> d.absolutePath).collect(Collectors.toList());
+                Map<String, Integer> numTags = countPerDocument(reader, "select d.absolutePath, count(t) " +
+                        "from Document as d join d.tags as t where d.absolutePath in :paths " +
+                        "group by d.absolutePath", paths);
+                Map<String, Integer> numProperties = countPerDocument(reader, "select d.absolutePath, count(*) " +
+                        "from Document as d join d.properties as p where d.absolutePath in :paths " +
+                        "group by d.absolutePath", paths);
+
+                for (Document d : candidates) {
+                    int accuracy = 0;
+                    for (DocumentFilterBase f : filters) {
+                        accuracy += f.getAccuracy(d, numTags.getOrDefault(d.absolutePath, 0),
+                                numProperties.getOrDefault(d.absolutePath, 0));
+                    }
+
+                    best.add(new AbstractMap.SimpleImmutableEntry<>(d.absolutePath, accuracy));
+                    if (best.size() > maxResults) best.poll();
+                }
+
+                afterPath = paths.get(paths.size() - 1);
+                reader.clear();
+            } while (candidates.size() == MAX_INPUT_ARRAY_LENGTH);
+
+            // Load the best documents and sort them by their accuracy
+            List<Map.Entry<String, Integer>> ranked = new ArrayList<>(best);
+            ranked.sort(ranking);
+
+            List<String> paths = ranked.stream().map(Map.Entry::getKey).collect(Collectors.toList());
+            List<Document> documents = new ArrayList<>(paths.size());
+            for (List<String> chunk : ListUtils.partition(paths, MAX_INPUT_ARRAY_LENGTH)) {
+                documents.addAll(reader.createQuery("select d from Document as d where d.absolutePath in :paths",
+                        Document.class)
+                        .setParameter("paths", chunk)
+                        .getResultList());
+            }
+            loadTagsAndProperties(reader, documents);
+
+            Map<String, Document> byPath = new HashMap<>();
+            documents.forEach(d -> byPath.put(d.absolutePath, d));
+
+            List<DocumentSearchResult> results = new ArrayList<>(ranked.size());
+            for (Map.Entry<String, Integer> e : ranked) {
+                Document d = byPath.get(e.getKey());
+                if (d != null) results.add(new DocumentSearchResult(d, e.getValue()));
+            }
+
+            return results;
+        });
+    }
+
+    /**
+     * Run a query returning a path and a count per document
+     *
+     * @param reader the entity manager to use
+     * @param query  the query, with a paths parameter
+     * @param paths  the paths of the documents to count for
+     * @return the counts by the document paths. Documents without a row are missing.
+     */
+    private static Map<String, Integer> countPerDocument(EntityManager reader, String query, List<String> paths) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Object[] row : reader.createQuery(query, Object[].class)
+                .setParameter("paths", paths)
+                .getResultList()) {
+            counts.put((String) row[0], ((Number) row[1]).intValue());
+        }
+
+        return counts;
     }
 
     /**
-     * Get the number of rows in a filter query
+     * Get a page of documents matching a {@link DocumentFilter} using keyset pagination.
+     * The documents are sorted by their path. Every page contains a continuation token
+     * which must be passed to this method to get the next page. As the database seeks
+     * to the start of the page instead of skipping all previous rows, every page is as
+     * fast to retrieve as the first one. The tags and properties of the returned
+     * documents are loaded and the documents are detached.
+     *
+     * @param filter            the filters
+     * @param continuationToken the token of the previous page or null for the first page
+     * @param pageSize          the maximum number of documents in the page
+     * @return the retrieved page
+     * @throws IllegalArgumentException if the continuation token is invalid
+     */
+    public DocumentPage getDocumentPage(DocumentFilter filter, String continuationToken, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("The page size must be greater than zero");
+        }
+
+        final String afterPath = DocumentPage.decodeToken(continuationToken);
+        return read(reader -> {
+            CriteriaBuilder cb = reader.getCriteriaBuilder();
+
+            // Request one more document to find out whether there is a next page
+            List<Document> documents = reader.createQuery(useFilenameIndex(reader, filter)
+                    .getFilterRequestAfter(cb, afterPath))
+                    .setMaxResults(pageSize + 1)
+                    .getResultList();
+
+            String lastPath = null;
+            if (documents.size() > pageSize) {
+                documents = new ArrayList<>(documents.subList(0, pageSize));
+                lastPath = documents.get(pageSize - 1).absolutePath;
+            }
+
+            loadTagsAndProperties(reader, documents);
+            return new DocumentPage(documents, lastPath);
+        });
+    }
+
+    /**
+     * Restrict all substring and wildcard {@link FilenameFilter}s of a filter to the
+     * documents found using the filename index, so the database does not have to
+     * compare the filename of every document. The filename filters are kept, as the
+     * index only finds the documents containing all parts of the filename. Filters
+     * the index can't answer or which match more documents than may be passed
+     * as parameters in one query are left to the database.
+     *
+     * @param reader the entity manager to read the index with
+     * @param filter the filter to restrict
+     * @return the restricted filter or the filter itself if no filter could be restricted
+     */
+    private DocumentFilter useFilenameIndex(EntityManager reader, DocumentFilter filter) {
+        final List<DocumentFilterBase> filters = filter.getFilters();
+        final List<DocumentFilterBase> restrictions = new ArrayList<>();
+        for (DocumentFilterBase f : filters) {
+            if (f instanceof FilenameFilter && !((FilenameFilter) f).isExactMatch()) {
+                List<String> paths = filenameIndex.find(reader, ((FilenameFilter) f).getFilename(),
+                        MAX_INPUT_ARRAY_LENGTH);
+                if (paths != null) restrictions.add(new PathFilter(paths));
+            }
+        }
+
+        if (restrictions.isEmpty()) return filter;
+
+        filters.addAll(restrictions);
+        return DocumentFilter.createFilter(filters.toArray(new DocumentFilterBase[0]));
+    }
+
+    /**
+     * Load the tags, properties and property values of documents with a few
+     * queries instead of loading them lazily for every single document
+     *
+     * @param reader    the entity manager the documents were loaded with
+     * @param documents the documents to load the collections of
+     */
+    private static void loadTagsAndProperties(EntityManager reader, List<Document> documents) {
+        final Set<Property> properties = new HashSet<>();
+        for (List<Document> docs : ListUtils.partition(documents, MAX_INPUT_ARRAY_LENGTH)) {
+            reader.createQuery("select distinct d from Document as d left join fetch d.tags where d in :docs",
+                    Document.class)
+                    .setParameter("docs", docs)
+                    .getResultList();
+
+            reader.createQuery("select distinct d from Document as d left join fetch d.properties where d in :docs",
+                    Document.class)
+                    .setParameter("docs", docs)
+                    .getResultList();
+
+            docs.forEach(d -> d.properties.forEach(p -> properties.add(p.property)));
+        }
+
+        for (List<Property> props : ListUtils.partition(new ArrayList<>(properties), MAX_INPUT_ARRAY_LENGTH)) {
+            reader.createQuery("select distinct p from Property as p left join fetch p.values where p in :props",
+                    Property.class)
+                    .setParameter("props", props)
+                    .getResultList();
+        }
+    }
+
+    /**
+     * Get the number of rows in a filter query.
+     * The number is cached for equivalent filters until the next write operation.
      *
      * @param filter the filter
      * @return the number of rows
      */
     @SuppressWarnings("unused")
-    public synchronized long getNumDocumentsBy(DocumentFilter filter) {
-        try {
-            var cb = manager.getCriteriaBuilder();
-            CriteriaQuery<Long> query = filter.getFilterRequestCount(cb);
+    public long getNumDocumentsBy(DocumentFilter filter) {
+        final long generation = writeGeneration.get();
+        final List<Object> cacheKey = filter.getCacheKey();
+        final Long cached = searchResults.getCount(cacheKey, generation);
+        if (cached != null) return cached;
 
-            return manager.createQuery(query).getSingleResult();
+        try {
+            return read(reader -> {
+                var cb = reader.getCriteriaBuilder();
+                CriteriaQuery<Long> query = useFilenameIndex(reader, filter).getFilterRequestCount(cb);
+
+                long count = reader.createQuery(query).getSingleResult();
+                searchResults.putCount(cacheKey, generation, count);
+                return count;
+            });
         } catch (Exception e) {
             logger.error("Could not get the number of documents by a filer", e);
             return 0;
         }
     }
 
+    /**
+     * Get a page of documents matching a {@link DocumentFilter} and the total number
+     * of matching documents at once, like {@link #getDocumentsBy(DocumentFilter, int)}
+     * and {@link #getNumDocumentsBy(DocumentFilter)}. Both queries are run using the
+     * same entity manager. The documents are only counted if the page isn't the last
+     * one, as a last page ends with the last matching document. The page and the number
+     * are cached for equivalent filters until the next write operation, so paging through
+     * the results of a filter does not count the documents again.
+     *
+     * @param filter the filters
+     * @param offset the elements in the result list to skip
+     * @return the retrieved page with the total number of matching documents
+     */
+    public DocumentSearchPage getDocumentsWithCount(DocumentFilter filter, int offset) {
+        final long generation = writeGeneration.get();
+        final List<Object> cacheKey = filter.getCacheKey();
+        final List<Document> cachedPage = searchResults.getPage(cacheKey, offset, generation);
+        final Long cachedCount = cachedPage == null ? null : searchResults.getCount(cacheKey, generation);
+        if (cachedCount != null) {
+            return new DocumentSearchPage(cachedPage, cachedCount);
+        }
+
+        return read(reader -> {
+            CriteriaBuilder cb = reader.getCriteriaBuilder();
+            DocumentFilter indexed = useFilenameIndex(reader, filter);
+
+            List<Document> documents = reader.createQuery(indexed.getFilterRequest(cb))
+                    .setFirstResult(offset)
+                    .setMaxResults(SEARCH_PAGE_SIZE)
+                    .getResultList();
+
+            Long totalCount;
+            if (documents.size() < SEARCH_PAGE_SIZE && (offset == 0 || !documents.isEmpty())) {
+                totalCount = (long) offset + documents.size();
+            } else {
+                totalCount = searchResults.getCount(cacheKey, generation);
+                if (totalCount == null) {
+                    totalCount = reader.createQuery(indexed.getFilterRequestCount(cb)).getSingleResult();
+                }
+            }
+
+            loadTagsAndProperties(reader, documents);
+            searchResults.putCount(cacheKey, generation, totalCount);
+            searchResults.putPage(cacheKey, offset, generation, documents);
+            return new DocumentSearchPage(documents, totalCount);
+        });
+    }
+
     /**
      * Clear the entity manager
      */
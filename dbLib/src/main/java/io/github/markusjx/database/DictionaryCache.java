@@ -0,0 +1,256 @@
+package io.github.markusjx.database;
+
+import io.github.markusjx.database.types.Property;
+import io.github.markusjx.database.types.PropertyValue;
+import io.github.markusjx.database.types.PropertyValueSet;
+import io.github.markusjx.database.types.Tag;
+
+import javax.persistence.EntityManager;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache for the tags, properties and property values known to exist in
+ * the database and for the property values known to be values of a property.
+ * Each of those is bounded and evicts the least recently used entries once
+ * it is full. Tags, properties and property values are never deleted, so
+ * the entries never have to be invalidated. Only contains detached
+ * instances, which may be used to reference the entities in any entity manager.
+ */
+final class DictionaryCache {
+    /**
+     * The cached tags by their names
+     */
+    private final Map<String, Tag> tags;
+
+    /**
+     * The names of the cached properties
+     */
+    private final Map<String, Boolean> properties;
+
+    /**
+     * The cached property values by their values
+     */
+    private final Map<String, PropertyValue> propertyValues;
+
+    /**
+     * The property values known to be values of a property
+     */
+    private final Map<PropertyValueSet, Boolean> propertyLinks;
+
+    /**
+     * The maximum number of entries of each part of the cache
+     */
+    private final int capacity;
+
+    /**
+     * The number of lookups answered by the cache
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * The number of lookups not answered by the cache
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a new dictionary cache
+     *
+     * @param capacity the maximum number of entries of each part of the cache
+     */
+    DictionaryCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be greater than zero");
+        }
+
+        this.capacity = capacity;
+        this.tags = createLruMap(capacity);
+        this.properties = createLruMap(capacity);
+        this.propertyValues = createLruMap(capacity);
+        this.propertyLinks = createLruMap(capacity);
+    }
+
+    /**
+     * Create a map evicting the least recently used entry once it is full
+     *
+     * @param capacity the maximum number of entries
+     * @param <K>      the key type
+     * @param <V>      the value type
+     * @return the created map
+     */
+    private static <K, V> Map<K, V> createLruMap(int capacity) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Fill the cache with the entries of the database, up to its capacity
+     *
+     * @param reader the entity manager to read the entries with
+     */
+    void warm(EntityManager reader) {
+        List<String> tagNames = reader.createQuery("select t.name from Tag as t", String.class)
+                .setMaxResults(capacity)
+                .getResultList();
+        List<String> propertyNames = reader.createQuery("select p.name from Property as p", String.class)
+                .setMaxResults(capacity)
+                .getResultList();
+        List<String> values = reader.createQuery("select v.value from PropertyValue as v", String.class)
+                .setMaxResults(capacity)
+                .getResultList();
+        List<Object[]> links = reader.createQuery("select p.name, v.value from Property as p join p.values as v",
+                Object[].class)
+                .setMaxResults(capacity)
+                .getResultList();
+
+        synchronized (this) {
+            tagNames.forEach(name -> tags.put(name, new Tag(name)));
+            propertyNames.forEach(name -> properties.put(name, Boolean.TRUE));
+            values.forEach(value -> propertyValues.put(value, new PropertyValue(value)));
+            links.forEach(link -> propertyLinks.put(createLink((String) link[0], (String) link[1]), Boolean.TRUE));
+        }
+    }
+
+    /**
+     * Get a tag
+     *
+     * @param name the name of the tag
+     * @return the tag or null if it is not cached
+     */
+    synchronized Tag getTag(String name) {
+        return count(tags.get(name));
+    }
+
+    /**
+     * Add tags which exist in the database
+     *
+     * @param toAdd the tags to add
+     */
+    synchronized void putTags(Iterable<Tag> toAdd) {
+        for (Tag tag : toAdd) {
+            if (tag != null && tag.name != null) {
+                tags.put(tag.name, new Tag(tag.name));
+            }
+        }
+    }
+
+    /**
+     * Check if a property exists
+     *
+     * @param name the name of the property
+     * @return true if the property is cached
+     */
+    synchronized boolean containsProperty(String name) {
+        return count(properties.get(name)) != null;
+    }
+
+    /**
+     * Add a property which exists in the database
+     *
+     * @param name the name of the property
+     */
+    synchronized void putProperty(String name) {
+        if (name != null) {
+            properties.put(name, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Get a property value
+     *
+     * @param value the value
+     * @return the property value or null if it is not cached
+     */
+    synchronized PropertyValue getPropertyValue(String value) {
+        return count(propertyValues.get(value));
+    }
+
+    /**
+     * Add property values which exist in the database
+     *
+     * @param toAdd the property values to add
+     */
+    synchronized void putPropertyValues(Iterable<PropertyValue> toAdd) {
+        for (PropertyValue value : toAdd) {
+            if (value != null && value.value != null) {
+                propertyValues.put(value.value, new PropertyValue(value.value));
+            }
+        }
+    }
+
+    /**
+     * Check if a property value is known to be a value of a property.
+     * The property and the value exist in the database if it is.
+     *
+     * @param property the name of the property
+     * @param value    the value
+     * @return true if the value is known to be a value of the property
+     */
+    synchronized boolean containsPropertyLink(String property, String value) {
+        return count(propertyLinks.get(createLink(property, value))) != null;
+    }
+
+    /**
+     * Add a property value which is a value of a property in the database
+     *
+     * @param property the name of the property
+     * @param value    the value
+     */
+    synchronized void putPropertyLink(String property, String value) {
+        if (property != null && value != null) {
+            propertyLinks.put(createLink(property, value), Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Get the number of lookups answered by the cache
+     *
+     * @return the number of cache hits
+     */
+    long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of lookups not answered by the cache
+     *
+     * @return the number of cache misses
+     */
+    long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Count a lookup as a hit or a miss
+     *
+     * @param result the result of the lookup
+     * @param <T>    the result type
+     * @return the result
+     */
+    private <T> T count(T result) {
+        if (result != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+
+        return result;
+    }
+
+    /**
+     * Create the key of a link between a property and a value
+     *
+     * @param property the name of the property
+     * @param value    the value
+     * @return the key of the link
+     */
+    private static PropertyValueSet createLink(String property, String value) {
+        return new PropertyValueSet(new Property(property), new PropertyValue(value));
+    }
+}
@@ -0,0 +1,502 @@
+package io.github.markusjx.database;
+
+import io.github.markusjx.database.types.Directory;
+import io.github.markusjx.database.types.Document;
+import io.github.markusjx.database.types.PropertyValueSet;
+import io.github.markusjx.database.types.Tag;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metamodel.spi.MetamodelImplementor;
+import org.hibernate.persister.collection.AbstractCollectionPersister;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.ComponentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManagerFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+
+/**
+ * A class for inserting, updating and deleting documents with their tags and properties,
+ * directories and the links between directories and their children using
+ * batched JDBC statements instead of persisting every single entity.
+ * Writes multiple rows per insert statement if the database supports it.
+ * The table and column names are read from the Hibernate mapping, so
+ * they always match the generated schema.
+ */
+final class DocumentBulkLoader {
+    private static final Logger logger = LoggerFactory.getLogger(DocumentBulkLoader.class);
+
+    /**
+     * The properties of the document entity this loader writes, excluding the id
+     */
+    private static final Set<String> DOCUMENT_PROPERTIES = Set.of("filename", "parentPath", "creationDate",
+            "fileSize", "lastModified", "contentHash", "tags", "properties");
+
+    /**
+     * The properties of the directory entity this loader writes, excluding the id
+     */
+    private static final Set<String> DIRECTORY_PROPERTIES = Set.of("name", "documents", "directories",
+            "lastModified", "numChildren", "fingerprint");
+
+    /**
+     * The maximum number of keys in a single delete statement
+     */
+    private static final int MAX_DELETE_KEYS = 999;
+
+    /**
+     * The columns of the document table which are written by a scan:
+     * the creation date, the file size, the modification time and the content hash
+     */
+    private static final int[] DOCUMENT_SCAN_COLUMNS = {3, 4, 5, 6};
+
+    /**
+     * The columns of the directory table which are written by a scan:
+     * the modification time, the number of children and the fingerprint
+     */
+    private static final int[] DIRECTORY_SCAN_COLUMNS = {2, 3, 4};
+
+    /**
+     * The document table
+     */
+    private final BatchInsert documentTable;
+
+    /**
+     * The join table of the document tags
+     */
+    private final BatchInsert tagTable;
+
+    /**
+     * The collection table of the document properties
+     */
+    private final BatchInsert propertyTable;
+
+    /**
+     * Whether the property column comes before the property value
+     * column in the collection table of the document properties
+     */
+    private final boolean propertyFirst;
+
+    /**
+     * The directory table
+     */
+    private final BatchInsert directoryTable;
+
+    /**
+     * The join table of the directory documents
+     */
+    private final BatchInsert directoryDocumentTable;
+
+    /**
+     * The join table of the subdirectories
+     */
+    private final BatchInsert directoryDirectoryTable;
+
+    /**
+     * The staging table for backfilling the scanned columns of the document table
+     */
+    private final BatchInsert documentStage;
+
+    /**
+     * The staging table for backfilling the scanned columns of the directory table
+     */
+    private final BatchInsert directoryStage;
+
+    /**
+     * Create a new document bulk loader
+     *
+     * @param documentTable           the document table
+     * @param tagTable                the join table of the document tags
+     * @param propertyTable           the collection table of the document properties
+     * @param propertyFirst           whether the property column comes before the property value column
+     * @param directoryTable          the directory table
+     * @param directoryDocumentTable  the join table of the directory documents
+     * @param directoryDirectoryTable the join table of the subdirectories
+     */
+    private DocumentBulkLoader(BatchInsert documentTable, BatchInsert tagTable, BatchInsert propertyTable,
+                               boolean propertyFirst, BatchInsert directoryTable,
+                               BatchInsert directoryDocumentTable, BatchInsert directoryDirectoryTable) {
+        this.documentTable = documentTable;
+        this.tagTable = tagTable;
+        this.propertyTable = propertyTable;
+        this.propertyFirst = propertyFirst;
+        this.directoryTable = directoryTable;
+        this.directoryDocumentTable = directoryDocumentTable;
+        this.directoryDirectoryTable = directoryDirectoryTable;
+        this.documentStage = documentTable.staging("StagedDocument", DOCUMENT_SCAN_COLUMNS);
+        this.directoryStage = directoryTable.staging("StagedDirectory", DIRECTORY_SCAN_COLUMNS);
+    }
+
+    /**
+     * Create a bulk loader from the Hibernate mapping of an entity manager factory
+     *
+     * @param factory the factory to read the mapping from
+     * @return the created loader or null if the mapping is not supported
+     */
+    static DocumentBulkLoader create(EntityManagerFactory factory) {
+        try {
+            MetamodelImplementor metamodel = factory.unwrap(SessionFactoryImplementor.class).getMetamodel();
+            AbstractEntityPersister document = (AbstractEntityPersister) metamodel.entityPersister(Document.class);
+            AbstractEntityPersister directory = (AbstractEntityPersister) metamodel.entityPersister(Directory.class);
+            AbstractCollectionPersister tags = (AbstractCollectionPersister)
+                    metamodel.collectionPersister(Document.class.getName() + ".tags");
+            AbstractCollectionPersister properties = (AbstractCollectionPersister)
+                    metamodel.collectionPersister(Document.class.getName() + ".properties");
+            AbstractCollectionPersister directoryDocuments = (AbstractCollectionPersister)
+                    metamodel.collectionPersister(Directory.class.getName() + ".documents");
+            AbstractCollectionPersister directoryDirectories = (AbstractCollectionPersister)
+                    metamodel.collectionPersister(Directory.class.getName() + ".directories");
+
+            // Only write the mapping this loader knows about
+            if (!DOCUMENT_PROPERTIES.equals(new HashSet<>(Arrays.asList(document.getPropertyNames()))) ||
+                    !DIRECTORY_PROPERTIES.equals(new HashSet<>(Arrays.asList(directory.getPropertyNames()))) ||
+                    tags.hasIndex() || properties.hasIndex() || properties.getElementColumnNames().length != 2 ||
+                    directoryDocuments.hasIndex() || directoryDirectories.hasIndex()) {
+                logger.warn("The document mapping is not supported by the bulk loader");
+                return null;
+            }
+
+            BatchInsert documentTable = new BatchInsert(document.getTableName(), new String[]{
+                    single(document.getIdentifierColumnNames()),
+                    single(document.getPropertyColumnNames("filename")),
+                    single(document.getPropertyColumnNames("parentPath")),
+                    single(document.getPropertyColumnNames("creationDate")),
+                    single(document.getPropertyColumnNames("fileSize")),
+                    single(document.getPropertyColumnNames("lastModified")),
+                    single(document.getPropertyColumnNames("contentHash"))
+            }, new int[]{Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.DATE, Types.BIGINT, Types.BIGINT,
+                    Types.VARCHAR});
+
+            BatchInsert tagTable = new BatchInsert(tags.getTableName(), new String[]{
+                    single(tags.getKeyColumnNames()),
+                    single(tags.getElementColumnNames())
+            }, new int[]{Types.VARCHAR, Types.VARCHAR});
+
+            String[] elementColumns = properties.getElementColumnNames();
+            BatchInsert propertyTable = new BatchInsert(properties.getTableName(), new String[]{
+                    single(properties.getKeyColumnNames()),
+                    elementColumns[0],
+                    elementColumns[1]
+            }, new int[]{Types.VARCHAR, Types.VARCHAR, Types.VARCHAR});
+
+            BatchInsert directoryTable = new BatchInsert(directory.getTableName(), new String[]{
+                    single(directory.getIdentifierColumnNames()),
+                    single(directory.getPropertyColumnNames("name")),
+                    single(directory.getPropertyColumnNames("lastModified")),
+                    single(directory.getPropertyColumnNames("numChildren")),
+                    single(directory.getPropertyColumnNames("fingerprint"))
+            }, new int[]{Types.VARCHAR, Types.VARCHAR, Types.BIGINT, Types.INTEGER, Types.BIGINT});
+
+            BatchInsert directoryDocumentTable = new BatchInsert(directoryDocuments.getTableName(), new String[]{
+                    single(directoryDocuments.getKeyColumnNames()),
+                    single(directoryDocuments.getElementColumnNames())
+            }, new int[]{Types.VARCHAR, Types.VARCHAR});
+
+            BatchInsert directoryDirectoryTable = new BatchInsert(directoryDirectories.getTableName(), new String[]{
+                    single(directoryDirectories.getKeyColumnNames()),
+                    single(directoryDirectories.getElementColumnNames())
+            }, new int[]{Types.VARCHAR, Types.VARCHAR});
+
+            // The element columns are ordered like the properties of the embeddable
+            String[] elementProperties = ((ComponentType) properties.getElementType()).getPropertyNames();
+            return new DocumentBulkLoader(documentTable, tagTable, propertyTable,
+                    elementProperties[0].equals("property"), directoryTable, directoryDocumentTable,
+                    directoryDirectoryTable);
+        } catch (Exception e) {
+            logger.warn("Could not create the document bulk loader", e);
+            return null;
+        }
+    }
+
+    /**
+     * Get the only column of a property
+     *
+     * @param columns the columns of the property
+     * @return the only column
+     * @throws IllegalStateException if the property does not have exactly one column
+     */
+    private static String single(String[] columns) {
+        if (columns == null || columns.length != 1) {
+            throw new IllegalStateException("Expected exactly one column, got " + Arrays.toString(columns));
+        }
+
+        return columns[0];
+    }
+
+    /**
+     * Insert documents, their tags and their properties. All tags, properties
+     * and property values must already exist and none of the documents may
+     * exist in the database. Must be called inside of a transaction.
+     *
+     * @param connection the connection to insert with
+     * @param documents  the documents to insert
+     * @throws SQLException if the documents could not be inserted
+     */
+    void insert(Connection connection, List<Document> documents) throws SQLException {
+        final boolean multiRow = BatchInsert.supportsMultiRow(connection);
+
+        List<Object[]> documentRows = new ArrayList<>(documents.size());
+        List<Object[]> tagRows = new ArrayList<>();
+        List<Object[]> propertyRows = new ArrayList<>();
+
+        for (Document d : documents) {
+            documentRows.add(documentRow(d));
+
+            if (d.tags != null) {
+                for (Tag t : d.tags) {
+                    tagRows.add(new Object[]{d.absolutePath, t.name});
+                }
+            }
+
+            if (d.properties != null) {
+                for (PropertyValueSet p : d.properties) {
+                    if (propertyFirst) {
+                        propertyRows.add(new Object[]{d.absolutePath, p.property.name, p.propertyValue.value});
+                    } else {
+                        propertyRows.add(new Object[]{d.absolutePath, p.propertyValue.value, p.property.name});
+                    }
+                }
+            }
+        }
+
+        // The documents must be inserted before the collection rows referencing them
+        documentTable.insert(connection, documentRows, multiRow);
+        tagTable.insert(connection, tagRows, multiRow);
+        propertyTable.insert(connection, propertyRows, multiRow);
+
+        logger.debug("Inserted {} documents, {} tag rows and {} property rows", documentRows.size(),
+                tagRows.size(), propertyRows.size());
+    }
+
+    /**
+     * Insert directories without the links to their documents and subdirectories.
+     * None of the directories may exist in the database.
+     * Must be called inside of a transaction.
+     *
+     * @param connection  the connection to insert with
+     * @param directories the directories to insert
+     * @throws SQLException if the directories could not be inserted
+     */
+    void insertDirectories(Connection connection, List<Directory> directories) throws SQLException {
+        List<Object[]> rows = new ArrayList<>(directories.size());
+        for (Directory d : directories) {
+            rows.add(new Object[]{d.path, d.name, d.lastModified, d.numChildren, d.fingerprint});
+        }
+
+        directoryTable.insert(connection, rows, BatchInsert.supportsMultiRow(connection));
+        logger.debug("Inserted {} directories", rows.size());
+    }
+
+    /**
+     * Insert the links between directories and their documents and subdirectories.
+     * The directories and all of their children must already exist in the database
+     * and the links must not. Must be called inside of a transaction.
+     *
+     * @param connection  the connection to insert with
+     * @param directories the directories to insert the links of
+     * @throws SQLException if the links could not be inserted
+     */
+    void insertDirectoryLinks(Connection connection, List<Directory> directories) throws SQLException {
+        List<Object[]> documentLinks = new ArrayList<>();
+        List<Object[]> directoryLinks = new ArrayList<>();
+        for (Directory d : directories) {
+            for (Document document : d.documents) {
+                documentLinks.add(new Object[]{d.path, document.absolutePath});
+            }
+
+            for (Directory sub : d.directories) {
+                directoryLinks.add(new Object[]{d.path, sub.path});
+            }
+        }
+
+        insertLinks(connection, documentLinks, directoryLinks);
+    }
+
+    /**
+     * Insert links between directories and their documents and subdirectories.
+     * The directories and their children must already exist in the database
+     * and the links must not. Must be called inside of a transaction.
+     *
+     * @param connection     the connection to insert with
+     * @param documentLinks  the paths of the directories and their documents
+     * @param directoryLinks the paths of the directories and their subdirectories
+     * @throws SQLException if the links could not be inserted
+     */
+    void insertLinks(Connection connection, List<Object[]> documentLinks, List<Object[]> directoryLinks)
+            throws SQLException {
+        final boolean multiRow = BatchInsert.supportsMultiRow(connection);
+        directoryDocumentTable.insert(connection, documentLinks, multiRow);
+        directoryDirectoryTable.insert(connection, directoryLinks, multiRow);
+
+        logger.debug("Inserted {} directory document links and {} subdirectory links", documentLinks.size(),
+                directoryLinks.size());
+    }
+
+    /**
+     * Update the creation date, the file size and the modification time of documents.
+     * Clears the content hash of the documents whose contents may have changed.
+     * Must be called inside of a transaction.
+     *
+     * @param connection   the connection to update with
+     * @param documents    the documents to update
+     * @param hashOutdated the paths of the documents whose content hash must be cleared
+     * @throws SQLException if the documents could not be updated
+     */
+    void updateDocuments(Connection connection, List<Document> documents, Set<String> hashOutdated)
+            throws SQLException {
+        List<Object[]> rows = new ArrayList<>();
+        List<Object[]> outdatedRows = new ArrayList<>();
+        for (Document d : documents) {
+            Object[] row = documentRow(d);
+            if (hashOutdated.contains(d.absolutePath)) {
+                row[6] = null;
+                outdatedRows.add(row);
+            } else {
+                rows.add(row);
+            }
+        }
+
+        documentTable.update(connection, rows, 3, 4, 5);
+        documentTable.update(connection, outdatedRows, DOCUMENT_SCAN_COLUMNS);
+
+        logger.debug("Updated {} documents, cleared the content hash of {} of them", documents.size(),
+                outdatedRows.size());
+    }
+
+    /**
+     * Fill the scanned columns of documents which were persisted before these columns existed
+     * using a single update statement. Clears the content hash of the documents, as it can't
+     * be known whether it matches the current contents. Must be called inside of a transaction.
+     *
+     * @param connection the connection to update with
+     * @param documents  the documents to backfill
+     * @throws SQLException if the documents could not be updated
+     */
+    void backfillDocuments(Connection connection, List<Document> documents) throws SQLException {
+        List<Object[]> rows = new ArrayList<>(documents.size());
+        for (Document d : documents) {
+            Object[] row = documentRow(d);
+            rows.add(new Object[]{row[0], row[3], row[4], row[5], null});
+        }
+
+        int updated = documentTable.updateStaged(connection, documentStage, rows);
+        logger.debug("Backfilled {} documents", updated);
+    }
+
+    /**
+     * Update the modification time, the number of children and the fingerprint of directories.
+     * Must be called inside of a transaction.
+     *
+     * @param connection  the connection to update with
+     * @param directories the directories to update
+     * @throws SQLException if the directories could not be updated
+     */
+    void updateDirectories(Connection connection, List<Directory> directories) throws SQLException {
+        List<Object[]> rows = new ArrayList<>(directories.size());
+        for (Directory d : directories) {
+            rows.add(new Object[]{d.path, d.name, d.lastModified, d.numChildren, d.fingerprint});
+        }
+
+        directoryTable.update(connection, rows, DIRECTORY_SCAN_COLUMNS);
+        logger.debug("Updated {} directories", rows.size());
+    }
+
+    /**
+     * Fill the scanned columns of directories which were persisted before these columns
+     * existed using a single update statement. Must be called inside of a transaction.
+     *
+     * @param connection  the connection to update with
+     * @param directories the directories to backfill
+     * @throws SQLException if the directories could not be updated
+     */
+    void backfillDirectories(Connection connection, List<Directory> directories) throws SQLException {
+        List<Object[]> rows = new ArrayList<>(directories.size());
+        for (Directory d : directories) {
+            rows.add(new Object[]{d.path, d.lastModified, d.numChildren, d.fingerprint});
+        }
+
+        int updated = directoryTable.updateStaged(connection, directoryStage, rows);
+        logger.debug("Backfilled {} directories", updated);
+    }
+
+    /**
+     * Get the row of a document in the document table
+     *
+     * @param d the document
+     * @return the columns of the document
+     */
+    private static Object[] documentRow(Document d) {
+        return new Object[]{d.absolutePath, d.filename, d.parentPath,
+                d.creationDate == null ? null : java.sql.Date.valueOf(d.creationDate),
+                d.fileSize, d.lastModified, d.contentHash};
+    }
+
+    /**
+     * Delete documents with their tags and properties
+     * and remove them from their directories.
+     * Must be called inside of a transaction.
+     *
+     * @param connection the connection to delete with
+     * @param paths      the paths of the documents to delete
+     * @throws SQLException if the documents could not be deleted
+     */
+    void deleteDocuments(Connection connection, List<String> paths) throws SQLException {
+        delete(connection, directoryDocumentTable.getTable(), directoryDocumentTable.getColumn(1), paths);
+        delete(connection, tagTable.getTable(), tagTable.getColumn(0), paths);
+        delete(connection, propertyTable.getTable(), propertyTable.getColumn(0), paths);
+        delete(connection, documentTable.getTable(), documentTable.getColumn(0), paths);
+
+        logger.debug("Deleted {} documents", paths.size());
+    }
+
+    /**
+     * Delete directories and all links to and from them. Does
+     * not delete the documents and subdirectories of the directories.
+     * Must be called inside of a transaction.
+     *
+     * @param connection the connection to delete with
+     * @param paths      the paths of the directories to delete
+     * @throws SQLException if the directories could not be deleted
+     */
+    void deleteDirectories(Connection connection, List<String> paths) throws SQLException {
+        delete(connection, directoryDocumentTable.getTable(), directoryDocumentTable.getColumn(0), paths);
+        delete(connection, directoryDirectoryTable.getTable(), directoryDirectoryTable.getColumn(0), paths);
+        delete(connection, directoryDirectoryTable.getTable(), directoryDirectoryTable.getColumn(1), paths);
+        delete(connection, directoryTable.getTable(), directoryTable.getColumn(0), paths);
+
+        logger.debug("Deleted {} directories", paths.size());
+    }
+
+    /**
+     * Delete all rows of a table whose column value is in a list
+     *
+     * @param connection the connection to delete with
+     * @param table      the table to delete from
+     * @param column     the column to match
+     * @param keys       the values to delete
+     * @throws SQLException if the rows could not be deleted
+     */
+    private static void delete(Connection connection, String table, String column, List<String> keys)
+            throws SQLException {
+        for (int start = 0; start < keys.size(); start += MAX_DELETE_KEYS) {
+            List<String> limited = keys.subList(start, Math.min(start + MAX_DELETE_KEYS, keys.size()));
+            StringBuilder sql = new StringBuilder("DELETE FROM ").append(table).append(" WHERE ")
+                    .append(column).append(" IN (");
+            for (int i = 0; i < limited.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(')');
+
+            try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+                for (int i = 0; i < limited.size(); i++) {
+                    statement.setString(i + 1, limited.get(i));
+                }
+
+                statement.executeUpdate();
+            }
+        }
+    }
+}
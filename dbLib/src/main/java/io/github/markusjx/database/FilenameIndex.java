@@ -0,0 +1,670 @@
+package io.github.markusjx.database;
+
+import io.github.markusjx.database.types.Document;
+import io.github.markusjx.util.DatabaseUtils;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * An index of the filenames of all documents for substring and wildcard searches.
+ * Every filename is indexed by its trigrams, the sequences of three characters in
+ * it, so the documents whose filename contains a string can be found without
+ * comparing the string with every filename in the database. SQLite databases use
+ * an FTS5 table with the trigram tokenizer and MySQL and MariaDB databases use a
+ * table of trigrams, both are kept in sync with the document table by triggers.
+ * If neither can be created, the index is held in memory and must be kept in
+ * sync by the database manager. The index is case-insensitive.
+ */
+abstract class FilenameIndex {
+    private static final Logger logger = LoggerFactory.getLogger(FilenameIndex.class);
+
+    /**
+     * The number of characters of a trigram
+     */
+    static final int GRAM_LENGTH = 3;
+
+    /**
+     * The name of the index table and the prefix of its triggers
+     */
+    private static final String TABLE = "DocumentFilenameIndex";
+
+    /**
+     * The names of the triggers keeping the index table in sync
+     */
+    private static final String[] TRIGGERS = {TABLE + "_insert", TABLE + "_delete", TABLE + "_update"};
+
+    /**
+     * The name of the table assigning the integer keys of the SQLite index to the documents
+     */
+    private static final String KEYS = TABLE + "Keys";
+
+    /**
+     * The names of the triggers keeping the SQLite index in sync with its keys table
+     */
+    private static final String[] KEY_TRIGGERS = {KEYS + "_insert", KEYS + "_delete"};
+
+    /**
+     * The number of documents to read at once when filling the index table
+     */
+    private static final int FILL_PAGE_SIZE = 5000;
+
+    /**
+     * Create the filename index for a database. Creates the index
+     * table and its triggers if they don't exist yet and fills it
+     * with the filenames of all documents already in the database.
+     *
+     * @param factory the factory to create the entity manager to set up the index with
+     * @return the created index
+     */
+    static FilenameIndex create(EntityManagerFactory factory) {
+        EntityManager manager = factory.createEntityManager();
+        try {
+            try {
+                AbstractEntityPersister persister = (AbstractEntityPersister) factory
+                        .unwrap(SessionFactoryImplementor.class).getMetamodel().entityPersister(Document.class);
+                final String table = persister.getTableName();
+                final String id = persister.getIdentifierColumnNames()[0];
+                final String filename = persister.getPropertyColumnNames("filename")[0];
+
+                final AtomicReference<FilenameIndex> index = new AtomicReference<>();
+                Session session = manager.unwrap(Session.class);
+                Transaction transaction = session.beginTransaction();
+                try {
+                    session.doWork(connection -> {
+                        String product = connection.getMetaData().getDatabaseProductName();
+                        if ("SQLite".equals(product)) {
+                            SQLiteIndex.install(connection, table, id, filename);
+                            index.set(new SQLiteIndex());
+                        } else if ("MySQL".equals(product) || "MariaDB".equals(product)) {
+                            TrigramTableIndex.install(connection, table, id, filename);
+                            index.set(new TrigramTableIndex());
+                        }
+                    });
+
+                    transaction.commit();
+                } catch (Exception e) {
+                    transaction.rollback();
+                    throw e;
+                }
+
+                if (index.get() != null) {
+                    logger.info("Using the {}", index.get().getClass().getSimpleName());
+                    return index.get();
+                }
+            } catch (Exception e) {
+                logger.warn("Could not create the filename index in the database, using an in-memory index", e);
+            }
+
+            MemoryIndex index = new MemoryIndex();
+            index.documentsAdded(manager.createQuery("select d.absolutePath, d.filename from Document as d",
+                    Object[].class).getResultList(), row -> (String) row[0], row -> (String) row[1]);
+
+            logger.info("Using the {} with {} documents", index.getClass().getSimpleName(), index.size());
+            return index;
+        } finally {
+            manager.close();
+        }
+    }
+
+    /**
+     * Find the paths of all documents whose filename may match a like pattern.
+     * The pattern is split into its parts at the wildcards '*', '%' and '_',
+     * all documents whose filename contains every part which is at least
+     * {@link #GRAM_LENGTH} characters long are returned. The filenames of
+     * the returned documents must still be matched against the pattern.
+     *
+     * @param reader  the entity manager to read the index with
+     * @param pattern the pattern to search for
+     * @param limit   the maximum number of paths to return
+     * @return the found paths or null if the pattern has no part long enough
+     * to be searched using the index or more than {@code limit} documents were found
+     */
+    final List<String> find(EntityManager reader, String pattern, int limit) {
+        List<String> parts = getParts(pattern);
+        if (parts.isEmpty()) return null;
+
+        List<String> paths = findContaining(reader, parts, limit + 1);
+        if (paths == null || paths.size() > limit) return null;
+
+        return paths;
+    }
+
+    /**
+     * Find the paths of all documents whose filename contains all parts
+     *
+     * @param reader     the entity manager to read the index with
+     * @param parts      the lower case parts to search for, each at least {@link #GRAM_LENGTH} characters long
+     * @param maxResults the maximum number of paths to return
+     * @return the found paths or null if the index could not be read
+     */
+    protected abstract List<String> findContaining(EntityManager reader, List<String> parts, int maxResults);
+
+    /**
+     * Add documents which have been inserted into the database
+     *
+     * @param documents the inserted documents
+     */
+    void documentsAdded(Collection<Document> documents) {
+    }
+
+    /**
+     * Remove documents which have been deleted from the database
+     *
+     * @param paths the paths of the deleted documents
+     */
+    void documentsRemoved(Collection<String> paths) {
+    }
+
+    /**
+     * Remove all documents in a directory tree which has been deleted from the database
+     *
+     * @param path the path of the deleted directory
+     */
+    void directoryRemoved(String path) {
+    }
+
+    /**
+     * Remove all documents after all documents have been deleted from the database
+     */
+    void allRemoved() {
+    }
+
+    /**
+     * Split a like pattern into its lower case parts
+     * which are long enough to be searched using the index
+     *
+     * @param pattern the pattern to split
+     * @return the parts of the pattern
+     */
+    static List<String> getParts(String pattern) {
+        List<String> parts = new ArrayList<>();
+        for (String part : pattern.toLowerCase(Locale.ROOT).split("[*%_]+")) {
+            if (part.codePointCount(0, part.length()) >= GRAM_LENGTH) {
+                parts.add(part);
+            }
+        }
+
+        return parts;
+    }
+
+    /**
+     * Get the distinct trigrams of a lower case string
+     *
+     * @param value the string to get the trigrams of
+     * @return the trigrams of the string
+     */
+    static Set<String> getGrams(String value) {
+        final int[] codePoints = value.codePoints().toArray();
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= codePoints.length; i++) {
+            grams.add(new String(codePoints, i, GRAM_LENGTH));
+        }
+
+        return grams;
+    }
+
+    /**
+     * Select all strings of the first column of a native query
+     *
+     * @param reader     the entity manager to run the query with
+     * @param sql        the query to run
+     * @param parameters the parameters of the query
+     * @return the selected strings or null if the query failed
+     */
+    private static List<String> selectStrings(EntityManager reader, String sql, List<Object> parameters) {
+        List<String> result = new ArrayList<>();
+        boolean ok = DatabaseUtils.doSessionWork(reader, connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int i = 0; i < parameters.size(); i++) {
+                    statement.setObject(i + 1, parameters.get(i));
+                }
+
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        result.add(resultSet.getString(1));
+                    }
+                }
+            }
+        });
+
+        return ok ? result : null;
+    }
+
+    /**
+     * Count the rows returned by a query selecting a single number
+     *
+     * @param connection the connection to run the query with
+     * @param sql        the query to run
+     * @param parameters the parameters of the query
+     * @return the selected number
+     * @throws SQLException if the query failed
+     */
+    private static long count(Connection connection, String sql, String... parameters) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setString(i + 1, parameters[i]);
+            }
+
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * A filename index using an FTS5 table with the trigram tokenizer. Requires SQLite 3.34.0.
+     * <p>
+     * The FTS5 table references its rows by integer keys. The document table has a
+     * VARCHAR primary key, so its implicit rowid can't be used as the key, as VACUUM
+     * may renumber the rowids of tables without an INTEGER PRIMARY KEY, which would
+     * make the index point at the wrong documents. Instead, a keys table with an
+     * INTEGER PRIMARY KEY assigns a stable key to the path of every document and is
+     * used as the external content table of the FTS5 table. Triggers on the document
+     * table keep the keys table in sync, triggers on the keys table keep the FTS5
+     * table in sync. This costs a copy of the paths and filenames, but avoids
+     * rebuilding the whole index on every start.
+     */
+    private static final class SQLiteIndex extends FilenameIndex {
+        /**
+         * The query to find the documents matching an FTS5 query with
+         */
+        private static final String SELECT = "SELECT k.path FROM " + TABLE + " JOIN " + KEYS + " k ON k.id = " +
+                TABLE + ".rowid WHERE " + TABLE + " MATCH ? LIMIT ?";
+
+        /**
+         * Create the index tables and their triggers if they don't exist.
+         * If the document table was recreated, its triggers were dropped
+         * with it and the index tables are recreated as well.
+         *
+         * @param connection the connection to use
+         * @param table      the name of the document table
+         * @param id         the name of the id column of the document table
+         * @param filename   the name of the filename column of the document table
+         * @throws SQLException if the index could not be created
+         */
+        private static void install(Connection connection, String table, String id, String filename)
+                throws SQLException {
+            if (count(connection, "SELECT COUNT(*) FROM sqlite_master WHERE name IN (?, ?, ?, ?, ?, ?, ?)", TABLE,
+                    KEYS, TRIGGERS[0], TRIGGERS[1], TRIGGERS[2], KEY_TRIGGERS[0], KEY_TRIGGERS[1]) ==
+                    TRIGGERS.length + KEY_TRIGGERS.length + 2) {
+                return;
+            }
+
+            logger.info("Creating the filename index");
+            try (Statement statement = connection.createStatement()) {
+                for (String trigger : TRIGGERS) {
+                    statement.execute("DROP TRIGGER IF EXISTS " + trigger);
+                }
+
+                for (String trigger : KEY_TRIGGERS) {
+                    statement.execute("DROP TRIGGER IF EXISTS " + trigger);
+                }
+
+                statement.execute("DROP TABLE IF EXISTS " + TABLE);
+                statement.execute("DROP TABLE IF EXISTS " + KEYS);
+
+                // Assign keys to all documents already in the database and index them
+                statement.execute("CREATE TABLE " + KEYS + "(id INTEGER PRIMARY KEY, path TEXT NOT NULL UNIQUE, " +
+                        filename + " TEXT)");
+                statement.execute("INSERT INTO " + KEYS + "(path, " + filename + ") SELECT " + id + ", " +
+                        filename + " FROM " + table);
+                statement.execute("CREATE VIRTUAL TABLE " + TABLE + " USING fts5(" + filename + ", content='" +
+                        KEYS + "', content_rowid='id', tokenize='trigram')");
+                statement.execute("INSERT INTO " + TABLE + "(" + TABLE + ") VALUES ('rebuild')");
+
+                statement.execute("CREATE TRIGGER " + KEY_TRIGGERS[0] + " AFTER INSERT ON " + KEYS + " BEGIN " +
+                        "INSERT INTO " + TABLE + "(rowid, " + filename + ") VALUES (new.id, new." + filename +
+                        "); END");
+                statement.execute("CREATE TRIGGER " + KEY_TRIGGERS[1] + " AFTER DELETE ON " + KEYS + " BEGIN " +
+                        "INSERT INTO " + TABLE + "(" + TABLE + ", rowid, " + filename + ") VALUES ('delete', " +
+                        "old.id, old." + filename + "); END");
+
+                final String insert = "INSERT INTO " + KEYS + "(path, " + filename + ") VALUES (new." + id +
+                        ", new." + filename + ");";
+                final String delete = "DELETE FROM " + KEYS + " WHERE path = old." + id + ";";
+
+                statement.execute("CREATE TRIGGER " + TRIGGERS[0] + " AFTER INSERT ON " + table + " BEGIN " +
+                        insert + " END");
+                statement.execute("CREATE TRIGGER " + TRIGGERS[1] + " AFTER DELETE ON " + table + " BEGIN " +
+                        delete + " END");
+                statement.execute("CREATE TRIGGER " + TRIGGERS[2] + " AFTER UPDATE OF " + id + ", " + filename +
+                        " ON " + table + " BEGIN " + delete + " " + insert + " END");
+            }
+        }
+
+        @Override
+        protected List<String> findContaining(EntityManager reader, List<String> parts, int maxResults) {
+            // A quoted string of at least three characters matches all filenames containing it
+            String match = parts.stream()
+                    .map(part -> '"' + part.replace("\"", "\"\"") + '"')
+                    .collect(Collectors.joining(" AND "));
+
+            return selectStrings(reader, SELECT, List.of(match, maxResults));
+        }
+    }
+
+    /**
+     * A filename index using a table of the trigrams of all filenames
+     * with the paths of the documents. Used for MySQL and MariaDB.
+     */
+    private static final class TrigramTableIndex extends FilenameIndex {
+        @Override
+        protected List<String> findContaining(EntityManager reader, List<String> parts, int maxResults) {
+            Set<String> grams = new LinkedHashSet<>();
+            parts.forEach(part -> grams.addAll(getGrams(part)));
+
+            // Only documents containing all trigrams may contain all parts
+            String sql = "SELECT path FROM " + TABLE + " WHERE trigram IN (" +
+                    String.join(", ", Collections.nCopies(grams.size(), "?")) +
+                    ") GROUP BY path HAVING COUNT(DISTINCT trigram) = ? LIMIT ?";
+
+            List<Object> parameters = new ArrayList<>(grams);
+            parameters.add(grams.size());
+            parameters.add(maxResults);
+            return selectStrings(reader, sql, parameters);
+        }
+
+        /**
+         * Create the index table and its triggers if they don't exist
+         * and fill the table with the trigrams of all documents.
+         *
+         * @param connection the connection to use
+         * @param table      the name of the document table
+         * @param id         the name of the id column of the document table
+         * @param filename   the name of the filename column of the document table
+         * @throws SQLException if the index could not be created
+         */
+        private static void install(Connection connection, String table, String id, String filename)
+                throws SQLException {
+            if (count(connection, "SELECT COUNT(*) FROM information_schema.TRIGGERS WHERE TRIGGER_SCHEMA = " +
+                    "DATABASE() AND TRIGGER_NAME IN (?, ?, ?)", TRIGGERS) == TRIGGERS.length &&
+                    count(connection, "SELECT COUNT(*) FROM information_schema.TABLES WHERE TABLE_SCHEMA = " +
+                            "DATABASE() AND TABLE_NAME = ?", TABLE) == 1) {
+                return;
+            }
+
+            logger.info("Creating the filename index");
+            try (Statement statement = connection.createStatement()) {
+                for (String trigger : TRIGGERS) {
+                    statement.execute("DROP TRIGGER IF EXISTS " + trigger);
+                }
+
+                statement.execute("DROP TABLE IF EXISTS " + TABLE);
+                statement.execute("CREATE TABLE " + TABLE + "(trigram VARCHAR(3) CHARACTER SET utf8mb4 COLLATE " +
+                        "utf8mb4_bin NOT NULL, path VARCHAR(255) NOT NULL, PRIMARY KEY (trigram, path), " +
+                        "INDEX " + TABLE + "_path (path))");
+
+                final String delete = "DELETE FROM " + TABLE + " WHERE path = OLD." + id + ";";
+                final String insert = "WHILE i <= CHAR_LENGTH(name) - " + (GRAM_LENGTH - 1) + " DO " +
+                        "INSERT IGNORE INTO " + TABLE + "(trigram, path) VALUES (SUBSTRING(name, i, " + GRAM_LENGTH +
+                        "), NEW." + id + "); SET i = i + 1; END WHILE;";
+                final String declare = "DECLARE i INT DEFAULT 1; DECLARE name TEXT DEFAULT LOWER(NEW." + filename +
+                        ");";
+
+                statement.execute("CREATE TRIGGER " + TRIGGERS[0] + " AFTER INSERT ON " + table +
+                        " FOR EACH ROW BEGIN " + declare + " " + insert + " END");
+                statement.execute("CREATE TRIGGER " + TRIGGERS[1] + " AFTER DELETE ON " + table +
+                        " FOR EACH ROW BEGIN " + delete + " END");
+                statement.execute("CREATE TRIGGER " + TRIGGERS[2] + " AFTER UPDATE ON " + table +
+                        " FOR EACH ROW BEGIN " + declare + " IF NOT (OLD." + filename + " <=> NEW." + filename +
+                        ") OR OLD." + id + " <> NEW." + id + " THEN " + delete + " " + insert + " END IF; END");
+            }
+
+            fill(connection, table, id, filename);
+        }
+
+        /**
+         * Insert the trigrams of all documents into the index table.
+         * Reads the documents in pages sorted by their path.
+         *
+         * @param connection the connection to use
+         * @param table      the name of the document table
+         * @param id         the name of the id column of the document table
+         * @param filename   the name of the filename column of the document table
+         * @throws SQLException if the trigrams could not be inserted
+         */
+        private static void fill(Connection connection, String table, String id, String filename)
+                throws SQLException {
+            final BatchInsert insert = new BatchInsert(TABLE, new String[]{"trigram", "path"},
+                    new int[]{Types.VARCHAR, Types.VARCHAR});
+            final boolean multiRow = BatchInsert.supportsMultiRow(connection);
+            final String select = "SELECT " + id + ", " + filename + " FROM " + table + " WHERE " + id +
+                    " > ? ORDER BY " + id + " LIMIT " + FILL_PAGE_SIZE;
+
+            String lastPath = "";
+            long numIndexed = 0;
+            try (PreparedStatement statement = connection.prepareStatement(select)) {
+                while (true) {
+                    statement.setString(1, lastPath);
+                    List<Object[]> rows = new ArrayList<>();
+                    int numRead = 0;
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            lastPath = resultSet.getString(1);
+                            String name = resultSet.getString(2);
+                            if (name != null) {
+                                for (String gram : getGrams(name.toLowerCase(Locale.ROOT))) {
+                                    rows.add(new Object[]{gram, lastPath});
+                                }
+                            }
+
+                            numRead++;
+                        }
+                    }
+
+                    if (numRead == 0) break;
+
+                    insert.insert(connection, rows, multiRow);
+                    numIndexed += numRead;
+                }
+            }
+
+            logger.info("Indexed the filenames of {} documents", numIndexed);
+        }
+    }
+
+    /**
+     * A filename index held in memory, used if the index can't be
+     * stored in the database. Assigns an id to every document and
+     * stores the ids of all documents containing a trigram in a
+     * sorted posting list. Removed documents are only marked as
+     * removed until more than half of the documents are removed.
+     */
+    private static final class MemoryIndex extends FilenameIndex {
+        /**
+         * The ids of all documents by their paths
+         */
+        private final NavigableMap<String, Integer> ids = new TreeMap<>();
+
+        /**
+         * The paths of all documents by their ids, null if removed
+         */
+        private final List<String> paths = new ArrayList<>();
+
+        /**
+         * The lower case filenames of all documents by their ids, null if removed
+         */
+        private final List<String> names = new ArrayList<>();
+
+        /**
+         * The sorted ids of the documents containing a trigram by the trigram
+         */
+        private final Map<String, Postings> postings = new HashMap<>();
+
+        @Override
+        protected synchronized List<String> findContaining(EntityManager reader, List<String> parts,
+                                                           int maxResults) {
+            // Only check the documents of the shortest posting list
+            Postings shortest = null;
+            for (String part : parts) {
+                for (String gram : getGrams(part)) {
+                    Postings p = postings.get(gram);
+                    if (p == null) return new ArrayList<>();
+                    if (shortest == null || p.size < shortest.size) shortest = p;
+                }
+            }
+
+            List<String> result = new ArrayList<>();
+            for (int i = 0; i < shortest.size && result.size() < maxResults; i++) {
+                final String name = names.get(shortest.ids[i]);
+                if (name != null && parts.stream().allMatch(name::contains)) {
+                    result.add(paths.get(shortest.ids[i]));
+                }
+            }
+
+            return result;
+        }
+
+        @Override
+        void documentsAdded(Collection<Document> documents) {
+            documentsAdded(documents, d -> d.absolutePath, d -> d.filename);
+        }
+
+        /**
+         * Add documents to the index
+         *
+         * @param documents the documents to add
+         * @param path      the function to get the path of a document
+         * @param filename  the function to get the filename of a document
+         * @param <T>       the document type
+         */
+        private synchronized <T> void documentsAdded(Collection<T> documents, Function<T, String> path,
+                                                     Function<T, String> filename) {
+            for (T document : documents) {
+                add(path.apply(document), filename.apply(document));
+            }
+        }
+
+        @Override
+        synchronized void documentsRemoved(Collection<String> paths) {
+            paths.forEach(this::remove);
+            compactIfRequired();
+        }
+
+        @Override
+        synchronized void directoryRemoved(String path) {
+            final String prefix = path + "/";
+            new ArrayList<>(ids.subMap(prefix, prefix + Character.MAX_VALUE).keySet()).forEach(this::remove);
+            compactIfRequired();
+        }
+
+        @Override
+        synchronized void allRemoved() {
+            ids.clear();
+            paths.clear();
+            names.clear();
+            postings.clear();
+        }
+
+        /**
+         * Get the number of documents in the index
+         *
+         * @return the number of documents
+         */
+        private synchronized int size() {
+            return ids.size();
+        }
+
+        /**
+         * Add a document to the index. Replaces the document if it is
+         * already in the index with another filename.
+         *
+         * @param path     the path of the document
+         * @param filename the filename of the document
+         */
+        private void add(String path, String filename) {
+            if (path == null || filename == null) return;
+
+            final String name = filename.toLowerCase(Locale.ROOT);
+            final Integer existing = ids.get(path);
+            if (existing != null) {
+                if (name.equals(names.get(existing))) return;
+                remove(path);
+            }
+
+            final int id = paths.size();
+            ids.put(path, id);
+            paths.add(path);
+            names.add(name);
+
+            // The ids are increasing, so the posting lists stay sorted
+            for (String gram : getGrams(name)) {
+                postings.computeIfAbsent(gram, g -> new Postings()).add(id);
+            }
+        }
+
+        /**
+         * Mark a document as removed
+         *
+         * @param path the path of the document
+         */
+        private void remove(String path) {
+            final Integer id = ids.remove(path);
+            if (id != null) {
+                paths.set(id, null);
+                names.set(id, null);
+            }
+        }
+
+        /**
+         * Rebuild the index if more than half of the ids belong to removed documents
+         */
+        private void compactIfRequired() {
+            if (ids.size() * 2 >= paths.size()) return;
+
+            final List<String> livePaths = new ArrayList<>(ids.keySet());
+            final List<String> liveNames = new ArrayList<>(livePaths.size());
+            livePaths.forEach(p -> liveNames.add(names.get(ids.get(p))));
+
+            allRemoved();
+            for (int i = 0; i < livePaths.size(); i++) {
+                add(livePaths.get(i), liveNames.get(i));
+            }
+        }
+
+        /**
+         * A growable, sorted list of document ids
+         */
+        private static final class Postings {
+            /**
+             * The document ids
+             */
+            private int[] ids = new int[4];
+
+            /**
+             * The number of document ids
+             */
+            private int size = 0;
+
+            /**
+             * Add a document id greater than all ids in the list
+             *
+             * @param id the id to add
+             */
+            private void add(int id) {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                }
+
+                ids[size++] = id;
+            }
+        }
+    }
+}
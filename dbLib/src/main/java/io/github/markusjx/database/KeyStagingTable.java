@@ -0,0 +1,119 @@
+package io.github.markusjx.database;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metamodel.spi.MetamodelImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManagerFactory;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A temporary table for checking which keys of a large list
+ * already exist in the database. The keys are inserted into the
+ * staging table using batched statements and the missing keys
+ * are selected using a single anti-join, so the existing entities
+ * don't have to be loaded in chunks of {@code in} queries.
+ */
+final class KeyStagingTable {
+    private static final Logger logger = LoggerFactory.getLogger(KeyStagingTable.class);
+
+    /**
+     * The name of the staging table
+     */
+    private static final String TABLE = "StagedKey";
+
+    /**
+     * The name of the key column of the staging table
+     */
+    private static final String COLUMN = "keyValue";
+
+    /**
+     * The batch insert for the staging table
+     */
+    private static final BatchInsert INSERT = new BatchInsert(TABLE, new String[]{COLUMN}, new int[]{Types.VARCHAR});
+
+    /**
+     * The metamodel to get the table and id column of an entity from
+     */
+    private final MetamodelImplementor metamodel;
+
+    /**
+     * Create a new key staging table
+     *
+     * @param metamodel the metamodel to get the table and id column of an entity from
+     */
+    private KeyStagingTable(MetamodelImplementor metamodel) {
+        this.metamodel = metamodel;
+    }
+
+    /**
+     * Create a key staging table for the entities of an entity manager factory
+     *
+     * @param factory the factory to read the mapping from
+     * @return the created staging table or null if the mapping could not be read
+     */
+    static KeyStagingTable create(EntityManagerFactory factory) {
+        try {
+            return new KeyStagingTable(factory.unwrap(SessionFactoryImplementor.class).getMetamodel());
+        } catch (Exception e) {
+            logger.warn("Could not create the key staging table", e);
+            return null;
+        }
+    }
+
+    /**
+     * Get all keys which don't exist in the table of an entity.
+     * The entity must have a single string id column.
+     * Must be called inside of a transaction.
+     *
+     * @param connection the connection to use
+     * @param entity     the entity class to search in
+     * @param keys       the distinct keys to search for
+     * @return all keys not in the database
+     * @throws SQLException if the keys could not be searched
+     */
+    List<String> findMissing(Connection connection, Class<?> entity, Collection<String> keys) throws SQLException {
+        AbstractEntityPersister persister = (AbstractEntityPersister) metamodel.entityPersister(entity);
+        String[] idColumns = persister.getIdentifierColumnNames();
+        if (idColumns.length != 1) {
+            throw new IllegalArgumentException("The entity " + entity.getName() + " does not have a single id column");
+        }
+
+        final String table = persister.getTableName();
+        final String id = idColumns[0];
+        List<String> missing = new ArrayList<>();
+
+        try (Statement statement = connection.createStatement()) {
+            // The table is private to the connection and only created once per connection
+            statement.execute("CREATE TEMPORARY TABLE IF NOT EXISTS " + TABLE + "(" + COLUMN + " TEXT NOT NULL)");
+            statement.executeUpdate("DELETE FROM " + TABLE);
+
+            List<Object[]> rows = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                rows.add(new Object[]{key});
+            }
+            INSERT.insert(connection, rows, BatchInsert.supportsMultiRow(connection));
+
+            try (ResultSet result = statement.executeQuery("SELECT s." + COLUMN + " FROM " + TABLE + " s LEFT JOIN " +
+                    table + " t ON t." + id + " = s." + COLUMN + " WHERE t." + id + " IS NULL")) {
+                while (result.next()) {
+                    missing.add(result.getString(1));
+                }
+            }
+
+            statement.executeUpdate("DELETE FROM " + TABLE);
+        }
+
+        logger.debug("{} of {} {} keys are not in the database", missing.size(), keys.size(), entity.getSimpleName());
+        return missing;
+    }
+}
@@ -0,0 +1,347 @@
+package io.github.markusjx.database;
+
+import io.github.markusjx.database.types.Document;
+import io.github.markusjx.database.types.Property;
+import io.github.markusjx.database.types.PropertyValue;
+import io.github.markusjx.database.types.PropertyValueSet;
+import io.github.markusjx.database.types.Tag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache for the pages of documents matching a filter and for the number
+ * of documents matching a filter. The entries are keyed by the cache key of
+ * the filter, see {@link io.github.markusjx.database.filter.DocumentFilter#getCacheKey()},
+ * so equivalent filters share their entries. Every entry belongs to the write
+ * generation it was read at, the whole cache is cleared once a newer generation
+ * is used. The cache is bounded by the number of entries and by the approximate
+ * size of the cached documents, the least recently used entries are evicted
+ * first. Only contains deep copies of the documents, including their tags,
+ * properties and property values, which are copied again when they are
+ * returned, so the caller may modify them.
+ */
+final class SearchResultCache {
+    /**
+     * The approximate number of bytes used by an entry without its documents
+     */
+    private static final long ENTRY_SIZE = 128;
+
+    /**
+     * The approximate number of bytes used by a document without its strings
+     */
+    private static final long DOCUMENT_SIZE = 96;
+
+    /**
+     * The approximate number of bytes used by a tag or property of a document without its strings
+     */
+    private static final long REFERENCE_SIZE = 32;
+
+    /**
+     * The cached entries, the least recently used first
+     */
+    private final LinkedHashMap<List<Object>, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The maximum number of entries
+     */
+    private final int maxEntries;
+
+    /**
+     * The maximum approximate size of all entries in bytes
+     */
+    private final long maxSize;
+
+    /**
+     * The approximate size of all entries in bytes
+     */
+    private long size = 0;
+
+    /**
+     * The write generation of the cached entries
+     */
+    private long generation = 0;
+
+    /**
+     * The number of lookups answered by the cache
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * The number of lookups not answered by the cache
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a new search result cache
+     *
+     * @param maxEntries the maximum number of entries
+     * @param maxSize    the maximum approximate size of all entries in bytes
+     */
+    SearchResultCache(int maxEntries, long maxSize) {
+        if (maxEntries <= 0 || maxSize <= 0) {
+            throw new IllegalArgumentException(
+                    "The maximum number of entries and the maximum size must be greater than zero");
+        }
+
+        this.maxEntries = maxEntries;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get a cached page of documents
+     *
+     * @param filterKey  the cache key of the filter or null if the filter can't be cached
+     * @param offset     the elements in the result list skipped by the page
+     * @param generation the current write generation
+     * @return copies of the documents of the page or null if the page is not cached
+     */
+    synchronized List<Document> getPage(List<Object> filterKey, int offset, long generation) {
+        if (filterKey == null) return null;
+
+        @SuppressWarnings("unchecked")
+        final List<Document> documents = (List<Document>) get(Arrays.asList("page", filterKey, offset), generation);
+        return documents == null ? null : copy(documents);
+    }
+
+    /**
+     * Add a page of documents
+     *
+     * @param filterKey  the cache key of the filter or null if the filter can't be cached
+     * @param offset     the elements in the result list skipped by the page
+     * @param generation the write generation the page was read at
+     * @param documents  the documents of the page, the tags and properties must be loaded
+     */
+    synchronized void putPage(List<Object> filterKey, int offset, long generation, List<Document> documents) {
+        if (filterKey == null) return;
+
+        put(Arrays.asList("page", filterKey, offset), generation, copy(documents), getSize(documents));
+    }
+
+    /**
+     * Get the cached number of documents matching a filter
+     *
+     * @param filterKey  the cache key of the filter or null if the filter can't be cached
+     * @param generation the current write generation
+     * @return the number of documents or null if the number is not cached
+     */
+    synchronized Long getCount(List<Object> filterKey, long generation) {
+        if (filterKey == null) return null;
+
+        return (Long) get(Arrays.asList("count", filterKey), generation);
+    }
+
+    /**
+     * Add the number of documents matching a filter
+     *
+     * @param filterKey  the cache key of the filter or null if the filter can't be cached
+     * @param generation the write generation the documents were counted at
+     * @param count      the number of matching documents
+     */
+    synchronized void putCount(List<Object> filterKey, long generation, long count) {
+        if (filterKey == null) return;
+
+        put(Arrays.asList("count", filterKey), generation, count, 0);
+    }
+
+    /**
+     * Get the number of lookups answered by the cache
+     *
+     * @return the number of cache hits
+     */
+    long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of lookups not answered by the cache
+     *
+     * @return the number of cache misses
+     */
+    long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Get a cached value and count the lookup as a hit or a miss
+     *
+     * @param key        the key of the entry
+     * @param generation the current write generation
+     * @return the cached value or null if it is not cached
+     */
+    private Object get(List<Object> key, long generation) {
+        useGeneration(generation);
+        final Entry entry = entries.get(key);
+
+        if (entry != null && entry.generation == generation) {
+            hits.incrementAndGet();
+            return entry.value;
+        } else {
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Add a value and evict the least recently used entries until the cache fits its bounds.
+     * Values read at an older write generation than the cached entries are dropped.
+     *
+     * @param key        the key of the entry
+     * @param generation the write generation the value was read at
+     * @param value      the value to add
+     * @param valueSize  the approximate size of the value in bytes
+     */
+    private void put(List<Object> key, long generation, Object value, long valueSize) {
+        useGeneration(generation);
+        if (generation != this.generation || ENTRY_SIZE + valueSize > maxSize) return;
+
+        final Entry previous = entries.put(key, new Entry(generation, value, ENTRY_SIZE + valueSize));
+        if (previous != null) {
+            size -= previous.size;
+        }
+
+        size += ENTRY_SIZE + valueSize;
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries || size > maxSize) {
+            size -= eldest.next().size;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Clear the cache if a newer write generation is used
+     *
+     * @param generation the write generation to use
+     */
+    private void useGeneration(long generation) {
+        if (generation > this.generation) {
+            entries.clear();
+            size = 0;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Copy documents with their tags, properties and property values, so no
+     * instance is shared between the copies and the original documents.
+     * Properties shared by the original documents are copied once and
+     * shared by the copies as well, as their value lists may be large.
+     *
+     * @param documents the documents to copy
+     * @return the copied documents
+     */
+    private static List<Document> copy(List<Document> documents) {
+        final Map<Property, Property> properties = new IdentityHashMap<>();
+        final List<Document> copies = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            // The copy constructor copies the tags but not the properties
+            Document copy = new Document(document);
+            copy.properties.replaceAll(set -> new PropertyValueSet(
+                    properties.computeIfAbsent(set.property, SearchResultCache::copy),
+                    new PropertyValue(set.propertyValue.value)));
+            copies.add(copy);
+        }
+
+        return copies;
+    }
+
+    /**
+     * Copy a property with its values
+     *
+     * @param property the property to copy
+     * @return the copied property
+     */
+    private static Property copy(Property property) {
+        final List<PropertyValue> values = new ArrayList<>(property.values.size());
+        for (PropertyValue value : property.values) {
+            values.add(new PropertyValue(value.value));
+        }
+
+        return new Property(property, values);
+    }
+
+    /**
+     * Get the approximate size of documents in bytes, including
+     * the values of their properties. Every property is only
+     * counted once, as the copies share their properties.
+     *
+     * @param documents the documents
+     * @return the approximate size
+     */
+    private static long getSize(List<Document> documents) {
+        final Set<Property> properties = Collections.newSetFromMap(new IdentityHashMap<>());
+        long res = 0;
+        for (Document document : documents) {
+            res += DOCUMENT_SIZE + getSize(document.filename) + getSize(document.absolutePath)
+                    + getSize(document.parentPath) + getSize(document.contentHash);
+
+            for (Tag tag : document.tags) {
+                res += REFERENCE_SIZE + getSize(tag.name);
+            }
+
+            for (PropertyValueSet set : document.properties) {
+                res += REFERENCE_SIZE + getSize(set.propertyValue.value);
+                if (properties.add(set.property)) {
+                    res += REFERENCE_SIZE + getSize(set.property.name);
+                    for (PropertyValue value : set.property.values) {
+                        res += REFERENCE_SIZE + getSize(value.value);
+                    }
+                }
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * Get the approximate size of a string in bytes
+     *
+     * @param str the string, may be null
+     * @return the approximate size
+     */
+    private static long getSize(String str) {
+        return str == null ? 0 : 40 + str.length();
+    }
+
+    /**
+     * A cached value
+     */
+    private static final class Entry {
+        /**
+         * The write generation the value was read at
+         */
+        private final long generation;
+
+        /**
+         * The cached value
+         */
+        private final Object value;
+
+        /**
+         * The approximate size of the entry in bytes
+         */
+        private final long size;
+
+        /**
+         * Create a new entry
+         *
+         * @param generation the write generation the value was read at
+         * @param value      the cached value
+         * @param size       the approximate size of the entry in bytes
+         */
+        private Entry(long generation, Object value, long size) {
+            this.generation = generation;
+            this.value = value;
+            this.size = size;
+        }
+    }
+}
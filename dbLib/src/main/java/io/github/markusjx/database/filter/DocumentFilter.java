@@ -5,6 +5,7 @@ import io.github.markusjx.database.types.Document;
 import javax.persistence.criteria.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -23,9 +24,14 @@ public class DocumentFilter {
         this.filters = new ArrayList<>();
     }
 
-    @SuppressWarnings("unused")
+    /**
+     * Copy a document filter. Filters added to
+     * the copy are not added to the original.
+     *
+     * @param other the document filter to copy
+     */
     public DocumentFilter(DocumentFilter other) {
-        this.filters = other.filters;
+        this.filters = new ArrayList<>(other.filters);
     }
 
     /**
@@ -63,11 +69,34 @@ public class DocumentFilter {
         return new ArrayList<>(filters);
     }
 
-    private void addFilters(CriteriaBuilder cb, CriteriaQuery<?> query, Root<Document> root) {
+    /**
+     * Get a key identifying the documents matched by this filter.
+     * The keys of all filters are sorted, so document filters containing
+     * equal filters in a different order have equal keys.
+     * See {@link DocumentFilterBase#getCacheKey()}.
+     *
+     * @return the key of this filter or null if any of the filters can't be cached
+     */
+    public List<Object> getCacheKey() {
+        List<Object> keys = new ArrayList<>(filters.size());
+        for (DocumentFilterBase filter : filters) {
+            Object key = filter.getCacheKey();
+            if (key == null) return null;
+
+            keys.add(key);
+        }
+
+        // Keys with equal string representations but different values
+        // may be sorted differently, this only causes cache misses
+        keys.sort(Comparator.comparing(String::valueOf));
+        return keys;
+    }
+
+    private void addFilters(CriteriaBuilder cb, AbstractQuery<?> query, Root<Document> root, Predicate... extra) {
         query.distinct(true);
 
         // Create new lists with all predicates
-        List<Predicate> where = new ArrayList<>();
+        List<Predicate> where = new ArrayList<>(Arrays.asList(extra));
         List<Expression<?>> groupBy = new ArrayList<>();
         int havingCountGe = 0;
 
@@ -114,12 +143,51 @@ public class DocumentFilter {
         return query;
     }
 
+    /**
+     * Get the query with this filter's filters, returning the documents
+     * sorted by their path and starting after a path. Used for keyset
+     * pagination: the database can seek to the first document of a page
+     * using the primary key index instead of skipping all previous rows.
+     *
+     * @param cb        the criteria builder instance
+     * @param afterPath the path of the last document of the previous page or null for the first page
+     * @return the CriteriaQuery
+     */
+    public CriteriaQuery<Document> getFilterRequestAfter(CriteriaBuilder cb, String afterPath) {
+        CriteriaQuery<Document> query = cb.createQuery(Document.class);
+        Root<Document> root = query.from(Document.class);
+        Path<String> path = root.get("absolutePath");
+
+        query.select(root);
+        if (afterPath == null) {
+            addFilters(cb, query, root);
+        } else {
+            addFilters(cb, query, root, cb.greaterThan(path, afterPath));
+        }
+
+        query.orderBy(cb.asc(path));
+        return query;
+    }
+
+    /**
+     * Get the query counting the documents matching this filter's filters.
+     * The filters may group the documents, so the matching documents are
+     * selected in a subquery and counted by the outer query.
+     *
+     * @param cb the criteria builder instance
+     * @return the CriteriaQuery
+     */
     public CriteriaQuery<Long> getFilterRequestCount(CriteriaBuilder cb) {
         CriteriaQuery<Long> query = cb.createQuery(Long.class);
         Root<Document> root = query.from(Document.class);
 
+        Subquery<String> matching = query.subquery(String.class);
+        Root<Document> matchingRoot = matching.from(Document.class);
+        matching.select(matchingRoot.get("absolutePath"));
+        addFilters(cb, matching, matchingRoot);
+
         query.select(cb.count(root));
-        addFilters(cb, query, root);
+        query.where(root.get("absolutePath").in(matching));
 
         // Return the query
         return query;
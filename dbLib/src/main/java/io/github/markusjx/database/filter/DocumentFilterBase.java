@@ -26,4 +26,32 @@ public interface DocumentFilterBase {
      * @return the accuracy. Must greater or equal to zero
      */
     int getAccuracy(Document document);
+
+    /**
+     * Get the match accuracy using the number of tags and properties
+     * of a document instead of its tag and property collections.
+     * Used by ranked searches, which count the tags and properties
+     * of all candidates in bulk instead of loading their collections.
+     * Must return the same value as {@link #getAccuracy(Document)}.
+     *
+     * @param document      the document object to match. Its collections may not be loaded.
+     * @param numTags       the number of tags of the document
+     * @param numProperties the number of properties of the document
+     * @return the accuracy. Must greater or equal to zero
+     */
+    default int getAccuracy(Document document, int numTags, int numProperties) {
+        return getAccuracy(document);
+    }
+
+    /**
+     * Get a key identifying the documents matched by this filter. Filters matching
+     * the same documents must return equal keys, e.g. the values of a filter should
+     * be sorted. Used to cache search results, so filters returning null are
+     * never cached.
+     *
+     * @return the key of this filter or null if the filter can't be cached
+     */
+    default Object getCacheKey() {
+        return null;
+    }
 }
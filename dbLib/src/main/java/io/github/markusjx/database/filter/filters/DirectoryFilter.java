@@ -7,6 +7,7 @@ import io.github.markusjx.database.types.Document;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import java.util.Arrays;
 
 /**
  * A filter to filter by directories
@@ -40,4 +41,9 @@ public class DirectoryFilter implements DocumentFilterBase {
     public int getAccuracy(Document document) {
         return 0;
     }
+
+    @Override
+    public Object getCacheKey() {
+        return Arrays.asList("directory", path);
+    }
 }
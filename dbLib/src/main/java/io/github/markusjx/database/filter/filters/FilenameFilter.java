@@ -7,6 +7,7 @@ import io.github.markusjx.database.types.Document;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import java.util.Arrays;
 
 /**
  * A filter for filtering documents by their name
@@ -40,6 +41,24 @@ public class FilenameFilter implements DocumentFilterBase {
         this.exactMatch = other.exactMatch;
     }
 
+    /**
+     * Get the file name to search
+     *
+     * @return the file name to search
+     */
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * Check whether the document name must match the file name exactly
+     *
+     * @return true if the file name must match exactly
+     */
+    public boolean isExactMatch() {
+        return exactMatch;
+    }
+
     /**
      * Get the filter operations
      *
@@ -93,4 +112,9 @@ public class FilenameFilter implements DocumentFilterBase {
             return Math.abs(this.filename.length() - document.filename.length());
         }
     }
+
+    @Override
+    public Object getCacheKey() {
+        return Arrays.asList("filename", filename, exactMatch);
+    }
 }
@@ -0,0 +1,61 @@
+package io.github.markusjx.database.filter.filters;
+
+import io.github.markusjx.database.filter.DocumentFilterBase;
+import io.github.markusjx.database.filter.DocumentFilterOperations;
+import io.github.markusjx.database.types.Document;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A filter to filter documents by their paths
+ */
+public class PathFilter implements DocumentFilterBase {
+    /**
+     * The paths of the documents to find
+     */
+    private final List<String> paths;
+
+    /**
+     * Create a path filter
+     *
+     * @param paths the paths of the documents to find
+     */
+    public PathFilter(Collection<String> paths) {
+        this.paths = new ArrayList<>(paths);
+    }
+
+    @Override
+    public DocumentFilterOperations getFilter(CriteriaBuilder cb, Root<Document> root) {
+        return new DocumentFilterOperations() {
+            @Override
+            public Predicate where() {
+                // An empty in-list is not valid in all databases, match nothing instead
+                if (paths.isEmpty()) {
+                    return cb.disjunction();
+                }
+
+                return root.get("absolutePath").in(paths);
+            }
+        };
+    }
+
+    @Override
+    public int getAccuracy(Document document) {
+        return 0;
+    }
+
+    @Override
+    public Object getCacheKey() {
+        List<String> sorted = new ArrayList<>(paths);
+        Collections.sort(sorted);
+
+        return Arrays.asList("paths", sorted);
+    }
+}
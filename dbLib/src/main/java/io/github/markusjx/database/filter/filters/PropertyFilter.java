@@ -8,6 +8,8 @@ import io.github.markusjx.datatypes.ChainedHashMap;
 
 import javax.persistence.criteria.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -120,4 +122,29 @@ public class PropertyFilter implements DocumentFilterBase {
         // subtract those two values
         return document.properties.size() - properties.size();
     }
+
+    /**
+     * Get the accuracy from the number of properties of a document
+     *
+     * @param document      the document object to match
+     * @param numTags       the number of tags of the document
+     * @param numProperties the number of properties of the document
+     * @return the match accuracy
+     */
+    @Override
+    public int getAccuracy(Document document, int numTags, int numProperties) {
+        return numProperties - properties.size();
+    }
+
+    @Override
+    public Object getCacheKey() {
+        // The number of properties is significant, only sort them
+        List<List<String>> pairs = new ArrayList<>();
+        properties.forEach((name, values) -> values.forEach(value -> pairs.add(Arrays.asList(name, value))));
+        final Comparator<String> nullsFirst = Comparator.nullsFirst(Comparator.naturalOrder());
+        pairs.sort(Comparator.comparing((List<String> pair) -> pair.get(0), nullsFirst)
+                .thenComparing(pair -> pair.get(1), nullsFirst));
+
+        return Arrays.asList("properties", pairs);
+    }
 }
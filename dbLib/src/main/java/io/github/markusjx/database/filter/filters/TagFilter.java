@@ -7,6 +7,8 @@ import io.github.markusjx.database.types.Tag;
 
 import javax.persistence.criteria.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -86,4 +88,27 @@ public class TagFilter implements DocumentFilterBase {
         // filters tag list.
         return document.tags.size() - tags.size();
     }
+
+    /**
+     * Get the accuracy from the number of tags of a document
+     *
+     * @param document      the document object to match
+     * @param numTags       the number of tags of the document
+     * @param numProperties the number of properties of the document
+     * @return the number of tags of the document minus the size of this objects tag list
+     */
+    @Override
+    public int getAccuracy(Document document, int numTags, int numProperties) {
+        return numTags - tags.size();
+    }
+
+    @Override
+    public Object getCacheKey() {
+        // The number of tags is significant, only sort them
+        List<String> names = new ArrayList<>(tags.size());
+        tags.forEach(t -> names.add(t.name));
+        names.sort(Comparator.nullsFirst(Comparator.naturalOrder()));
+
+        return Arrays.asList("tags", names);
+    }
 }
@@ -133,4 +133,9 @@ public class DateFilter implements DocumentFilterBase {
     public int getAccuracy(Document document) {
         return filterImpl.getAccuracy(document);
     }
+
+    @Override
+    public Object getCacheKey() {
+        return filterImpl.getCacheKey();
+    }
 }
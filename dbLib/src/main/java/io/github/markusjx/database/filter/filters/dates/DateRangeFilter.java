@@ -7,6 +7,7 @@ import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.Objects;
 
 /**
@@ -67,4 +68,9 @@ public class DateRangeFilter implements DateFilterBase {
         // This is not as accurate as a single date filter
         return 1;
     }
+
+    @Override
+    public Object getCacheKey() {
+        return Arrays.asList("dateRange", begin, end);
+    }
 }
@@ -7,6 +7,7 @@ import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.Objects;
 
 /**
@@ -59,4 +60,9 @@ public class SingleDateFilter implements DateFilterBase {
         // This is more accurate than a range match
         return 0;
     }
+
+    @Override
+    public Object getCacheKey() {
+        return Arrays.asList("date", date);
+    }
 }
@@ -3,8 +3,14 @@ package io.github.markusjx.database.persistence;
 import io.github.markusjx.datatypes.ChainedHashMap;
 import org.hibernate.dialect.SQLiteDialect;
 import org.hibernate.tool.schema.Action;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.persistence.spi.PersistenceUnitInfo;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -15,6 +21,14 @@ import static org.hibernate.cfg.AvailableSettings.*;
  * An SQLite persistence provider
  */
 public final class SQLiteProvider extends PersistenceProvider {
+    private static final Logger logger = LoggerFactory.getLogger(SQLiteProvider.class);
+
+    /**
+     * The page cache size used by the bulk import profile.
+     * Negative values are interpreted as kibibytes by SQLite.
+     */
+    private static final int BULK_IMPORT_CACHE_SIZE = -131072;
+
     /**
      * The property map
      */
@@ -68,4 +82,128 @@ public final class SQLiteProvider extends PersistenceProvider {
     protected Map<String, Object> getProperties() {
         return properties;
     }
+
+    /**
+     * Check if a connection is connected to an SQLite database
+     *
+     * @param connection the connection to check
+     * @return true if the connection is an SQLite connection
+     * @throws SQLException if the database could not be queried
+     */
+    public static boolean isSQLite(Connection connection) throws SQLException {
+        return "SQLite".equals(connection.getMetaData().getDatabaseProductName());
+    }
+
+    /**
+     * Switch a connection to the bulk import profile. Syncs the database file
+     * less often, uses a larger page cache and stores temporary tables in memory.
+     * The settings only apply to the given connection, the journal mode of the
+     * database is not changed. With a rollback journal, a power loss during the
+     * import may corrupt the database. If a setting can't be changed, the previous
+     * settings of the connection are restored. Must not be called inside of a transaction.
+     *
+     * @param connection the connection to switch to the bulk import profile
+     * @return the profile, used to restore the previous settings
+     * @throws SQLException if the settings could not be changed
+     */
+    public static BulkImportProfile enableBulkImportProfile(Connection connection) throws SQLException {
+        BulkImportProfile profile = new BulkImportProfile(connection);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute("PRAGMA cache_size=" + BULK_IMPORT_CACHE_SIZE);
+            statement.execute("PRAGMA temp_store=MEMORY");
+        } catch (SQLException e) {
+            try {
+                profile.restoreSettings();
+            } catch (SQLException restoreError) {
+                e.addSuppressed(restoreError);
+            }
+
+            throw e;
+        }
+
+        logger.debug("Enabled the bulk import profile");
+        return profile;
+    }
+
+    /**
+     * The settings of a connection before the bulk import profile was enabled
+     */
+    public static final class BulkImportProfile {
+        /**
+         * The connection the profile was enabled on
+         */
+        private final Connection connection;
+
+        /**
+         * The previous synchronous setting
+         */
+        private final String synchronous;
+
+        /**
+         * The previous page cache size
+         */
+        private final String cacheSize;
+
+        /**
+         * The previous temporary storage setting
+         */
+        private final String tempStore;
+
+        /**
+         * Read the current settings of a connection
+         *
+         * @param connection the connection to read the settings of
+         * @throws SQLException if the settings could not be read
+         */
+        private BulkImportProfile(Connection connection) throws SQLException {
+            this.connection = connection;
+            this.synchronous = readPragma(connection, "synchronous");
+            this.cacheSize = readPragma(connection, "cache_size");
+            this.tempStore = readPragma(connection, "temp_store");
+        }
+
+        /**
+         * Read the value of a pragma
+         *
+         * @param connection the connection to read the value from
+         * @param pragma     the name of the pragma
+         * @return the value
+         * @throws SQLException if the value could not be read
+         */
+        private static String readPragma(Connection connection, String pragma) throws SQLException {
+            try (Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery("PRAGMA " + pragma)) {
+                if (!result.next()) {
+                    throw new SQLException("The pragma " + pragma + " returned no value");
+                }
+
+                return result.getString(1);
+            }
+        }
+
+        /**
+         * Restore the previous settings of the connection.
+         * Must not be called inside of a transaction.
+         *
+         * @throws SQLException if the settings could not be restored
+         */
+        public void restore() throws SQLException {
+            restoreSettings();
+            logger.debug("Restored the settings after the bulk import");
+        }
+
+        /**
+         * Restore the previous settings of the connection
+         *
+         * @throws SQLException if the settings could not be restored
+         */
+        private void restoreSettings() throws SQLException {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA synchronous=" + synchronous);
+                statement.execute("PRAGMA cache_size=" + cacheSize);
+                statement.execute("PRAGMA temp_store=" + tempStore);
+            }
+        }
+    }
 }
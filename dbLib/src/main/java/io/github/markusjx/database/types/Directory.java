@@ -39,6 +39,36 @@ public class Directory implements Serializable, Comparable<Directory> {
     @OneToMany(cascade = CascadeType.REFRESH)
     public final List<Directory> directories;
 
+    /**
+     * The last modification time of the directory in milliseconds since the epoch.
+     * Used to find out whether the directory must be listed again when re-scanning.
+     * May be null if the modification time is unknown.
+     */
+    @Column
+    public Long lastModified;
+
+    /**
+     * The number of documents and subdirectories
+     * in this directory when it was last listed
+     */
+    @Column
+    public Integer numChildren;
+
+    /**
+     * A fingerprint of the names, sizes and modification times of all
+     * documents and subdirectories in this directory when it was last listed
+     */
+    @Column
+    public Long fingerprint;
+
+    /**
+     * Whether this directory was not listed by the scanner because it
+     * did not change since the last scan. If this is true, the documents
+     * of this directory are not set. Never persisted.
+     */
+    @Transient
+    public boolean unchanged;
+
     /**
      * Create a null directory instance
      */
@@ -59,6 +89,10 @@ public class Directory implements Serializable, Comparable<Directory> {
         this.name = toCopy.name;
         this.documents = new ArrayList<>(toCopy.documents.size());
         this.directories = new ArrayList<>(toCopy.directories.size());
+        this.lastModified = toCopy.lastModified;
+        this.numChildren = toCopy.numChildren;
+        this.fingerprint = toCopy.fingerprint;
+        this.unchanged = toCopy.unchanged;
 
         for (Directory dir : toCopy.directories) {
             this.directories.add(new Directory(dir));
@@ -55,6 +55,29 @@ public class Document implements Serializable, Comparable<Document> {
     @Column(columnDefinition = "DATE")
     public LocalDate creationDate;
 
+    /**
+     * The size of the file in bytes.
+     * May be null if the size is unknown.
+     */
+    @Column
+    public Long fileSize;
+
+    /**
+     * The last modification time of the file in milliseconds since the epoch.
+     * May be null if the modification time is unknown.
+     */
+    @Column
+    public Long lastModified;
+
+    /**
+     * The SHA-256 hash of the file contents as a hex string. Set by the
+     * {@link io.github.markusjx.scanning.DuplicateFinder} and reset if the
+     * size or modification time of the file changes. May be null if the
+     * contents were not hashed yet.
+     */
+    @Column(length = 64)
+    public String contentHash;
+
     /**
      * Create a null documents
      */
@@ -77,6 +100,9 @@ public class Document implements Serializable, Comparable<Document> {
         this.absolutePath = toCopy.absolutePath;
         this.properties = new ArrayList<>(toCopy.properties.size());
         this.creationDate = toCopy.creationDate;
+        this.fileSize = toCopy.fileSize;
+        this.lastModified = toCopy.lastModified;
+        this.contentHash = toCopy.contentHash;
         this.tags = new ArrayList<>(toCopy.tags.size());
         this.parentPath = toCopy.parentPath;
 
@@ -112,6 +138,26 @@ public class Document implements Serializable, Comparable<Document> {
         }
     }
 
+    /**
+     * Create a new document in a directory without tags.
+     * The parent path is not copied from the document path, so
+     * all documents in a directory can share the path of the directory.
+     *
+     * @param filename     the document file name
+     * @param path         the document path
+     * @param parentPath   the path of the directory containing the document
+     * @param properties   the property value sets
+     * @param creationDate the creation date
+     */
+    public Document(String filename, String path, String parentPath, List<PropertyValueSet> properties, LocalDate creationDate) {
+        this.filename = filename;
+        this.absolutePath = path;
+        this.parentPath = parentPath;
+        this.properties = properties;
+        this.creationDate = creationDate;
+        this.tags = new ArrayList<>(0);
+    }
+
     /**
      * Get the parent path from the absolute path
      *
@@ -0,0 +1,69 @@
+package io.github.markusjx.datatypes;
+
+import io.github.markusjx.database.types.Document;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * A page of documents returned by a keyset-paginated search.
+ * The continuation token identifies the position after the
+ * last document of this page and is used to request the next page.
+ */
+public final class DocumentPage {
+    /**
+     * The documents of this page, sorted by their path
+     */
+    public final List<Document> documents;
+
+    /**
+     * The token to request the next page with or
+     * null if this is the last page. The token is opaque
+     * and should not be interpreted by the caller.
+     */
+    public final String continuationToken;
+
+    /**
+     * Create a new document page
+     *
+     * @param documents the documents of this page
+     * @param lastPath  the path of the last document or null if this is the last page
+     */
+    public DocumentPage(List<Document> documents, String lastPath) {
+        this.documents = documents;
+        this.continuationToken = lastPath == null ? null : encodeToken(lastPath);
+    }
+
+    /**
+     * Check if there is a page after this one
+     *
+     * @return true if there is a next page
+     */
+    public boolean hasNext() {
+        return continuationToken != null;
+    }
+
+    /**
+     * Encode the path of the last document of a page to a continuation token
+     *
+     * @param lastPath the path of the last document
+     * @return the continuation token
+     */
+    private static String encodeToken(String lastPath) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastPath.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a continuation token to the path of the last document of the previous page
+     *
+     * @param token the continuation token or null for the first page
+     * @return the path of the last document of the previous page or null for the first page
+     * @throws IllegalArgumentException if the token is invalid
+     */
+    public static String decodeToken(String token) {
+        if (token == null) return null;
+
+        return new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,32 @@
+package io.github.markusjx.datatypes;
+
+import io.github.markusjx.database.types.Document;
+
+import java.util.List;
+
+/**
+ * A page of documents returned by a search
+ * with the total number of matching documents
+ */
+public final class DocumentSearchPage {
+    /**
+     * The documents of this page
+     */
+    public final List<Document> documents;
+
+    /**
+     * The total number of documents matching the search
+     */
+    public final long totalCount;
+
+    /**
+     * Create a new document search page
+     *
+     * @param documents  the documents of this page
+     * @param totalCount the total number of documents matching the search
+     */
+    public DocumentSearchPage(List<Document> documents, long totalCount) {
+        this.documents = documents;
+        this.totalCount = totalCount;
+    }
+}
@@ -38,6 +38,17 @@ public final class DocumentSearchResult implements Comparable<DocumentSearchResu
         this.accuracy = acc;
     }
 
+    /**
+     * Create a new DocumentSearchResult instance with an already calculated accuracy
+     *
+     * @param document the document
+     * @param accuracy the match accuracy
+     */
+    public DocumentSearchResult(Document document, int accuracy) {
+        this.document = document;
+        this.accuracy = accuracy;
+    }
+
     @Override
     public int compareTo(DocumentSearchResult o) {
         return accuracy - o.accuracy;
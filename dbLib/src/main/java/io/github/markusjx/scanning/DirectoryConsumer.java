@@ -0,0 +1,20 @@
+package io.github.markusjx.scanning;
+
+import io.github.markusjx.database.types.Directory;
+
+/**
+ * A consumer for directories streamed by a {@link FileScanner}
+ */
+@FunctionalInterface
+public interface DirectoryConsumer {
+    /**
+     * Accept a scanned directory.
+     * The directory contains all of its documents but its
+     * subdirectories are only references to directories
+     * which have already been passed to this consumer.
+     *
+     * @param directory the scanned directory
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    void accept(Directory directory) throws InterruptedException;
+}
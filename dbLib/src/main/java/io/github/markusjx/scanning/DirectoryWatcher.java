@@ -0,0 +1,398 @@
+package io.github.markusjx.scanning;
+
+import io.github.markusjx.database.DatabaseManager;
+import io.github.markusjx.database.types.Directory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * A class for watching a scanned directory tree for changes.
+ * Registers all directories with a {@link WatchService} and falls back
+ * to polling the modification times of directories which could not be
+ * registered, e.g. if the operating system ran out of watches. All changes
+ * are collected over a short window and then applied to the database in
+ * small batches, so the database stays up to date without a full synchronization.
+ */
+public class DirectoryWatcher implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryWatcher.class);
+
+    /**
+     * The default time in milliseconds to collect changes before applying them
+     */
+    public static final long DEFAULT_COALESCE_MILLIS = 500;
+
+    /**
+     * The default interval in milliseconds to poll directories which could not be watched
+     */
+    public static final long DEFAULT_POLL_INTERVAL_MILLIS = 2000;
+
+    /**
+     * The maximum number of directories to apply in one transaction
+     */
+    private static final int MAX_BATCH_SIZE = 100;
+
+    /**
+     * The message of the exception thrown on Linux if the inotify watch limit is reached
+     */
+    private static final String WATCH_LIMIT_MESSAGE = "User limit of inotify watches reached";
+
+    /**
+     * The scanner used to list changed directories. A copy of the scanner
+     * passed to the constructor, so the scans of the watcher don't touch
+     * its session, its manifest or the directories it visited.
+     */
+    private final FileScanner scanner;
+
+    /**
+     * The source directory
+     */
+    private final Path source;
+
+    /**
+     * The database manager to apply the changes to
+     */
+    private final DatabaseManager databaseManager;
+
+    /**
+     * The watch service
+     */
+    private final WatchService watchService;
+
+    /**
+     * The paths of all watched directories by their watch key
+     */
+    private final Map<WatchKey, String> watchKeys;
+
+    /**
+     * The last modification times of all directories which
+     * could not be watched and must be polled by their path
+     */
+    private final Map<String, Long> polled;
+
+    /**
+     * The paths of all watched or polled directories
+     */
+    private final Set<String> known;
+
+    /**
+     * The time in milliseconds to collect changes before applying them
+     */
+    private final long coalesceMillis;
+
+    /**
+     * The interval in milliseconds to poll directories which could not be watched
+     */
+    private final long pollIntervalMillis;
+
+    /**
+     * Whether the operating system's watch limit was reached.
+     * If so, all new directories are polled.
+     */
+    private boolean watchesExhausted;
+
+    /**
+     * The watcher thread
+     */
+    private Thread thread;
+
+    /**
+     * Whether the watcher is running
+     */
+    private volatile boolean running;
+
+    /**
+     * Create a new directory watcher with the default coalesce window and poll interval
+     *
+     * @param scanner         the scanner to copy the filter and scan settings from
+     * @param sourcePath      the path of the source directory of the scanner
+     * @param databaseManager the database manager to apply the changes to
+     * @throws IOException if the watch service could not be created
+     */
+    public DirectoryWatcher(FileScanner scanner, String sourcePath, DatabaseManager databaseManager) throws IOException {
+        this(scanner, sourcePath, databaseManager, DEFAULT_COALESCE_MILLIS, DEFAULT_POLL_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Create a new directory watcher
+     *
+     * @param scanner            the scanner to copy the filter and scan settings from
+     * @param sourcePath         the path of the source directory of the scanner
+     * @param databaseManager    the database manager to apply the changes to
+     * @param coalesceMillis     the time in milliseconds to collect changes before applying them
+     * @param pollIntervalMillis the interval in milliseconds to poll directories which could not be watched
+     * @throws IOException if the watch service could not be created
+     */
+    public DirectoryWatcher(FileScanner scanner, String sourcePath, DatabaseManager databaseManager,
+                            long coalesceMillis, long pollIntervalMillis) throws IOException {
+        Objects.requireNonNull(scanner);
+        Objects.requireNonNull(sourcePath);
+        Objects.requireNonNull(databaseManager);
+
+        this.scanner = new FileScanner(scanner);
+        this.source = Paths.get(sourcePath);
+        this.databaseManager = databaseManager;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.watchKeys = new HashMap<>();
+        this.polled = new HashMap<>();
+        this.known = new HashSet<>();
+        this.coalesceMillis = coalesceMillis;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.watchesExhausted = false;
+        this.running = false;
+    }
+
+    /**
+     * Start watching a scanned directory tree.
+     * The tree should already be persisted in the database.
+     *
+     * @param directory the scanned directory tree
+     */
+    public synchronized void start(Directory directory) {
+        if (running) {
+            throw new IllegalStateException("The watcher is already running");
+        }
+
+        for (Directory dir : directory.getAllDirectories()) {
+            register(dir.path);
+        }
+
+        logger.info("Watching {} directories, polling {} directories", watchKeys.size(), polled.size());
+
+        running = true;
+        thread = new Thread(this::run, "DirectoryWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Get the number of directories watched using the watch service
+     *
+     * @return the number of watched directories
+     */
+    @SuppressWarnings("unused")
+    public synchronized int getNumWatched() {
+        return watchKeys.size();
+    }
+
+    /**
+     * Get the number of directories which are polled
+     *
+     * @return the number of polled directories
+     */
+    @SuppressWarnings("unused")
+    public synchronized int getNumPolled() {
+        return polled.size();
+    }
+
+    /**
+     * Register a directory with the watch service. If the watch limit
+     * was reached, this and all further directories are polled. If the
+     * directory could not be watched for another reason, only this
+     * directory is polled. Directories which don't exist anymore are skipped.
+     *
+     * @param path the path of the directory relative to the source directory
+     */
+    private synchronized void register(String path) {
+        if (!known.add(path)) return;
+
+        Path dir = resolve(path);
+        if (!watchesExhausted) {
+            try {
+                watchKeys.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), path);
+                return;
+            } catch (NoSuchFileException e) {
+                // The deletion is applied when its parent directory is listed
+                logger.debug("Not watching {}, it was deleted", dir);
+                known.remove(path);
+                return;
+            } catch (IOException e) {
+                if (e.getMessage() != null && e.getMessage().contains(WATCH_LIMIT_MESSAGE)) {
+                    logger.warn("The watch limit was reached, polling all further directories", e);
+                    watchesExhausted = true;
+                } else {
+                    logger.warn("Could not watch {}, polling it", dir, e);
+                }
+            }
+        }
+
+        polled.put(path, dir.toFile().lastModified());
+    }
+
+    /**
+     * Resolve a path relative to the source directory
+     *
+     * @param path the relative path
+     * @return the resolved path
+     */
+    private Path resolve(String path) {
+        return path.isEmpty() ? source : source.resolve(path);
+    }
+
+    /**
+     * The watcher loop. Waits for changes, collects
+     * them for a short time and applies them.
+     */
+    private void run() {
+        long nextPoll = System.currentTimeMillis() + pollIntervalMillis;
+
+        while (running) {
+            try {
+                Set<String> changed = new TreeSet<>();
+
+                // Wait for the first change or the next poll
+                WatchKey key = watchService.poll(Math.max(nextPoll - System.currentTimeMillis(), 1),
+                        TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    collectEvents(key, changed);
+
+                    // Collect all further changes in the coalesce window
+                    long deadline = System.currentTimeMillis() + coalesceMillis;
+                    long remaining;
+                    while ((remaining = deadline - System.currentTimeMillis()) > 0 &&
+                            (key = watchService.poll(remaining, TimeUnit.MILLISECONDS)) != null) {
+                        collectEvents(key, changed);
+                    }
+                }
+
+                if (System.currentTimeMillis() >= nextPoll) {
+                    pollDirectories(changed);
+                    nextPoll = System.currentTimeMillis() + pollIntervalMillis;
+                }
+
+                if (!changed.isEmpty()) {
+                    apply(changed);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            } catch (Exception e) {
+                logger.error("Could not apply the file system changes", e);
+            }
+        }
+    }
+
+    /**
+     * Collect all events of a watch key
+     *
+     * @param key     the key to get the events from
+     * @param changed the set of changed directory paths to add to
+     */
+    private synchronized void collectEvents(WatchKey key, Set<String> changed) {
+        String path = watchKeys.get(key);
+        if (path == null) return;
+
+        // Every event changes the listing of the watched directory.
+        // Overflows also only require listing this directory again.
+        if (!key.pollEvents().isEmpty()) {
+            changed.add(path);
+        }
+
+        // If the key is not valid anymore, the directory was deleted.
+        // The deletion is applied when its parent directory is listed.
+        if (!key.reset()) {
+            watchKeys.remove(key);
+            known.remove(path);
+        }
+    }
+
+    /**
+     * Check all polled directories for changes
+     *
+     * @param changed the set of changed directory paths to add to
+     */
+    private synchronized void pollDirectories(Set<String> changed) {
+        for (Iterator<Map.Entry<String, Long>> it = polled.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Long> entry = it.next();
+            File dir = resolve(entry.getKey()).toFile();
+            long lastModified = dir.lastModified();
+
+            if (lastModified == 0 && !dir.exists()) {
+                // The directory was deleted
+                it.remove();
+                known.remove(entry.getKey());
+            } else if (lastModified != entry.getValue()) {
+                entry.setValue(lastModified);
+                changed.add(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Apply changes to the database. Lists every changed directory and
+     * scans all new subdirectories. Changes are applied in batches of
+     * at most {@link #MAX_BATCH_SIZE} directories. A changed directory
+     * is always applied in the same batch as its new subdirectories.
+     *
+     * @param changed the paths of all changed directories
+     */
+    private void apply(Set<String> changed) {
+        logger.debug("Applying changes in {} directories", changed.size());
+        List<Directory> batch = new ArrayList<>();
+
+        for (String path : changed) {
+            if (!resolve(path).toFile().isDirectory()) continue;
+
+            Directory listed = scanner.list(path);
+            batch.add(listed);
+
+            // Scan all new subdirectories and start watching them
+            for (Directory dir : listed.directories) {
+                synchronized (this) {
+                    if (known.contains(dir.path)) continue;
+                }
+
+                for (Directory scanned : scanner.scan(dir.path).getAllDirectories()) {
+                    batch.add(scanned);
+                    register(scanned.path);
+                }
+            }
+
+            if (batch.size() >= MAX_BATCH_SIZE) {
+                applyBatch(batch);
+                batch = new ArrayList<>();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            applyBatch(batch);
+        }
+    }
+
+    /**
+     * Apply a batch of listed directories to the database
+     *
+     * @param batch the listed directories
+     */
+    private void applyBatch(List<Directory> batch) {
+        if (!databaseManager.synchronizeListedDirectories(batch)) {
+            logger.error("Could not apply the changes of {} directories", batch.size());
+        }
+    }
+
+    /**
+     * Stop watching the directory tree
+     *
+     * @throws IOException if the watch service could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        watchService.close();
+
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package io.github.markusjx.scanning;
+
+import io.github.markusjx.database.types.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+/**
+ * A class for finding documents with identical contents.
+ * Works in three stages, so only few files must be read completely:
+ * <ol>
+ *     <li>Documents are grouped by their file size</li>
+ *     <li>Documents with the same size are grouped by a checksum
+ *     of their first and last {@link #PARTIAL_HASH_SIZE} bytes</li>
+ *     <li>Documents which are still not unique are hashed completely
+ *     using SHA-256, reading the files through memory mapped buffers</li>
+ * </ol>
+ * The content hashes are stored in {@link Document#contentHash}, documents which
+ * already have a content hash are not read again. Files are read in parallel.
+ */
+public class DuplicateFinder {
+    private static final Logger logger = LoggerFactory.getLogger(DuplicateFinder.class);
+
+    /**
+     * The number of bytes read from the start and the end of a file for the partial hash
+     */
+    public static final int PARTIAL_HASH_SIZE = 4096;
+
+    /**
+     * The maximum number of bytes to map into memory at once
+     */
+    private static final long MAX_MAPPED_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * The source directory of the documents
+     */
+    private final Path source;
+
+    /**
+     * The number of threads to read files with
+     */
+    private int parallelism;
+
+    /**
+     * The number of partially hashed files
+     */
+    private final LongAdder numPartiallyHashed;
+
+    /**
+     * The number of fully hashed files
+     */
+    private final LongAdder numFullyHashed;
+
+    /**
+     * Create a new duplicate finder
+     *
+     * @param sourcePath the path of the source directory the document paths are relative to
+     */
+    public DuplicateFinder(String sourcePath) {
+        this.source = Paths.get(sourcePath);
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+        this.numPartiallyHashed = new LongAdder();
+        this.numFullyHashed = new LongAdder();
+    }
+
+    /**
+     * Set the number of threads to read files with
+     *
+     * @param parallelism the number of threads to use. Must be greater than zero.
+     * @return this
+     */
+    public DuplicateFinder setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be greater than zero");
+        }
+
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Get the number of files whose start and end were hashed by this finder
+     *
+     * @return the number of partially hashed files
+     */
+    public long getNumPartiallyHashed() {
+        return numPartiallyHashed.sum();
+    }
+
+    /**
+     * Get the number of files which were hashed completely by this finder
+     *
+     * @return the number of fully hashed files
+     */
+    public long getNumFullyHashed() {
+        return numFullyHashed.sum();
+    }
+
+    /**
+     * Find all groups of documents with identical contents.
+     * Documents without a file size and empty files are ignored.
+     * Sets the {@link Document#contentHash} of every document which was hashed completely.
+     * Files which could not be read are logged and ignored.
+     *
+     * @param documents the documents to search through
+     * @return all groups of at least two documents with identical contents
+     */
+    public List<List<Document>> findDuplicates(Collection<Document> documents) {
+        // Stage 1: group by size
+        Map<Long, List<Document>> bySize = new HashMap<>();
+        for (Document d : documents) {
+            if (d.fileSize != null && d.fileSize > 0) {
+                bySize.computeIfAbsent(d.fileSize, k -> new ArrayList<>()).add(d);
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // Stage 2: group documents without a content hash by their partial hash.
+            // If a group contains a document with a known hash, all other documents
+            // in the group must be hashed completely to compare them.
+            List<Document> toPartiallyHash = new ArrayList<>();
+            List<Document> toFullyHash = new ArrayList<>();
+            for (List<Document> group : bySize.values()) {
+                if (group.size() < 2) continue;
+
+                boolean hasHash = group.stream().anyMatch(d -> d.contentHash != null);
+                for (Document d : group) {
+                    if (d.contentHash != null) continue;
+
+                    if (hasHash) {
+                        toFullyHash.add(d);
+                    } else {
+                        toPartiallyHash.add(d);
+                    }
+                }
+            }
+
+            Map<Document, Long> partialHashes = hashAll(pool, toPartiallyHash, this::partialHash);
+            Map<List<Object>, List<Document>> byPartialHash = new HashMap<>();
+            for (Map.Entry<Document, Long> entry : partialHashes.entrySet()) {
+                List<Object> key = Arrays.asList(entry.getKey().fileSize, entry.getValue());
+                byPartialHash.computeIfAbsent(key, k -> new ArrayList<>()).add(entry.getKey());
+            }
+
+            for (List<Document> group : byPartialHash.values()) {
+                if (group.size() > 1) toFullyHash.addAll(group);
+            }
+
+            // Stage 3: hash all remaining candidates completely
+            for (Map.Entry<Document, String> entry : hashAll(pool, toFullyHash, this::fullHash).entrySet()) {
+                entry.getKey().contentHash = entry.getValue();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        // Group all hashed documents by size and content hash
+        Map<List<Object>, List<Document>> byContent = new LinkedHashMap<>();
+        for (List<Document> group : bySize.values()) {
+            if (group.size() < 2) continue;
+
+            for (Document d : group) {
+                if (d.contentHash != null) {
+                    byContent.computeIfAbsent(Arrays.asList(d.fileSize, d.contentHash), k -> new ArrayList<>()).add(d);
+                }
+            }
+        }
+
+        List<List<Document>> duplicates = new ArrayList<>();
+        for (List<Document> group : byContent.values()) {
+            if (group.size() > 1) duplicates.add(group);
+        }
+
+        logger.info("Found {} groups of duplicates, hashed {} files partially and {} files completely",
+                duplicates.size(), getNumPartiallyHashed(), getNumFullyHashed());
+        return duplicates;
+    }
+
+    /**
+     * Hash all documents in parallel. Documents which could not be read are left out.
+     *
+     * @param pool      the pool to hash on
+     * @param documents the documents to hash
+     * @param hasher    the hash function
+     * @param <T>       the hash type
+     * @return the hashes by their documents
+     */
+    private <T> Map<Document, T> hashAll(ForkJoinPool pool, List<Document> documents, Hasher<T> hasher) {
+        List<Callable<T>> tasks = new ArrayList<>(documents.size());
+        for (Document d : documents) {
+            tasks.add(() -> {
+                try {
+                    return hasher.hash(source.resolve(d.absolutePath));
+                } catch (IOException e) {
+                    logger.warn("Could not read {}", d.absolutePath, e);
+                    return null;
+                }
+            });
+        }
+
+        Map<Document, T> result = new HashMap<>();
+        List<Future<T>> futures = pool.invokeAll(tasks);
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                T hash = futures.get(i).get();
+                if (hash != null) result.put(documents.get(i), hash);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while hashing files", e);
+            } catch (ExecutionException e) {
+                logger.warn("Could not hash {}", documents.get(i).absolutePath, e.getCause());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Get a checksum of the first and last {@link #PARTIAL_HASH_SIZE} bytes of a file
+     *
+     * @param path the path to the file
+     * @return the checksum
+     * @throws IOException if the file could not be read
+     */
+    private Long partialHash(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, PARTIAL_HASH_SIZE));
+
+            CRC32C head = new CRC32C();
+            readFully(channel, buffer, 0);
+            head.update(buffer);
+
+            CRC32C tail = new CRC32C();
+            if (size > PARTIAL_HASH_SIZE) {
+                buffer.clear();
+                readFully(channel, buffer, size - buffer.capacity());
+                tail.update(buffer);
+            }
+
+            numPartiallyHashed.increment();
+            return (head.getValue() << 32) | tail.getValue();
+        }
+    }
+
+    /**
+     * Fill a buffer from a file channel
+     *
+     * @param channel  the channel to read from
+     * @param buffer   the buffer to fill
+     * @param position the position to start reading from
+     * @throws IOException if the file could not be read or ended early
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new IOException("Unexpected end of file");
+            position += read;
+        }
+
+        buffer.flip();
+    }
+
+    /**
+     * Get the SHA-256 hash of a file. The file is mapped
+     * into memory in chunks of at most {@link #MAX_MAPPED_SIZE} bytes.
+     *
+     * @param path the path of the file
+     * @return the hash as a hex string
+     * @throws IOException if the file could not be read
+     */
+    private String fullHash(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAX_MAPPED_SIZE) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAX_MAPPED_SIZE, size - position));
+                digest.update(buffer);
+            }
+        }
+
+        numFullyHashed.increment();
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return hex.toString();
+    }
+
+    /**
+     * A function hashing a file
+     *
+     * @param <T> the hash type
+     */
+    @FunctionalInterface
+    private interface Hasher<T> {
+        /**
+         * Hash a file
+         *
+         * @param path the path of the file
+         * @return the hash
+         * @throws IOException if the file could not be read
+         */
+        T hash(Path path) throws IOException;
+    }
+}
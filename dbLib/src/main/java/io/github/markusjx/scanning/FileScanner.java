@@ -2,26 +2,40 @@ package io.github.markusjx.scanning;
 
 import io.github.markusjx.database.types.Directory;
 import io.github.markusjx.database.types.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * A class for scanning through file trees and discovering all files
  */
 public class FileScanner {
+    private static final Logger logger = LoggerFactory.getLogger(FileScanner.class);
+
     /**
      * Whether the host os is windows
      */
@@ -36,15 +50,69 @@ public class FileScanner {
         }
     }
 
+    /**
+     * Whether the file system supports the "unix" attribute view,
+     * which is required to read the number of hard links of a file
+     */
+    private static final boolean UNIX_ATTRIBUTES_SUPPORTED =
+            FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+
     /**
      * The source file to start scanning from
      */
     private final File source;
 
     /**
-     * The length of the (full) path to the source file
+     * The number of threads to scan with.
+     * If this is set to one, the tree is scanned on the calling thread.
+     */
+    private int parallelism;
+
+    /**
+     * Whether to use the {@link java.nio.file} API
+     * to list directories and read file attributes
+     */
+    private boolean useNio;
+
+    /**
+     * The manifest of the previous scan.
+     * If set, directories which did not change
+     * since the previous scan are not listed.
+     */
+    private ScanManifest manifest;
+
+    /**
+     * The session to report the scan progress to
+     */
+    private ScanSession session;
+
+    /**
+     * The include and exclude rules
+     */
+    private ScanFilter filter;
+
+    /**
+     * Whether to skip directories which were already visited during the
+     * current scan, e.g. through a symbolic link or a bind mount
      */
-    private final int sourcePathLength;
+    private boolean skipVisitedDirectories;
+
+    /**
+     * Whether to add files with multiple hard links only once per scan
+     */
+    private boolean skipHardLinks;
+
+    /**
+     * The file keys of all directories visited during the current scan
+     * or null if visited directories are not skipped
+     */
+    private Set<Object> visitedDirectories;
+
+    /**
+     * The file keys of all hard linked files visited during the
+     * current scan or null if hard links are not skipped
+     */
+    private Set<Object> visitedFiles;
 
     /**
      * Create a file scanner
@@ -53,23 +121,162 @@ public class FileScanner {
      */
     public FileScanner(String source) {
         this.source = new File(source);
-        this.sourcePathLength = source.length();
+        this.parallelism = 1;
+        this.useNio = false;
+        this.manifest = null;
+        this.session = null;
+        this.filter = null;
+        this.skipVisitedDirectories = false;
+        this.skipHardLinks = false;
+        this.visitedDirectories = null;
+        this.visitedFiles = null;
+    }
+
+    /**
+     * Create a file scanner with the same source directory, filter and scan
+     * settings as another scanner. The manifest, the session and the
+     * visited directories and files of the other scanner are not copied,
+     * so both scanners can be used independently of each other.
+     *
+     * @param toCopy the scanner to copy the settings from
+     */
+    public FileScanner(FileScanner toCopy) {
+        this.source = toCopy.source;
+        this.parallelism = toCopy.parallelism;
+        this.useNio = toCopy.useNio;
+        this.manifest = null;
+        this.session = null;
+        this.filter = toCopy.filter;
+        this.skipVisitedDirectories = toCopy.skipVisitedDirectories;
+        this.skipHardLinks = toCopy.skipHardLinks;
+        this.visitedDirectories = null;
+        this.visitedFiles = null;
+    }
+
+    /**
+     * Set the number of threads to scan with.
+     * If this is greater than one, the directory tree is scanned
+     * using a work-stealing {@link ForkJoinPool}, producing the
+     * same {@link Directory} tree as a sequential scan.
+     *
+     * @param parallelism the number of threads to use. Must be greater than zero.
+     * @return this
+     */
+    public FileScanner setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be greater than zero");
+        }
+
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Set whether to use the {@link java.nio.file} API to scan the tree.
+     * The nio scanner lists directories using a {@link DirectoryStream}
+     * and reads the type, creation time, size and modification time
+     * of every entry with a single attribute read.
+     *
+     * @param useNio whether to use the nio scanner
+     * @return this
+     */
+    public FileScanner setUseNio(boolean useNio) {
+        this.useNio = useNio;
+        return this;
+    }
+
+    /**
+     * Set the manifest of the previous scan to scan incrementally.
+     * If a directory's modification time did not change since the previous
+     * scan, it is not listed again, the directory is marked as
+     * {@link Directory#unchanged} and only its subdirectories from the
+     * manifest are checked for changes. Documents whose contents were
+     * changed in place without changing their directory are not detected.
+     *
+     * @param manifest the manifest of the previous scan or null to scan everything
+     * @return this
+     */
+    public FileScanner setManifest(ScanManifest manifest) {
+        this.manifest = manifest;
+        return this;
+    }
+
+    /**
+     * Set the session to report the progress of the next scan to.
+     * If the session is cancelled, the scan stops before listing
+     * the next directory and throws a {@link CancellationException}.
+     * A session should only be used for a single scan.
+     *
+     * @param session the session or null to not report the progress
+     * @return this
+     */
+    public FileScanner setSession(ScanSession session) {
+        this.session = session;
+        return this;
+    }
+
+    /**
+     * Set the include and exclude rules. Excluded directories are
+     * pruned before they are listed, so none of their contents are read.
+     * The number of excluded entries is reported to the {@link ScanSession}.
+     *
+     * @param filter the rules or null to scan everything
+     * @return this
+     */
+    public FileScanner setFilter(ScanFilter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * Set whether to skip directories which were already visited during a scan.
+     * Directories are identified by their file key, e.g. the device and
+     * inode number, so a directory reachable through symbolic links or bind
+     * mounts is only scanned and added once, and symbolic link loops are
+     * never followed. On a parallel scan, which of multiple paths to the same
+     * directory is added depends on the scan order. If the file system does
+     * not provide file keys, no directories are skipped.
+     *
+     * @param skipVisitedDirectories whether to skip visited directories
+     * @return this
+     */
+    public FileScanner setSkipVisitedDirectories(boolean skipVisitedDirectories) {
+        this.skipVisitedDirectories = skipVisitedDirectories;
+        return this;
+    }
+
+    /**
+     * Set whether to add files with multiple hard links only once per scan.
+     * This requires reading the link count of every file and is only
+     * supported on file systems providing the "unix" attribute view.
+     *
+     * @param skipHardLinks whether to skip already visited hard links
+     * @return this
+     */
+    public FileScanner setSkipHardLinks(boolean skipHardLinks) {
+        this.skipHardLinks = skipHardLinks;
+        return this;
+    }
+
+    /**
+     * Read the attributes of a file without following symbolic links
+     *
+     * @param path the path to the file
+     * @return the file attributes
+     * @throws IOException if the attributes could not be read
+     */
+    private static BasicFileAttributes readAttributes(Path path) throws IOException {
+        return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
     }
 
     /**
-     * Get the create time of a file
+     * Convert a {@link FileTime} to a {@link LocalDate}
      *
-     * @param file the file
-     * @return the create time as a {@link LocalDate}
-     * @throws IOException if the file could not be found
+     * @param time the time to convert
+     * @return the converted date
      */
-    private static LocalDate getCreateTime(File file) throws IOException {
-        Path path = Paths.get(file.getPath());
-        BasicFileAttributeView basicfile = Files.getFileAttributeView(path,
-                BasicFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
-        BasicFileAttributes attr = basicfile.readAttributes();
-        long date = attr.creationTime().toMillis();
-        return Instant.ofEpochMilli(date).atZone(ZoneId.systemDefault()).toLocalDate();
+    private static LocalDate toLocalDate(FileTime time) {
+        return Instant.ofEpochMilli(time.toMillis()).atZone(ZoneId.systemDefault()).toLocalDate();
     }
 
     /**
@@ -78,56 +285,534 @@ public class FileScanner {
      * @return the start directory
      */
     public Directory scan() {
-        // Create the source directory
-        Directory src = new Directory("", source.getName());
+        return scan("");
+    }
+
+    /**
+     * Scan through a subtree of the directory tree
+     *
+     * @param relativePath the path of the directory to start scanning from, relative to the source directory
+     * @return the scanned directory
+     * @throws CancellationException if the scan session was cancelled
+     */
+    public Directory scan(String relativePath) {
+        // Create the start directory
+        FileDirectory start = createFileDirectory(relativePath);
+        resetVisited(start);
+        if (session != null) session.directoriesQueued(1);
+
+        try {
+            if (parallelism > 1) {
+                scanParallel(start);
+            } else {
+                scanSequential(start);
+            }
+        } finally {
+            finishSession();
+        }
+
+        return start.directory;
+    }
+
+    /**
+     * List a single directory without scanning its subdirectories.
+     * The directory is always listed, even if it is unchanged according to the manifest.
+     *
+     * @param relativePath the path of the directory to list, relative to the source directory
+     * @return the listed directory. Its subdirectories only contain their path, name and modification time.
+     */
+    public Directory list(String relativePath) {
+        FileDirectory dir = createFileDirectory(relativePath);
+        resetVisited(dir);
+        listDirectory(dir);
+
+        return dir.directory;
+    }
+
+    /**
+     * Scan through the directory tree and stream all directories to a consumer
+     * instead of building the whole tree in memory. The directories are passed
+     * to the consumer in post-order, so every subdirectory is passed to the
+     * consumer before its parent directory. Every directory only contains stub
+     * references to its subdirectories, so already consumed directories can
+     * be freed by the garbage collector. Always scans on the calling thread.
+     *
+     * @param consumer the consumer to pass the directories to
+     * @throws InterruptedException  if the thread was interrupted while waiting for the consumer
+     * @throws CancellationException if the scan session was cancelled
+     */
+    public void scan(DirectoryConsumer consumer) throws InterruptedException {
+        try {
+            scanStreaming(consumer);
+        } finally {
+            finishSession();
+        }
+    }
+
+    /**
+     * Finish the scan session and log its statistics
+     */
+    private void finishSession() {
+        if (session != null) {
+            session.finish();
+            logger.info("Scan finished: {}", session);
+        }
+    }
+
+    /**
+     * Scan through the directory tree and stream all directories to a consumer
+     *
+     * @param consumer the consumer to pass the directories to
+     * @throws InterruptedException if the thread was interrupted while waiting for the consumer
+     */
+    private void scanStreaming(DirectoryConsumer consumer) throws InterruptedException {
+        // Create a stack of directories which have been scanned
+        // but whose subdirectories have not been consumed yet
+        Deque<StreamFrame> toScan = new LinkedList<>();
+        FileDirectory start = createFileDirectory("");
+        resetVisited(start);
+        if (session != null) session.directoriesQueued(1);
+        toScan.push(new StreamFrame(start, scanDirectory(start)));
+
+        while (!toScan.isEmpty()) {
+            StreamFrame cur = toScan.peek();
+
+            if (cur.subDirectories.hasNext()) {
+                // Scan the next subdirectory of the current directory
+                FileDirectory next = cur.subDirectories.next();
+                toScan.push(new StreamFrame(next, scanDirectory(next)));
+            } else {
+                // All subdirectories have been consumed, replace them with
+                // references to free their documents and consume this directory
+                toScan.pop();
+                List<Directory> directories = cur.directory.directory.directories;
+                for (int i = 0; i < directories.size(); i++) {
+                    Directory dir = directories.get(i);
+                    directories.set(i, new Directory(dir.path, dir.name));
+                }
+
+                consumer.accept(cur.directory.directory);
+            }
+        }
+    }
+
+    /**
+     * Create the directory instance of a directory in the tree
+     *
+     * @param relativePath the path of the directory, relative to the source directory
+     * @return the created directory instance
+     */
+    private FileDirectory createFileDirectory(String relativePath) {
+        File file;
+        Directory directory;
+        if (relativePath.isEmpty()) {
+            file = source;
+            directory = new Directory("", source.getName());
+        } else {
+            file = new File(source, relativePath);
+            directory = new Directory(relativePath, relativePath.substring(relativePath.lastIndexOf('/') + 1));
+        }
 
+        directory.lastModified = file.lastModified();
+        return new FileDirectory(file, directory);
+    }
+
+    /**
+     * Reset the visited directories and files before starting a new scan
+     *
+     * @param start the directory to start scanning from
+     */
+    private void resetVisited(FileDirectory start) {
+        if (skipVisitedDirectories) {
+            visitedDirectories = ConcurrentHashMap.newKeySet();
+            isVisitedDirectory(start, start.file.toPath(), null);
+        } else {
+            visitedDirectories = null;
+        }
+
+        if (skipHardLinks && UNIX_ATTRIBUTES_SUPPORTED) {
+            visitedFiles = ConcurrentHashMap.newKeySet();
+        } else {
+            visitedFiles = null;
+        }
+    }
+
+    /**
+     * Scan through the directory tree on the calling thread
+     *
+     * @param start the directory to start scanning from
+     */
+    private void scanSequential(FileDirectory start) {
         // Create a stack of files to scan
         Deque<FileDirectory> toScan = new LinkedList<>();
-        toScan.push(new FileDirectory(source, src));
+        toScan.push(start);
 
         while (!toScan.isEmpty()) {
-            // Get the current directory to work on
-            FileDirectory cur = toScan.pop();
-
-            // Get all files in this directory, if there are none, continue
-            File[] files = cur.file.listFiles();
-            if (files == null) continue;
-
-            // Go through all files in the directory
-            for (File f : files) {
-                // If the file is a directory create a directory object
-                // and add it to the files to scan
-                if (f.isDirectory()) {
-                    Directory dir = new Directory(getRelativePath(f), f.getName());
-                    cur.directory.directories.add(dir);
-                    toScan.push(new FileDirectory(f, dir));
-                } else {
-                    // Try creating a new document
-                    try {
-                        cur.directory.documents.add(new Document(f.getName(), getRelativePath(f), new ArrayList<>(0),
-                                getCreateTime(f)));
-                    } catch (Exception e) {
-                        e.printStackTrace();
+            // Scan the current directory and add
+            // all of its subdirectories to the stack
+            for (FileDirectory dir : scanDirectory(toScan.pop())) {
+                toScan.push(dir);
+            }
+        }
+    }
+
+    /**
+     * Scan through the directory tree using a {@link ForkJoinPool}
+     *
+     * @param start the directory to start scanning from
+     */
+    private void scanParallel(FileDirectory start) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new ScanTask(start));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Scan a single directory. Adds all documents and
+     * subdirectories to the {@link Directory} instance.
+     *
+     * @param cur the directory to scan
+     * @return the subdirectories which must be scanned next
+     * @throws CancellationException if the scan session was cancelled
+     */
+    private List<FileDirectory> scanDirectory(FileDirectory cur) {
+        if (session != null && session.isCancelled()) {
+            throw new CancellationException("The scan was cancelled");
+        }
+
+        List<FileDirectory> subDirectories;
+        if (manifest != null && manifest.isUnchanged(cur.directory.path, cur.directory.lastModified)) {
+            // Skip listing the directory if it did not change since the last scan
+            subDirectories = getUnchangedSubDirectories(cur);
+        } else {
+            subDirectories = listDirectory(cur);
+        }
+
+        // Update the counters once per directory instead of once per file
+        if (session != null) {
+            long bytes = 0;
+            for (Document d : cur.directory.documents) {
+                bytes += d.fileSize;
+            }
+
+            session.directoryVisited(cur.directory.documents.size(), bytes, cur.numExcluded,
+                    cur.numNotIncluded, cur.numSkipped);
+            session.directoriesQueued(subDirectories.size());
+        }
+
+        return subDirectories;
+    }
+
+    /**
+     * List a single directory and store its manifest information
+     *
+     * @param cur the directory to list
+     * @return the subdirectories of the directory
+     */
+    private List<FileDirectory> listDirectory(FileDirectory cur) {
+        List<FileDirectory> subDirectories;
+        if (useNio) {
+            subDirectories = scanDirectoryNio(cur);
+        } else {
+            subDirectories = scanDirectoryIo(cur);
+        }
+
+        // Store the manifest information of the listed directory
+        cur.directory.numChildren = cur.directory.documents.size() + cur.directory.directories.size();
+        cur.directory.fingerprint = getFingerprint(cur.directory);
+
+        return subDirectories;
+    }
+
+    /**
+     * Get the subdirectories of a directory which did not change since
+     * the last scan from the manifest, without listing the directory.
+     * Only reads the modification time of every subdirectory.
+     *
+     * @param cur the unchanged directory
+     * @return the subdirectories which must be scanned next
+     */
+    private List<FileDirectory> getUnchangedSubDirectories(FileDirectory cur) {
+        cur.directory.unchanged = true;
+        List<String> names = manifest.getSubDirectories(cur.directory.path);
+        List<FileDirectory> subDirectories = new ArrayList<>(names.size());
+
+        for (String name : names) {
+            File f = new File(cur.file, name);
+            String path = getChildPath(cur.directory, name);
+            if (filter != null && filter.isExcluded(path, name)) {
+                cur.numExcluded++;
+                continue;
+            } else if (isVisitedDirectory(cur, f.toPath(), null)) {
+                continue;
+            }
+
+            Directory dir = new Directory(path, name);
+            dir.lastModified = f.lastModified();
+            cur.directory.directories.add(dir);
+            subDirectories.add(new FileDirectory(f, dir));
+        }
+
+        return subDirectories;
+    }
+
+    /**
+     * Get the fingerprint of a listed directory. The fingerprint is calculated
+     * from the names, sizes and modification times of all documents and the
+     * names of all subdirectories. It does not depend on the listing order.
+     *
+     * @param directory the directory to get the fingerprint of
+     * @return the fingerprint
+     */
+    private static long getFingerprint(Directory directory) {
+        long fingerprint = 0;
+        for (Document d : directory.documents) {
+            fingerprint += mix(Objects.hash(d.filename, d.fileSize, d.lastModified));
+        }
+
+        for (Directory d : directory.directories) {
+            fingerprint += mix(Objects.hash(d.name));
+        }
+
+        return fingerprint;
+    }
+
+    /**
+     * Spread the bits of a hash code over a long value, so that
+     * the sum of multiple hashes is less likely to collide
+     *
+     * @param hash the hash code to mix
+     * @return the mixed value
+     */
+    private static long mix(int hash) {
+        long h = hash * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    /**
+     * Scan a single directory using {@link File#listFiles()}
+     *
+     * @param cur the directory to scan
+     * @return the subdirectories which must be scanned next
+     */
+    private List<FileDirectory> scanDirectoryIo(FileDirectory cur) {
+        // Get all files in this directory, if there are none, return
+        File[] files = cur.file.listFiles();
+        if (files == null) return Collections.emptyList();
+
+        List<FileDirectory> subDirectories = new ArrayList<>();
+
+        // Go through all files in the directory
+        for (File f : files) {
+            String name = f.getName();
+            String relativePath = getChildPath(cur.directory, name);
+            if (isExcluded(cur, relativePath, name)) continue;
+
+            // If the file is a directory create a directory object
+            // and add it to the files to scan
+            if (f.isDirectory()) {
+                if (isVisitedDirectory(cur, f.toPath(), null)) continue;
+
+                Directory dir = new Directory(relativePath, name);
+                dir.lastModified = f.lastModified();
+                cur.directory.directories.add(dir);
+                subDirectories.add(new FileDirectory(f, dir));
+            } else if (isIncluded(cur, relativePath, name)) {
+                // Try creating a new document
+                try {
+                    BasicFileAttributes attr = readAttributes(f.toPath());
+                    if (isVisitedFile(cur, f.toPath(), attr)) continue;
+
+                    cur.directory.documents.add(createDocument(name, relativePath, cur.directory, attr));
+                } catch (Exception e) {
+                    logger.warn("Could not read {}", f, e);
+                }
+            }
+        }
+
+        return subDirectories;
+    }
+
+    /**
+     * Scan a single directory using a {@link DirectoryStream}.
+     * Reads the attributes of every entry only once, except for
+     * symbolic links, whose target must be checked to find out
+     * whether they point to a directory.
+     *
+     * @param cur the directory to scan
+     * @return the subdirectories which must be scanned next
+     */
+    private List<FileDirectory> scanDirectoryNio(FileDirectory cur) {
+        List<FileDirectory> subDirectories = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cur.file.toPath())) {
+            for (Path p : stream) {
+                try {
+                    String name = p.getFileName().toString();
+                    String relativePath = getChildPath(cur.directory, name);
+                    if (isExcluded(cur, relativePath, name)) continue;
+
+                    BasicFileAttributes attr = readAttributes(p);
+
+                    // File.isDirectory() follows symbolic links,
+                    // so the link target must be checked too
+                    if (attr.isSymbolicLink()) {
+                        try {
+                            BasicFileAttributes target = Files.readAttributes(p, BasicFileAttributes.class);
+                            if (target.isDirectory()) attr = target;
+                        } catch (IOException ignored) {
+                            // The link target does not exist, treat the link as a document
+                        }
+                    }
+
+                    if (attr.isDirectory()) {
+                        if (isVisitedDirectory(cur, p, attr)) continue;
+
+                        Directory dir = new Directory(relativePath, name);
+                        dir.lastModified = attr.lastModifiedTime().toMillis();
+                        cur.directory.directories.add(dir);
+                        subDirectories.add(new FileDirectory(p.toFile(), dir));
+                    } else if (isIncluded(cur, relativePath, name) && !isVisitedFile(cur, p, attr)) {
+                        cur.directory.documents.add(createDocument(name, relativePath, cur.directory, attr));
                     }
+                } catch (Exception e) {
+                    logger.warn("Could not read {}", p, e);
                 }
             }
+        } catch (IOException e) {
+            // The directory could not be listed, ignore it
+            // just like File.listFiles() would do
+            return Collections.emptyList();
+        }
+
+        return subDirectories;
+    }
+
+    /**
+     * Check if an entry of a directory is excluded by the filter
+     *
+     * @param cur          the directory containing the entry
+     * @param relativePath the relative path of the entry
+     * @param name         the name of the entry
+     * @return true if the entry must be skipped
+     */
+    private boolean isExcluded(FileDirectory cur, String relativePath, String name) {
+        if (filter != null && filter.isExcluded(relativePath, name)) {
+            cur.numExcluded++;
+            return true;
         }
 
-        return src;
+        return false;
     }
 
     /**
-     * Get the relative path to a file starting from the source directory
+     * Check if a file in a directory is included by the filter
      *
-     * @param src the file to get the path to
-     * @return the relative path
+     * @param cur          the directory containing the file
+     * @param relativePath the relative path of the file
+     * @param name         the name of the file
+     * @return true if the file must be added
      */
-    private String getRelativePath(File src) {
-        String path = src.getAbsolutePath().substring(sourcePathLength + 1);
-        if (IS_WINDOWS) {
-            return path.replace('\\', '/');
+    private boolean isIncluded(FileDirectory cur, String relativePath, String name) {
+        if (filter != null && !filter.isIncluded(relativePath, name)) {
+            cur.numNotIncluded++;
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Check if a directory was already visited during the current scan
+     * and mark it as visited otherwise. Directories are identified by
+     * their file key, so all paths to a directory share the same key.
+     *
+     * @param cur  the directory containing the checked directory
+     * @param path the path of the directory to check
+     * @param attr the attributes of the directory or null if they were not read yet
+     * @return true if the directory was already visited and must be skipped
+     */
+    private boolean isVisitedDirectory(FileDirectory cur, Path path, BasicFileAttributes attr) {
+        if (visitedDirectories == null) return false;
+
+        try {
+            // The key of the link target is required for symbolic links
+            if (attr == null || attr.isSymbolicLink()) {
+                attr = Files.readAttributes(path, BasicFileAttributes.class);
+            }
+        } catch (IOException e) {
+            return false;
+        }
+
+        Object key = attr.fileKey();
+        if (key == null || visitedDirectories.add(key)) return false;
+
+        cur.numSkipped++;
+        return true;
+    }
+
+    /**
+     * Check if a file with multiple hard links was already visited
+     * during the current scan and mark it as visited otherwise.
+     * Only files with more than one link are stored.
+     *
+     * @param cur  the directory containing the file
+     * @param path the path of the file
+     * @param attr the attributes of the file
+     * @return true if the file was already visited and must be skipped
+     */
+    private boolean isVisitedFile(FileDirectory cur, Path path, BasicFileAttributes attr) {
+        if (visitedFiles == null || attr.fileKey() == null) return false;
+
+        try {
+            Number links = (Number) Files.getAttribute(path, "unix:nlink", LinkOption.NOFOLLOW_LINKS);
+            if (links.intValue() < 2) return false;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+
+        if (visitedFiles.add(attr.fileKey())) return false;
+
+        cur.numSkipped++;
+        return true;
+    }
+
+    /**
+     * Create a document from its attributes. The document
+     * shares the path string of its parent directory.
+     *
+     * @param name         the file name
+     * @param relativePath the path relative to the source directory
+     * @param parent       the directory containing the document
+     * @param attr         the file attributes
+     * @return the created document
+     */
+    private static Document createDocument(String name, String relativePath, Directory parent, BasicFileAttributes attr) {
+        Document document = new Document(name, relativePath, parent.path, new ArrayList<>(0),
+                toLocalDate(attr.creationTime()));
+        document.fileSize = attr.size();
+        document.lastModified = attr.lastModifiedTime().toMillis();
+
+        return document;
+    }
+
+    /**
+     * Get the path of an entry in a directory relative to the source directory.
+     * The path is built from the path of the directory and the name of the entry,
+     * so the absolute path of the entry is never created.
+     *
+     * @param parent the directory containing the entry
+     * @param name   the name of the entry
+     * @return the relative path using '/' as the separator
+     */
+    private static String getChildPath(Directory parent, String name) {
+        if (parent.path.isEmpty()) {
+            return name;
         } else {
-            return path;
+            return parent.path + '/' + name;
         }
     }
 
@@ -145,6 +830,21 @@ public class FileScanner {
          */
         private final Directory directory;
 
+        /**
+         * The number of entries excluded by the filter
+         */
+        private int numExcluded;
+
+        /**
+         * The number of files not matching any include rule
+         */
+        private int numNotIncluded;
+
+        /**
+         * The number of already visited directories and hard links
+         */
+        private int numSkipped;
+
         /**
          * Create a File_Directory instance from a file and a directory object
          *
@@ -154,6 +854,72 @@ public class FileScanner {
         private FileDirectory(File file, Directory directory) {
             this.file = file;
             this.directory = directory;
+            this.numExcluded = 0;
+            this.numNotIncluded = 0;
+            this.numSkipped = 0;
+        }
+    }
+
+    /**
+     * A task for scanning a directory and all of its
+     * subdirectories in a {@link ForkJoinPool}
+     */
+    private final class ScanTask extends RecursiveAction {
+        /**
+         * The directory to scan
+         */
+        private final FileDirectory directory;
+
+        /**
+         * Create a new scan task
+         *
+         * @param directory the directory to scan
+         */
+        private ScanTask(FileDirectory directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            // Scan this directory and create a task for every subdirectory.
+            // Every task only writes to its own Directory instance,
+            // so no further synchronization is required.
+            List<FileDirectory> subDirectories = scanDirectory(directory);
+            if (subDirectories.isEmpty()) return;
+
+            List<ScanTask> tasks = new ArrayList<>(subDirectories.size());
+            for (FileDirectory dir : subDirectories) {
+                tasks.add(new ScanTask(dir));
+            }
+
+            invokeAll(tasks);
+        }
+    }
+
+    /**
+     * A scanned directory and the subdirectories
+     * which still have to be streamed
+     */
+    private static final class StreamFrame {
+        /**
+         * The scanned directory
+         */
+        private final FileDirectory directory;
+
+        /**
+         * The subdirectories which have not been scanned yet
+         */
+        private final Iterator<FileDirectory> subDirectories;
+
+        /**
+         * Create a new stream frame
+         *
+         * @param directory      the scanned directory
+         * @param subDirectories the subdirectories of the directory
+         */
+        private StreamFrame(FileDirectory directory, List<FileDirectory> subDirectories) {
+            this.directory = directory;
+            this.subDirectories = subDirectories.iterator();
         }
     }
 }
@@ -0,0 +1,220 @@
+package io.github.markusjx.scanning;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Include and exclude rules for a {@link FileScanner}.
+ * Rules are compiled once when they are added and are matched against
+ * the path of an entry relative to the source directory, using '/' as
+ * the separator. Glob rules use the syntax of
+ * {@link java.nio.file.FileSystem#getPathMatcher(String)}. Glob rules without
+ * a '/' are only matched against the name of an entry, so {@code node_modules}
+ * matches every directory called node_modules and {@code *.bak} matches every
+ * file ending with .bak. A trailing '/' is ignored, so {@code build/} matches
+ * every entry called build. A leading '/' anchors the glob to the source
+ * directory, a leading {@code **}{@code /} also matches entries in the source
+ * directory and a trailing {@code /**} also matches the directory itself,
+ * so the whole directory is pruned. Regex rules must match the whole relative path.
+ * <p>
+ * Exclude rules apply to files and directories. Excluded directories
+ * are pruned and never listed. Include rules only apply to files: if
+ * any include rule is set, only files matching an include rule are added.
+ */
+public final class ScanFilter {
+    /**
+     * The exclude rules matched against the name of an entry
+     */
+    private final List<PathMatcher> nameExcludes;
+
+    /**
+     * The exclude rules matched against the relative path of an entry
+     */
+    private final List<PathMatcher> pathExcludes;
+
+    /**
+     * The include rules matched against the name of a file
+     */
+    private final List<PathMatcher> nameIncludes;
+
+    /**
+     * The include rules matched against the relative path of a file
+     */
+    private final List<PathMatcher> pathIncludes;
+
+    /**
+     * Create a new scan filter without any rules
+     */
+    public ScanFilter() {
+        this.nameExcludes = new ArrayList<>();
+        this.pathExcludes = new ArrayList<>();
+        this.nameIncludes = new ArrayList<>();
+        this.pathIncludes = new ArrayList<>();
+    }
+
+    /**
+     * Exclude all files and directories matching a glob
+     *
+     * @param glob the glob to match
+     * @return this
+     * @throws IllegalArgumentException if the glob is empty or invalid
+     */
+    public ScanFilter exclude(String glob) {
+        addGlob(glob, nameExcludes, pathExcludes);
+        return this;
+    }
+
+    /**
+     * Exclude all files and directories whose relative path matches a regular expression
+     *
+     * @param regex the regular expression to match
+     * @return this
+     */
+    public ScanFilter excludeRegex(String regex) {
+        pathExcludes.add(regexMatcher(regex));
+        return this;
+    }
+
+    /**
+     * Include all files matching a glob
+     *
+     * @param glob the glob to match
+     * @return this
+     * @throws IllegalArgumentException if the glob is empty or invalid
+     */
+    public ScanFilter include(String glob) {
+        addGlob(glob, nameIncludes, pathIncludes);
+        return this;
+    }
+
+    /**
+     * Include all files whose relative path matches a regular expression
+     *
+     * @param regex the regular expression to match
+     * @return this
+     */
+    public ScanFilter includeRegex(String regex) {
+        pathIncludes.add(regexMatcher(regex));
+        return this;
+    }
+
+    /**
+     * Check if a file or directory is excluded
+     *
+     * @param relativePath the path of the entry relative to the source directory
+     * @param name         the name of the entry
+     * @return true if the entry is excluded
+     */
+    boolean isExcluded(String relativePath, String name) {
+        return matchesAny(nameExcludes, name) || matchesAny(pathExcludes, relativePath);
+    }
+
+    /**
+     * Check if a file should be added to the scanned directory
+     *
+     * @param relativePath the path of the file relative to the source directory
+     * @param name         the name of the file
+     * @return true if the file is included
+     */
+    boolean isIncluded(String relativePath, String name) {
+        if (nameIncludes.isEmpty() && pathIncludes.isEmpty()) return true;
+
+        return matchesAny(nameIncludes, name) || matchesAny(pathIncludes, relativePath);
+    }
+
+    /**
+     * Check if a path matches any rule
+     *
+     * @param rules the rules to match
+     * @param value the path to check
+     * @return true if any rule matches the path
+     */
+    private static boolean matchesAny(List<PathMatcher> rules, String value) {
+        if (rules.isEmpty()) return false;
+
+        Path path = Paths.get(value);
+        for (PathMatcher rule : rules) {
+            if (rule.matches(path)) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Compile a glob and add it to the name or path rules
+     *
+     * @param glob      the glob to add
+     * @param nameRules the rules matched against the name
+     * @param pathRules the rules matched against the relative path
+     * @throws IllegalArgumentException if the glob is empty or invalid
+     */
+    private static void addGlob(String glob, List<PathMatcher> nameRules, List<PathMatcher> pathRules) {
+        int end = glob.length();
+        while (end > 0 && glob.charAt(end - 1) == '/') end--;
+        if (glob.lastIndexOf('/', end - 1) < 0) {
+            nameRules.add(globMatcher(glob.substring(0, end)));
+            return;
+        }
+
+        // Leading slashes anchor the glob to the source directory,
+        // which is the default for relative paths anyway
+        int start = 0;
+        while (start < end && glob.charAt(start) == '/') start++;
+
+        List<String> globs = new ArrayList<>();
+        globs.add(glob.substring(start, end));
+        if (globs.get(0).startsWith("**/")) {
+            globs.add(globs.get(0).substring(3));
+        }
+
+        for (int i = 0, size = globs.size(); i < size; i++) {
+            if (globs.get(i).endsWith("/**")) {
+                globs.add(globs.get(i).substring(0, globs.get(i).length() - 3));
+            }
+        }
+
+        for (String g : globs) {
+            pathRules.add(globMatcher(g));
+        }
+    }
+
+    /**
+     * Create a matcher for a glob
+     *
+     * @param glob the glob to match
+     * @return the created matcher
+     * @throws IllegalArgumentException if the glob is empty or invalid
+     */
+    private static PathMatcher globMatcher(String glob) {
+        if (glob.isEmpty()) {
+            throw new IllegalArgumentException("The glob must not be empty");
+        }
+
+        return FileSystems.getDefault().getPathMatcher("glob:" + glob);
+    }
+
+    /**
+     * Create a matcher for a regular expression matching
+     * the whole path, using '/' as the separator
+     *
+     * @param regex the regular expression to match
+     * @return the created matcher
+     */
+    private static PathMatcher regexMatcher(String regex) {
+        final Pattern pattern = Pattern.compile(regex);
+        return path -> {
+            StringBuilder value = new StringBuilder();
+            for (Path name : path) {
+                if (value.length() > 0) value.append('/');
+                value.append(name);
+            }
+
+            return pattern.matcher(value).matches();
+        };
+    }
+}
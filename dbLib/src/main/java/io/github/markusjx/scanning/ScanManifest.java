@@ -0,0 +1,70 @@
+package io.github.markusjx.scanning;
+
+import io.github.markusjx.datatypes.ChainedHashMap;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The manifest of a previous scan. Contains the modification time
+ * and the subdirectories of every previously scanned directory.
+ * Used by the {@link FileScanner} to skip listing directories
+ * which did not change since the last scan.
+ */
+public final class ScanManifest {
+    /**
+     * The last modification times of all directories by their path
+     */
+    private final Map<String, Long> lastModified;
+
+    /**
+     * The names of all subdirectories by the path of their parent directory
+     */
+    private final ChainedHashMap<String, String> subDirectories;
+
+    /**
+     * Create a new scan manifest
+     *
+     * @param lastModified   the last modification times of all directories by their path
+     * @param subDirectories the names of all subdirectories by the path of their parent directory
+     */
+    public ScanManifest(Map<String, Long> lastModified, ChainedHashMap<String, String> subDirectories) {
+        Objects.requireNonNull(lastModified);
+        Objects.requireNonNull(subDirectories);
+        this.lastModified = lastModified;
+        this.subDirectories = subDirectories;
+    }
+
+    /**
+     * Check if a directory did not change since the last scan
+     *
+     * @param path         the path of the directory
+     * @param lastModified the current modification time of the directory
+     * @return true if the directory is unchanged
+     */
+    public boolean isUnchanged(String path, Long lastModified) {
+        Long previous = this.lastModified.get(path);
+        return previous != null && previous.equals(lastModified);
+    }
+
+    /**
+     * Get the names of the subdirectories of a directory at the time of the last scan
+     *
+     * @param path the path of the directory
+     * @return the names of the subdirectories
+     */
+    public List<String> getSubDirectories(String path) {
+        return subDirectories.getOrDefault(path, Collections.emptyList());
+    }
+
+    /**
+     * Get the number of directories in this manifest
+     *
+     * @return the number of directories
+     */
+    public int size() {
+        return lastModified.size();
+    }
+}
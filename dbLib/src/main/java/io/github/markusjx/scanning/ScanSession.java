@@ -0,0 +1,242 @@
+package io.github.markusjx.scanning;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A scan session. Collects live progress counters of a running
+ * scan and allows the scan to be cancelled from another thread.
+ * The counters are updated once per listed directory, so reading
+ * them is cheap and does not slow down the scan.
+ */
+public final class ScanSession {
+    /**
+     * The number of visited directories
+     */
+    private final LongAdder directoriesVisited;
+
+    /**
+     * The number of visited files
+     */
+    private final LongAdder filesVisited;
+
+    /**
+     * The total size of all visited files in bytes
+     */
+    private final LongAdder bytesVisited;
+
+    /**
+     * The number of discovered directories which have not been visited yet
+     */
+    private final LongAdder queueDepth;
+
+    /**
+     * The number of files and directories excluded by the filter
+     */
+    private final LongAdder excluded;
+
+    /**
+     * The number of files not matching any include rule
+     */
+    private final LongAdder notIncluded;
+
+    /**
+     * The number of already visited directories and hard links which were skipped
+     */
+    private final LongAdder skipped;
+
+    /**
+     * The time the session was created in nanoseconds
+     */
+    private final long startTime;
+
+    /**
+     * The time the scan finished in nanoseconds
+     * or zero if it is still running
+     */
+    private volatile long endTime;
+
+    /**
+     * Whether the scan was cancelled
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Create a new scan session
+     */
+    public ScanSession() {
+        this.directoriesVisited = new LongAdder();
+        this.filesVisited = new LongAdder();
+        this.bytesVisited = new LongAdder();
+        this.queueDepth = new LongAdder();
+        this.excluded = new LongAdder();
+        this.notIncluded = new LongAdder();
+        this.skipped = new LongAdder();
+        this.startTime = System.nanoTime();
+        this.endTime = 0;
+        this.cancelled = false;
+    }
+
+    /**
+     * Cancel the scan. The scan will stop before listing the
+     * next directory and throw a {@link java.util.concurrent.CancellationException}.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Check if the scan was cancelled
+     *
+     * @return true if the scan was cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Check if the scan is finished
+     *
+     * @return true if the scan is finished or was cancelled
+     */
+    public boolean isDone() {
+        return endTime != 0;
+    }
+
+    /**
+     * Get the number of visited directories
+     *
+     * @return the number of visited directories
+     */
+    public long getDirectoriesVisited() {
+        return directoriesVisited.sum();
+    }
+
+    /**
+     * Get the number of visited files
+     *
+     * @return the number of visited files
+     */
+    public long getFilesVisited() {
+        return filesVisited.sum();
+    }
+
+    /**
+     * Get the total size of all visited files
+     *
+     * @return the size of all visited files in bytes
+     */
+    public long getBytesVisited() {
+        return bytesVisited.sum();
+    }
+
+    /**
+     * Get the number of directories which have
+     * been discovered but not visited yet
+     *
+     * @return the number of queued directories
+     */
+    public long getQueueDepth() {
+        return queueDepth.sum();
+    }
+
+    /**
+     * Get the number of files and directories excluded by the
+     * {@link ScanFilter}. Excluded directories count as one entry.
+     *
+     * @return the number of excluded entries
+     */
+    public long getExcluded() {
+        return excluded.sum();
+    }
+
+    /**
+     * Get the number of files which did not match any include rule
+     *
+     * @return the number of files not included
+     */
+    public long getNotIncluded() {
+        return notIncluded.sum();
+    }
+
+    /**
+     * Get the number of directories and hard linked files which were
+     * skipped because they were already visited during the scan
+     *
+     * @return the number of skipped entries
+     */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    /**
+     * Get the time since the scan was started
+     *
+     * @return the elapsed time in milliseconds
+     */
+    public long getElapsedMillis() {
+        long end = isDone() ? endTime : System.nanoTime();
+        return (end - startTime) / 1_000_000;
+    }
+
+    /**
+     * Get the average number of files visited per second
+     *
+     * @return the number of files per second
+     */
+    public double getFilesPerSecond() {
+        long elapsed = getElapsedMillis();
+        if (elapsed == 0) return 0;
+
+        return getFilesVisited() * 1000.0 / elapsed;
+    }
+
+    /**
+     * Called when directories were discovered
+     *
+     * @param numDirectories the number of discovered directories
+     */
+    void directoriesQueued(int numDirectories) {
+        queueDepth.add(numDirectories);
+    }
+
+    /**
+     * Called when a directory was visited
+     *
+     * @param numFiles       the number of files in the directory
+     * @param numBytes       the size of all files in the directory
+     * @param numExcluded    the number of entries excluded by the filter
+     * @param numNotIncluded the number of files not matching any include rule
+     * @param numSkipped     the number of skipped directories and hard links
+     */
+    void directoryVisited(int numFiles, long numBytes, int numExcluded, int numNotIncluded, int numSkipped) {
+        queueDepth.decrement();
+        directoriesVisited.increment();
+        filesVisited.add(numFiles);
+        bytesVisited.add(numBytes);
+        if (numExcluded > 0) excluded.add(numExcluded);
+        if (numNotIncluded > 0) notIncluded.add(numNotIncluded);
+        if (numSkipped > 0) skipped.add(numSkipped);
+    }
+
+    /**
+     * Called when the scan finished
+     */
+    void finish() {
+        endTime = System.nanoTime();
+    }
+
+    @Override
+    public String toString() {
+        return "ScanSession{" +
+                "directoriesVisited=" + getDirectoriesVisited() +
+                ", filesVisited=" + getFilesVisited() +
+                ", bytesVisited=" + getBytesVisited() +
+                ", queueDepth=" + getQueueDepth() +
+                ", excluded=" + getExcluded() +
+                ", notIncluded=" + getNotIncluded() +
+                ", skipped=" + getSkipped() +
+                ", filesPerSecond=" + getFilesPerSecond() +
+                ", cancelled=" + cancelled +
+                '}';
+    }
+}
@@ -1,3 +1,5 @@
+import io.github.markusjx.database.AsyncDatabaseManager;
+import io.github.markusjx.database.CopyProgressListener;
 import io.github.markusjx.database.DatabaseManager;
 import io.github.markusjx.database.filter.DocumentFilter;
 import io.github.markusjx.database.filter.filters.FilenameFilter;
@@ -5,21 +7,50 @@ import io.github.markusjx.database.filter.filters.TagFilter;
 import io.github.markusjx.database.filter.filters.dates.DateFilter;
 import io.github.markusjx.database.persistence.CustomPersistence;
 import io.github.markusjx.database.persistence.SQLiteProvider;
+import io.github.markusjx.database.types.Directory;
 import io.github.markusjx.database.types.Document;
+import io.github.markusjx.database.types.Property;
+import io.github.markusjx.database.types.PropertyValue;
+import io.github.markusjx.database.types.PropertyValueSet;
 import io.github.markusjx.database.types.Tag;
 import io.github.markusjx.datatypes.ChainedHashMap;
+import io.github.markusjx.datatypes.DocumentPage;
+import io.github.markusjx.datatypes.DocumentSearchPage;
+import io.github.markusjx.datatypes.DocumentSearchResult;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metamodel.spi.MetamodelImplementor;
+import org.hibernate.persister.collection.AbstractCollectionPersister;
+import org.hibernate.persister.entity.AbstractEntityPersister;
 import org.hibernate.tool.schema.Action;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 class TestDBManager {
     private static final Random r = new Random();
@@ -47,6 +78,66 @@ class TestDBManager {
         return ChainedHashMap.of(props.toArray(new String[0]));
     }
 
+    static List<Document> generateBulkDocuments(String prefix, int numDocuments) {
+        final Tag[] tags = {new Tag("bulk1"), new Tag("bulk2"), new Tag("bulk3")};
+        final Property property = new Property("bulkProp");
+
+        List<Document> documents = new ArrayList<>(numDocuments);
+        for (int i = 0; i < numDocuments; i++) {
+            Document d = new Document("n" + i, prefix + "/n" + i, prefix, new ArrayList<>(),
+                    LocalDate.now());
+            d.fileSize = (long) i;
+            d.lastModified = System.currentTimeMillis();
+            d.tags.add(tags[i % tags.length]);
+            if (i % 2 == 0) d.tags.add(tags[(i + 1) % tags.length]);
+            d.properties.add(new PropertyValueSet(property, new PropertyValue("v" + (i % 100))));
+            documents.add(d);
+        }
+
+        return documents;
+    }
+
+    static void bulkInsert(String name, DatabaseManager manager, int numDocuments) {
+        final Logger logger = LoggerFactory.getLogger(name);
+        final long numBefore = manager.getNumDocumentsBy(DocumentFilter.createFilter());
+
+        // Persist some documents one by one for comparison
+        final int numCompare = numDocuments / 10;
+        List<Document> documents = generateBulkDocuments("compare", numCompare);
+        long cur_time = System.currentTimeMillis();
+        Assertions.assertTrue(manager.persistDocuments(documents, true));
+        long time = Math.max(System.currentTimeMillis() - cur_time, 1);
+        logger.info("Merged " + numCompare + " documents in " + time + "ms, " +
+                (numCompare * 1000L / time) + " documents per second");
+
+        documents = generateBulkDocuments("bulk", numDocuments);
+        cur_time = System.currentTimeMillis();
+        Assertions.assertTrue(manager.persistDocuments(documents));
+        time = Math.max(System.currentTimeMillis() - cur_time, 1);
+        logger.info("Inserted " + numDocuments + " documents in " + time + "ms, " +
+                (numDocuments * 1000L / time) + " documents per second");
+
+        // Inserting the same documents again must not insert anything
+        Assertions.assertTrue(manager.persistDocuments(generateBulkDocuments("bulk", numDocuments)));
+
+        Assertions.assertEquals(numBefore + numDocuments + numCompare,
+                manager.getNumDocumentsBy(DocumentFilter.createFilter()));
+        Assertions.assertEquals((numDocuments + 2) / 3 + (numCompare + 2) / 3 +
+                        (numDocuments + 3) / 6 + (numCompare + 3) / 6,
+                manager.getNumDocumentsBy(DocumentFilter.createFilter(new TagFilter("bulk1"))));
+
+        List<Document> found = manager.getDocumentsBy(DocumentFilter.createFilter(new FilenameFilter("n1", true)), 0);
+        Assertions.assertEquals(2, found.size());
+        for (Document d : found) {
+            Assertions.assertEquals(LocalDate.now(), d.creationDate);
+            Assertions.assertEquals(Long.valueOf(1), d.fileSize);
+            Assertions.assertEquals(1, d.tags.size());
+            Assertions.assertEquals("bulk2", d.tags.get(0).name);
+            Assertions.assertEquals(1, d.properties.size());
+            Assertions.assertEquals("v1", d.properties.get(0).propertyValue.value);
+        }
+    }
+
     @BeforeAll
     static void fillDB() {
         SQLiteProvider provider = new SQLiteProvider("database.db", Action.CREATE_DROP, false);
@@ -156,4 +247,670 @@ class TestDBManager {
 
         Assertions.assertTrue(docs.size() >= 6);
     }
+
+    @Test
+    void keysetPaginationTest() {
+        final DocumentFilter filter = DocumentFilter.createFilter(new TagFilter("tag1"));
+        List<String> paths = new ArrayList<>();
+        String token = null;
+        int numPages = 0;
+
+        do {
+            DocumentPage page = manager.getDocumentPage(filter, token, 2);
+            Assertions.assertTrue(page.documents.size() <= 2);
+            page.documents.forEach(d -> paths.add(d.absolutePath));
+            token = page.continuationToken;
+            numPages++;
+        } while (token != null);
+
+        Assertions.assertEquals(2, numPages);
+        Assertions.assertEquals(List.of("C/n1", "C/n2", "C/n3"), paths);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> manager.getDocumentPage(filter, "%", 2));
+    }
+
+    @Test
+    void rankedSearchTest() {
+        List<DocumentSearchResult> results = manager.getDocumentsRanked(
+                DocumentFilter.createFilter(new TagFilter("tag1")), 2);
+
+        Assertions.assertEquals(2, results.size());
+        Assertions.assertEquals("C/n1", results.get(0).document.absolutePath);
+        Assertions.assertEquals(0, results.get(0).accuracy);
+        Assertions.assertEquals("C/n2", results.get(1).document.absolutePath);
+        Assertions.assertEquals(1, results.get(1).accuracy);
+        Assertions.assertEquals(2, results.get(1).document.tags.size());
+
+        results = manager.getDocumentsRanked(DocumentFilter.createFilter(new TagFilter("tag3")), 10);
+        Assertions.assertEquals(3, results.size());
+        for (int i = 1; i < results.size(); i++) {
+            Assertions.assertTrue(results.get(i - 1).accuracy <= results.get(i).accuracy);
+        }
+    }
+
+    @Test
+    void bulkInsertTest(@TempDir Path root) {
+        try (TestDatabase database = TestDatabase.createManager(root, "bulk")) {
+            bulkInsert("bulkInsertTest", database.manager, 1000);
+        }
+    }
+
+    @Benchmark
+    void bulkInsertBenchmark(@TempDir Path root) {
+        try (TestDatabase database = TestDatabase.createManager(root, "bulk")) {
+            bulkInsert("bulkInsertBenchmark", database.manager, 100000);
+        }
+    }
+
+    static Directory generateImportTree(int numDirectories, int numDocuments) {
+        Directory source = new Directory("", "");
+        for (int i = 0; i < numDirectories; i++) {
+            Directory directory = new Directory("d" + i, "d" + i);
+            for (int j = 0; j < numDocuments; j++) {
+                directory.documents.add(new Document("n" + j, directory.path + "/n" + j, directory.path,
+                        new ArrayList<>(), LocalDate.now()));
+            }
+
+            source.directories.add(directory);
+        }
+
+        return source;
+    }
+
+    /**
+     * Generate a directory tree with a tagged document and a subdirectory with tagged documents
+     *
+     * @param withRemoved whether to add the tagged document and the subdirectory
+     * @param tagged      whether to add tags and properties to the documents
+     * @return the generated tree
+     */
+    static Directory generateSyncTree(boolean withRemoved, boolean tagged) {
+        final Tag tag = new Tag("syncTag");
+        final Property property = new Property("syncProp");
+
+        Directory source = new Directory("src", "src");
+        Directory sub = new Directory("src/sub", "sub");
+        Directory deep = new Directory("src/sub/deep", "deep");
+        source.documents.add(new Document("a.txt", "src/a.txt", "src", new ArrayList<>(), LocalDate.now()));
+        if (withRemoved) {
+            source.documents.add(new Document("tagged.txt", "src/tagged.txt", "src", new ArrayList<>(), LocalDate.now()));
+            sub.documents.add(new Document("b.txt", "src/sub/b.txt", "src/sub", new ArrayList<>(), LocalDate.now()));
+            deep.documents.add(new Document("c.txt", "src/sub/deep/c.txt", "src/sub/deep", new ArrayList<>(),
+                    LocalDate.now()));
+            sub.directories.add(deep);
+            source.directories.add(sub);
+        }
+
+        final List<Directory> directories = source.getAllDirectories();
+        for (Directory d : directories) {
+            d.numChildren = d.documents.size() + d.directories.size();
+            for (Document document : d.documents) {
+                if (tagged && !document.filename.equals("a.txt")) {
+                    document.tags.add(tag);
+                    document.properties.add(new PropertyValueSet(property, new PropertyValue("v")));
+                }
+            }
+        }
+
+        return source;
+    }
+
+    /**
+     * Count the rows of the tag, property and directory link tables
+     * referencing documents or directories which don't exist
+     *
+     * @param factory the factory of the database to check
+     * @return the number of orphaned rows
+     */
+    static long countOrphanedRows(EntityManagerFactory factory) {
+        final MetamodelImplementor metamodel = factory.unwrap(SessionFactoryImplementor.class).getMetamodel();
+        final AbstractEntityPersister document = (AbstractEntityPersister) metamodel.entityPersister(Document.class);
+        final AbstractEntityPersister directory = (AbstractEntityPersister) metamodel.entityPersister(Directory.class);
+        final AbstractCollectionPersister tags = (AbstractCollectionPersister)
+                metamodel.collectionPersister(Document.class.getName() + ".tags");
+        final AbstractCollectionPersister properties = (AbstractCollectionPersister)
+                metamodel.collectionPersister(Document.class.getName() + ".properties");
+        final AbstractCollectionPersister directoryDocuments = (AbstractCollectionPersister)
+                metamodel.collectionPersister(Directory.class.getName() + ".documents");
+        final AbstractCollectionPersister directoryDirectories = (AbstractCollectionPersister)
+                metamodel.collectionPersister(Directory.class.getName() + ".directories");
+
+        final Object[][] references = {
+                {tags, tags.getKeyColumnNames()[0], document},
+                {properties, properties.getKeyColumnNames()[0], document},
+                {directoryDocuments, directoryDocuments.getKeyColumnNames()[0], directory},
+                {directoryDocuments, directoryDocuments.getElementColumnNames()[0], document},
+                {directoryDirectories, directoryDirectories.getKeyColumnNames()[0], directory},
+                {directoryDirectories, directoryDirectories.getElementColumnNames()[0], directory},
+        };
+
+        EntityManager em = factory.createEntityManager();
+        long res = 0;
+        for (Object[] reference : references) {
+            AbstractEntityPersister referenced = (AbstractEntityPersister) reference[2];
+            res += ((Number) em.createNativeQuery("select count(*) from " +
+                    ((AbstractCollectionPersister) reference[0]).getTableName() + " where " + reference[1] +
+                    " not in (select " + referenced.getIdentifierColumnNames()[0] + " from " +
+                    referenced.getTableName() + ")").getSingleResult()).longValue();
+        }
+
+        em.close();
+        return res;
+    }
+
+    @Test
+    void synchronizeRemovedDocumentsTest(@TempDir Path root) {
+        try (TestDatabase database = TestDatabase.createManager(root, "sync")) {
+            DatabaseManager syncManager = database.manager;
+
+            Assertions.assertTrue(syncManager.synchronizeListedDirectories(generateSyncTree(true, true)
+                    .getAllDirectories()));
+            Assertions.assertEquals(4, syncManager.getNumDocumentsBy(DocumentFilter.createFilter()));
+            Assertions.assertEquals(3, syncManager.getNumDocumentsBy(DocumentFilter.createFilter(
+                    new TagFilter("syncTag"))));
+
+            // Remove the tagged document and the subdirectory with its documents
+            Assertions.assertTrue(syncManager.synchronizeListedDirectories(generateSyncTree(false, false)
+                    .getAllDirectories()));
+            Assertions.assertEquals(1, syncManager.getNumDocumentsBy(DocumentFilter.createFilter()));
+            Assertions.assertNull(syncManager.getDirectory("src/sub"));
+            Assertions.assertEquals(0, countOrphanedRows(database.factory));
+
+            // Documents added at the same paths must not get the tags and properties of the removed ones
+            Assertions.assertTrue(syncManager.synchronizeListedDirectories(generateSyncTree(true, false)
+                    .getAllDirectories()));
+            List<Document> documents = syncManager.getDocumentsBy(DocumentFilter.createFilter(), 0);
+            Assertions.assertEquals(4, documents.size());
+            for (Document d : documents) {
+                Assertions.assertTrue(d.tags.isEmpty());
+                Assertions.assertTrue(d.properties.isEmpty());
+            }
+
+            Assertions.assertEquals(0, countOrphanedRows(database.factory));
+        }
+    }
+
+    @Test
+    void importDirectoryTest(@TempDir Path root) {
+        final int NUM_DIRECTORIES = 20;
+        final int NUM_DOCUMENTS = 500;
+        Directory source = generateImportTree(NUM_DIRECTORIES, NUM_DOCUMENTS);
+
+        try (TestDatabase database = TestDatabase.createManager(root, "import")) {
+            DatabaseManager importManager = database.manager;
+            Assertions.assertTrue(importManager.importDirectory(source, "source", 1000));
+            Assertions.assertEquals(NUM_DIRECTORIES * NUM_DOCUMENTS,
+                    importManager.getNumDocumentsBy(DocumentFilter.createFilter()));
+
+            // Every directory must be linked to its parent and to all of its documents
+            Directory imported = importManager.getDirectory("");
+            Assertions.assertNotNull(imported);
+            Assertions.assertEquals(NUM_DIRECTORIES, imported.directories.size());
+            for (int i = 0; i < NUM_DIRECTORIES; i++) {
+                Directory directory = importManager.getDirectory("d" + i);
+                Assertions.assertNotNull(directory);
+                Assertions.assertEquals(NUM_DOCUMENTS, directory.documents.size());
+            }
+
+            // Importing the same tree again must not insert anything
+            Assertions.assertTrue(importManager.importDirectory(source, "source", 1000));
+            Assertions.assertEquals(NUM_DIRECTORIES * NUM_DOCUMENTS,
+                    importManager.getNumDocumentsBy(DocumentFilter.createFilter()));
+            Assertions.assertEquals(NUM_DIRECTORIES, importManager.getDirectory("").directories.size());
+            Assertions.assertEquals(NUM_DOCUMENTS, importManager.getDirectory("d7").documents.size());
+        }
+    }
+
+    /**
+     * Read the journal mode and the per-connection settings changed by the bulk import profile
+     *
+     * @param connection the connection to read the settings of
+     * @return the values of the pragmas
+     * @throws SQLException if the pragmas could not be read
+     */
+    static List<String> readProfilePragmas(Connection connection) throws SQLException {
+        List<String> values = new ArrayList<>();
+        try (Statement statement = connection.createStatement()) {
+            for (String pragma : new String[]{"journal_mode", "synchronous", "cache_size", "temp_store"}) {
+                try (ResultSet result = statement.executeQuery("PRAGMA " + pragma)) {
+                    Assertions.assertTrue(result.next());
+                    values.add(result.getString(1));
+                }
+            }
+        }
+
+        return values;
+    }
+
+    @Test
+    void bulkImportProfileTest(@TempDir Path root) throws SQLException {
+        try (TestDatabase database = TestDatabase.createManager(root, "profile")) {
+            DatabaseManager profileManager = database.manager;
+            profileManager.setUseBulkImportProfile(true);
+
+            Assertions.assertTrue(profileManager.importDirectory(generateImportTree(10, 100), "source", 300));
+            Assertions.assertEquals(1000, profileManager.getNumDocumentsBy(DocumentFilter.createFilter()));
+        }
+
+        // The profile must restore the settings of the connection and keep the journal mode of the database
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + root.resolve("profile.db"))) {
+            final List<String> before = readProfilePragmas(connection);
+            SQLiteProvider.BulkImportProfile profile = SQLiteProvider.enableBulkImportProfile(connection);
+            final List<String> enabled = readProfilePragmas(connection);
+            Assertions.assertEquals(before.get(0), enabled.get(0));
+            Assertions.assertNotEquals(before, enabled);
+
+            profile.restore();
+            Assertions.assertEquals(before, readProfilePragmas(connection));
+        }
+    }
+
+    @Benchmark
+    void bulkImportProfileBenchmark(@TempDir Path root) {
+        final Logger logger = LoggerFactory.getLogger("bulkImportProfileBenchmark");
+        final int NUM_DIRECTORIES = 500;
+        final int NUM_DOCUMENTS = 1000;
+
+        for (boolean useProfile : new boolean[]{false, true}) {
+            try (TestDatabase database = TestDatabase.createManager(root, "profile-" + useProfile)) {
+                DatabaseManager profileManager = database.manager;
+                profileManager.setUseBulkImportProfile(useProfile);
+
+                long cur_time = System.currentTimeMillis();
+                Assertions.assertTrue(profileManager.importDirectory(generateImportTree(NUM_DIRECTORIES, NUM_DOCUMENTS),
+                        "source", DatabaseManager.DEFAULT_IMPORT_COMMIT_INTERVAL));
+                logger.info("Imported " + (NUM_DIRECTORIES * NUM_DOCUMENTS) + " documents " +
+                        (useProfile ? "with" : "without") + " the bulk import profile in " +
+                        (System.currentTimeMillis() - cur_time) + "ms");
+
+                Assertions.assertEquals(NUM_DIRECTORIES * NUM_DOCUMENTS,
+                        profileManager.getNumDocumentsBy(DocumentFilter.createFilter()));
+            }
+        }
+    }
+
+    @Test
+    void copyDatabaseTest(@TempDir Path root) {
+        final Logger logger = LoggerFactory.getLogger("copyDatabaseTest");
+        final int NUM_DIRECTORIES = 20;
+        final int NUM_DOCUMENTS = 500;
+        Directory source = generateImportTree(NUM_DIRECTORIES, NUM_DOCUMENTS);
+        for (Document d : source.directories.get(0).documents) {
+            d.tags.add(new Tag("copied"));
+            d.properties.add(new PropertyValueSet(new Property("copiedProp"), new PropertyValue("copiedValue")));
+        }
+
+        try (TestDatabase sourceDatabase = TestDatabase.createManager(root, "copy0");
+             TestDatabase targetDatabase = TestDatabase.createManager(root, "copy1")) {
+            DatabaseManager sourceManager = sourceDatabase.manager;
+            DatabaseManager targetManager = targetDatabase.manager;
+
+            Assertions.assertTrue(sourceManager.importDirectory(source, "source", 5000));
+
+            final Map<CopyProgressListener.Stage, Long> progress = new ConcurrentHashMap<>();
+            long cur_time = System.currentTimeMillis();
+            Assertions.assertTrue(sourceManager.copyDatabaseTo(targetManager, 1000, 2,
+                    (stage, numCopied, total) -> progress.put(stage, numCopied)));
+            logger.info("Copied " + (NUM_DIRECTORIES * NUM_DOCUMENTS) + " documents in " +
+                    (System.currentTimeMillis() - cur_time) + "ms");
+
+            Assertions.assertEquals(NUM_DIRECTORIES * NUM_DOCUMENTS,
+                    (long) progress.get(CopyProgressListener.Stage.DOCUMENTS));
+            Assertions.assertEquals(NUM_DIRECTORIES + 1, (long) progress.get(CopyProgressListener.Stage.DIRECTORIES));
+            Assertions.assertEquals(NUM_DIRECTORIES * (NUM_DOCUMENTS + 1),
+                    (long) progress.get(CopyProgressListener.Stage.LINKS));
+
+            Assertions.assertEquals(NUM_DIRECTORIES * NUM_DOCUMENTS,
+                    targetManager.getNumDocumentsBy(DocumentFilter.createFilter()));
+            Assertions.assertEquals(NUM_DOCUMENTS,
+                    targetManager.getNumDocumentsBy(DocumentFilter.createFilter(new TagFilter("copied"))));
+            Assertions.assertEquals(NUM_DIRECTORIES, targetManager.getDirectory("").directories.size());
+            Assertions.assertEquals(NUM_DOCUMENTS, targetManager.getDirectory("d7").documents.size());
+
+            // Copying again must not duplicate anything
+            Assertions.assertTrue(sourceManager.copyDatabaseTo(targetManager));
+            Assertions.assertEquals(NUM_DIRECTORIES * NUM_DOCUMENTS,
+                    targetManager.getNumDocumentsBy(DocumentFilter.createFilter()));
+            Assertions.assertEquals(NUM_DIRECTORIES, targetManager.getDirectory("").directories.size());
+        }
+    }
+
+    @Test
+    void dictionaryCacheTest(@TempDir Path root) {
+        try (TestDatabase database = TestDatabase.createManager(root, "dictionary")) {
+            DatabaseManager cacheManager = database.manager;
+
+            cacheManager.createTag("cached1");
+            cacheManager.createDocument("n1", "C/n1", ChainedHashMap.of("cachedProp", "cachedVal"), LocalDate.now(),
+                    "cached1", "cached2");
+            cacheManager.createDocument("n2", "C/n2", ChainedHashMap.of("cachedProp", "cachedVal"), LocalDate.now(),
+                    "cached2");
+
+            // All tags are known after the documents have been created
+            long misses = cacheManager.getDictionaryCacheMisses();
+            long hits = cacheManager.getDictionaryCacheHits();
+            Assertions.assertNotNull(cacheManager.getTagByName("cached1"));
+            Assertions.assertNotNull(cacheManager.getTagByName("cached2"));
+            Assertions.assertTrue(cacheManager.tagExists("cached2"));
+            Assertions.assertEquals(misses, cacheManager.getDictionaryCacheMisses());
+            Assertions.assertEquals(hits + 3, cacheManager.getDictionaryCacheHits());
+
+            // A new database manager warms its cache with the existing entries
+            DatabaseManager warmManager = new DatabaseManager(database.factory.createEntityManager());
+            Assertions.assertTrue(warmManager.tagExists("cached1"));
+            Assertions.assertTrue(warmManager.tagExists("cached2"));
+            Assertions.assertEquals(0, warmManager.getDictionaryCacheMisses());
+            Assertions.assertEquals(2, warmManager.getDictionaryCacheHits());
+            warmManager.close();
+
+            Assertions.assertEquals(2,
+                    cacheManager.getNumDocumentsBy(DocumentFilter.createFilter(new TagFilter("cached2"))));
+        }
+    }
+
+    @Test
+    void asyncDatabaseManagerTest() throws Exception {
+        try (AsyncDatabaseManager async = new AsyncDatabaseManager(manager, 1, 16)) {
+            // Block the only thread, so all following reads are still running when requested again
+            CountDownLatch latch = new CountDownLatch(1);
+            async.submit(m -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException ignored) {
+                }
+                return null;
+            });
+
+            AtomicInteger numRuns = new AtomicInteger();
+            CompletableFuture<List<Tag>> first = async.read(List.of("tagsLike", "tag"), m -> {
+                numRuns.incrementAndGet();
+                return m.getTagsLike("tag");
+            });
+            CompletableFuture<List<Tag>> second = async.read(List.of("tagsLike", "tag"), m -> {
+                numRuns.incrementAndGet();
+                return m.getTagsLike("tag");
+            });
+            CompletableFuture<List<Tag>> third = async.getTagsLike("tag");
+            CompletableFuture<List<Tag>> fourth = async.getTagsLike("tag");
+            latch.countDown();
+
+            Assertions.assertEquals(first.get(), second.get());
+            Assertions.assertEquals(first.get(), third.get());
+            Assertions.assertEquals(third.get(), fourth.get());
+            Assertions.assertEquals(1, numRuns.get());
+            long numDocuments = async.getNumDocumentsBy(DocumentFilter.createFilter(new TagFilter("tag1"))).get();
+            Assertions.assertEquals(3, numDocuments);
+
+            // Changing a filter after a read was requested must neither change
+            // the result of the read nor coalesce it with a read of the changed filter
+            CountDownLatch filterLatch = new CountDownLatch(1);
+            async.submit(m -> {
+                try {
+                    filterLatch.await();
+                } catch (InterruptedException ignored) {
+                }
+                return null;
+            });
+
+            DocumentFilter filter = DocumentFilter.createFilter(new TagFilter("tag1"));
+            CompletableFuture<Long> unchanged = async.getNumDocumentsBy(filter);
+            filter.addFilter(new FilenameFilter("n1", true));
+            CompletableFuture<Long> changed = async.getNumDocumentsBy(filter);
+            filterLatch.countDown();
+
+            Assertions.assertEquals(3, unchanged.get());
+            Assertions.assertEquals(1, changed.get());
+        }
+    }
+
+    @Benchmark
+    void keysetPaginationBenchmark(@TempDir Path root) {
+        final Logger logger = LoggerFactory.getLogger("keysetPaginationBenchmark");
+        final int NUM_DOCUMENTS = 1000000;
+        final int CHUNK_SIZE = 100000;
+        final int PAGE_SIZE = 100;
+        final int DEPTH = 400000;
+
+        try (TestDatabase database = TestDatabase.createManager(root, "pagination")) {
+            DatabaseManager paginationManager = database.manager;
+
+            for (int i = 0; i < NUM_DOCUMENTS / CHUNK_SIZE; i++) {
+                Assertions.assertTrue(paginationManager.persistDocuments(generateBulkDocuments("c" + i, CHUNK_SIZE)));
+                paginationManager.clear();
+            }
+
+            final DocumentFilter filter = DocumentFilter.createFilter(new TagFilter("bulk1"));
+
+            long cur_time = System.currentTimeMillis();
+            DocumentPage first = paginationManager.getDocumentPage(filter, null, PAGE_SIZE);
+            logger.info("Got the first page in " + (System.currentTimeMillis() - cur_time) + "ms");
+            Assertions.assertEquals(PAGE_SIZE, first.documents.size());
+
+            // Walk to the deep page using large pages
+            String token = null;
+            for (int skipped = 0; skipped < DEPTH; skipped += 10000) {
+                token = paginationManager.getDocumentPage(filter, token, 10000).continuationToken;
+            }
+
+            cur_time = System.currentTimeMillis();
+            DocumentPage deep = paginationManager.getDocumentPage(filter, token, PAGE_SIZE);
+            logger.info("Got the page at " + DEPTH + " using keyset pagination in " +
+                    (System.currentTimeMillis() - cur_time) + "ms");
+            Assertions.assertEquals(PAGE_SIZE, deep.documents.size());
+
+            cur_time = System.currentTimeMillis();
+            List<Document> offsetPage = paginationManager.getDocumentsBy(filter, DEPTH);
+            logger.info("Got the page at " + DEPTH + " using an offset in " +
+                    (System.currentTimeMillis() - cur_time) + "ms");
+            Assertions.assertEquals(PAGE_SIZE, offsetPage.size());
+        }
+    }
+
+    @Test
+    void searchWithCountTest(@TempDir Path root) {
+        final Logger logger = LoggerFactory.getLogger("searchWithCountTest");
+        final int NUM_DOCUMENTS = 1000;
+        final long NUM_MATCHING = (NUM_DOCUMENTS + 2) / 3 + (NUM_DOCUMENTS + 3) / 6;
+
+        try (TestDatabase database = TestDatabase.createManager(root, "count")) {
+            DatabaseManager countManager = database.manager;
+            Assertions.assertTrue(countManager.persistDocuments(generateBulkDocuments("c", NUM_DOCUMENTS)));
+
+            final DocumentFilter filter = DocumentFilter.createFilter(new TagFilter("bulk1"));
+            Assertions.assertEquals(NUM_MATCHING, countManager.getNumDocumentsBy(filter));
+
+            long cur_time = System.currentTimeMillis();
+            DocumentSearchPage page = countManager.getDocumentsWithCount(filter, 0);
+            logger.info("Got the first page with the total count in " + (System.currentTimeMillis() - cur_time) + "ms");
+            Assertions.assertEquals(100, page.documents.size());
+            Assertions.assertEquals(NUM_MATCHING, page.totalCount);
+
+            // The last page and pages after it know the total count as well
+            page = countManager.getDocumentsWithCount(filter, 500);
+            Assertions.assertEquals(NUM_MATCHING - 500, page.documents.size());
+            Assertions.assertEquals(NUM_MATCHING, page.totalCount);
+            page = countManager.getDocumentsWithCount(filter, 600);
+            Assertions.assertTrue(page.documents.isEmpty());
+            Assertions.assertEquals(NUM_MATCHING, page.totalCount);
+
+            // Writing to the database must invalidate the cached count
+            countManager.createDocument("added", "c/added", ChainedHashMap.of(), LocalDate.now(), "bulk1");
+            page = countManager.getDocumentsWithCount(filter, 0);
+            Assertions.assertEquals(NUM_MATCHING + 1, page.totalCount);
+            Assertions.assertEquals(NUM_MATCHING + 1, countManager.getNumDocumentsBy(filter));
+        }
+    }
+
+    @Test
+    void searchResultCacheTest(@TempDir Path root) {
+        final Logger logger = LoggerFactory.getLogger("searchResultCacheTest");
+        final int NUM_DOCUMENTS = 1000;
+        final long NUM_MATCHING = (NUM_DOCUMENTS + 5) / 6;
+
+        try (TestDatabase database = TestDatabase.createManager(root, "cache")) {
+            DatabaseManager cacheManager = database.manager;
+
+            // The documents share a property with a large value list
+            final List<Document> bulk = generateBulkDocuments("c", NUM_DOCUMENTS);
+            final Property property = bulk.get(0).properties.get(0).property;
+            bulk.forEach(d -> property.addValue(d.properties.get(0).propertyValue));
+            Assertions.assertTrue(cacheManager.persistPropertyValues(new ArrayList<>(property.values)));
+            Assertions.assertTrue(cacheManager.persistDocuments(bulk));
+
+            final DocumentFilter filter = DocumentFilter.createFilter(new TagFilter("bulk1", "bulk2"),
+                    new FilenameFilter("n", false));
+            final DocumentFilter equivalent = DocumentFilter.createFilter(new FilenameFilter("n", false),
+                    new TagFilter("bulk2", "bulk1"));
+
+            long cur_time = System.currentTimeMillis();
+            final List<Document> documents = cacheManager.getDocumentsBy(filter, 0);
+            Assertions.assertEquals(NUM_MATCHING, cacheManager.getNumDocumentsBy(filter));
+            logger.info("Searched the documents in " + (System.currentTimeMillis() - cur_time) + "ms");
+            Assertions.assertEquals(100, documents.size());
+            Assertions.assertEquals(0, cacheManager.getSearchCacheHits());
+
+            // Equivalent filters must be answered by the cache
+            cur_time = System.currentTimeMillis();
+            final List<Document> cached = cacheManager.getDocumentsBy(equivalent, 0);
+            Assertions.assertEquals(NUM_MATCHING, cacheManager.getNumDocumentsBy(equivalent));
+            logger.info("Searched the cached documents in " + (System.currentTimeMillis() - cur_time) + "ms");
+            Assertions.assertEquals(documents, cached);
+            Assertions.assertEquals(2, cacheManager.getSearchCacheHits());
+
+            // Modifying the returned documents must not modify the cached documents
+            cached.get(0).tags.clear();
+            cached.get(0).properties.get(0).property.values.clear();
+            final Document fromCache = cacheManager.getDocumentsBy(filter, 0).get(0);
+            Assertions.assertEquals(2, fromCache.tags.size());
+            Assertions.assertEquals(100, fromCache.properties.get(0).property.values.size());
+            Assertions.assertNotSame(cached.get(0).properties.get(0).property, fromCache.properties.get(0).property);
+            Assertions.assertEquals(3, cacheManager.getSearchCacheHits());
+
+            // Writing to the database must invalidate the cached results
+            final long misses = cacheManager.getSearchCacheMisses();
+            cacheManager.createDocument("nAdded", "c/nAdded", ChainedHashMap.of(), LocalDate.now(), "bulk1", "bulk2");
+            Assertions.assertEquals(NUM_MATCHING + 1, cacheManager.getNumDocumentsBy(equivalent));
+            Assertions.assertEquals(misses + 1, cacheManager.getSearchCacheMisses());
+            Assertions.assertEquals(3, cacheManager.getSearchCacheHits());
+        }
+    }
+
+    @Test
+    void filenameIndexTest(@TempDir Path root) {
+        final Logger logger = LoggerFactory.getLogger("filenameIndexTest");
+        final int NUM_DIRECTORIES = 20;
+        final int NUM_DOCUMENTS = 500;
+
+        try (TestDatabase database = TestDatabase.createManager(root, "filenames")) {
+            DatabaseManager indexManager = database.manager;
+            Assertions.assertTrue(indexManager.importDirectory(generateImportTree(NUM_DIRECTORIES, NUM_DOCUMENTS),
+                    "source", DatabaseManager.DEFAULT_IMPORT_COMMIT_INTERVAL));
+
+            final DocumentFilter substring = DocumentFilter.createFilter(new FilenameFilter("N123", false));
+            final DocumentFilter wildcard = DocumentFilter.createFilter(new FilenameFilter("n12*", false));
+            final DocumentFilter shortSubstring = DocumentFilter.createFilter(new FilenameFilter("12", false));
+
+            long cur_time = System.currentTimeMillis();
+            Assertions.assertEquals(NUM_DIRECTORIES, indexManager.getNumDocumentsBy(substring));
+            logger.info("Found the documents containing a substring in " + (System.currentTimeMillis() - cur_time) +
+                    "ms");
+            Assertions.assertEquals(NUM_DIRECTORIES * 11, indexManager.getNumDocumentsBy(wildcard));
+            Assertions.assertEquals(NUM_DIRECTORIES * 11, indexManager.getDocumentPage(wildcard, null, 1000)
+                    .documents.size());
+            final long numShort = indexManager.getNumDocumentsBy(shortSubstring);
+            Assertions.assertTrue(numShort > NUM_DIRECTORIES * 11);
+
+            // Inserted documents must be found
+            indexManager.createDocument("report_n123.txt", "d1/report_n123.txt", ChainedHashMap.of(),
+                    LocalDate.now());
+            Assertions.assertEquals(NUM_DIRECTORIES + 1, indexManager.getNumDocumentsBy(substring));
+
+            // Deleted documents must not be found
+            Directory synchronizedTree = generateImportTree(NUM_DIRECTORIES, NUM_DOCUMENTS);
+            synchronizedTree.directories.remove(0);
+            Assertions.assertTrue(indexManager.synchronizeDirectory(synchronizedTree, "source"));
+            Assertions.assertEquals(NUM_DIRECTORIES - 1, indexManager.getNumDocumentsBy(substring));
+            Assertions.assertEquals((NUM_DIRECTORIES - 1) * 11, indexManager.getNumDocumentsBy(wildcard));
+
+            // The index is reused by other database managers
+            DatabaseManager reopened = new DatabaseManager(database.entityManager);
+            Assertions.assertEquals(NUM_DIRECTORIES - 1, reopened.getNumDocumentsBy(substring));
+
+            // VACUUM may renumber the rowids of the document table, the index must still find the documents
+            EntityManager vacuumEntityManager = database.factory.createEntityManager();
+            vacuumEntityManager.unwrap(Session.class).doWork(connection -> {
+                final boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(true);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("VACUUM");
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            });
+            vacuumEntityManager.close();
+
+            DatabaseManager vacuumed = new DatabaseManager(database.entityManager);
+            Assertions.assertEquals(NUM_DIRECTORIES - 1, vacuumed.getNumDocumentsBy(substring));
+            vacuumed.createDocument("other_n123.txt", "d2/other_n123.txt", ChainedHashMap.of(), LocalDate.now());
+            Assertions.assertEquals(NUM_DIRECTORIES, vacuumed.getNumDocumentsBy(substring));
+        }
+    }
+
+    @Benchmark
+    void filenameIndexBenchmark(@TempDir Path root) {
+        final Logger logger = LoggerFactory.getLogger("filenameIndexBenchmark");
+        final int NUM_DOCUMENTS = 1000000;
+        final int CHUNK_SIZE = 100000;
+
+        try (TestDatabase database = TestDatabase.createManager(root, "filenames")) {
+            DatabaseManager indexManager = database.manager;
+
+            for (int i = 0; i < NUM_DOCUMENTS / CHUNK_SIZE; i++) {
+                Assertions.assertTrue(indexManager.persistDocuments(generateBulkDocuments("c" + i, CHUNK_SIZE)));
+                indexManager.clear();
+            }
+
+            final DocumentFilter filter = DocumentFilter.createFilter(new FilenameFilter("n12345", false));
+
+            long cur_time = System.currentTimeMillis();
+            List<Document> found = indexManager.getDocumentsBy(filter, 0);
+            logger.info("Found the documents containing a substring in " + NUM_DOCUMENTS + " documents in " +
+                    (System.currentTimeMillis() - cur_time) + "ms");
+            Assertions.assertEquals(NUM_DOCUMENTS / CHUNK_SIZE, found.size());
+
+            cur_time = System.currentTimeMillis();
+            Assertions.assertEquals(NUM_DOCUMENTS / CHUNK_SIZE, indexManager.getNumDocumentsBy(filter));
+            logger.info("Counted the documents containing a substring in " + NUM_DOCUMENTS + " documents in " +
+                    (System.currentTimeMillis() - cur_time) + "ms");
+        }
+    }
+
+    @Test
+    void concurrentReadTest() throws Exception {
+        final Logger logger = LoggerFactory.getLogger("concurrentReadTest");
+        final int NUM_READS = 200;
+        final DocumentFilter filter = DocumentFilter.createFilter(new TagFilter("tag1"));
+
+        final int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+
+            long cur_time = System.currentTimeMillis();
+            for (int i = 0; i < NUM_READS; i++) {
+                futures.add(executor.submit(() -> {
+                    Assertions.assertEquals(3, manager.getDocumentsBy(filter, 0).size());
+                    Assertions.assertEquals(3, manager.getNumDocumentsBy(filter));
+                    Assertions.assertFalse(manager.getTagsLike("tag").isEmpty());
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            long time = System.currentTimeMillis() - cur_time;
+            executor.shutdown();
+            logger.info(threads + " threads: " + (NUM_READS * 1000L / Math.max(time, 1)) + " searches per second");
+        }
+    }
 }
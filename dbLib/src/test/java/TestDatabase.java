@@ -0,0 +1,58 @@
+import io.github.markusjx.database.DatabaseManager;
+import io.github.markusjx.database.persistence.CustomPersistence;
+import io.github.markusjx.database.persistence.SQLiteProvider;
+import org.hibernate.tool.schema.Action;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.nio.file.Path;
+
+/**
+ * A new SQLite database in a test directory with a database manager.
+ * Closing it closes the database manager and the entity manager factory.
+ */
+final class TestDatabase implements AutoCloseable {
+    /**
+     * The entity manager factory of the database
+     */
+    final EntityManagerFactory factory;
+
+    /**
+     * The entity manager used by the database manager
+     */
+    final EntityManager entityManager;
+
+    /**
+     * The database manager
+     */
+    final DatabaseManager manager;
+
+    /**
+     * Create a new test database
+     *
+     * @param factory the entity manager factory of the database
+     */
+    private TestDatabase(EntityManagerFactory factory) {
+        this.factory = factory;
+        this.entityManager = factory.createEntityManager();
+        this.manager = new DatabaseManager(entityManager);
+    }
+
+    /**
+     * Create a database manager on a new database
+     *
+     * @param root the directory to create the database in
+     * @param name the name of the database file without its extension
+     * @return the created database
+     */
+    static TestDatabase createManager(Path root, String name) {
+        SQLiteProvider provider = new SQLiteProvider(root.resolve(name + ".db").toString(), Action.CREATE_DROP, false);
+        return new TestDatabase(CustomPersistence.createEntityManagerFactory("documents", provider));
+    }
+
+    @Override
+    public void close() {
+        manager.close();
+        factory.close();
+    }
+}
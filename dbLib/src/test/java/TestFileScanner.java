@@ -2,18 +2,40 @@ import io.github.markusjx.database.DatabaseManager;
 import io.github.markusjx.database.filter.DocumentFilter;
 import io.github.markusjx.database.filter.filters.DirectoryFilter;
 import io.github.markusjx.database.filter.filters.FilenameFilter;
+import io.github.markusjx.database.filter.filters.TagFilter;
 import io.github.markusjx.database.persistence.CustomPersistence;
 import io.github.markusjx.database.persistence.SQLiteProvider;
 import io.github.markusjx.database.types.Directory;
 import io.github.markusjx.database.types.Document;
+import io.github.markusjx.database.types.Tag;
+import io.github.markusjx.scanning.DirectoryWatcher;
+import io.github.markusjx.scanning.DuplicateFinder;
 import io.github.markusjx.scanning.FileScanner;
+import io.github.markusjx.scanning.ScanFilter;
+import io.github.markusjx.scanning.ScanSession;
 import org.hibernate.tool.schema.Action;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 class TestFileScanner {
     static SQLiteProvider provider = new SQLiteProvider("database.db", Action.CREATE_DROP, false);
@@ -21,6 +43,51 @@ class TestFileScanner {
     static EntityManager entityManager = factory.createEntityManager();
     static DatabaseManager manager = new DatabaseManager(entityManager);
 
+    private static void createTree(Path dir, int depth, int numDirectories, int numFiles) throws IOException {
+        for (int i = 0; i < numFiles; i++) {
+            Files.createFile(dir.resolve("f" + i));
+        }
+
+        if (depth > 0) {
+            for (int i = 0; i < numDirectories; i++) {
+                Path sub = Files.createDirectory(dir.resolve("d" + i));
+                createTree(sub, depth - 1, numDirectories, numFiles);
+            }
+        }
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    private static void benchmarkParallelism(String testName, Path root) {
+        final Logger logger = LoggerFactory.getLogger(testName);
+        final int NUM_RUNS = 5;
+        final String source = root.toAbsolutePath().toString();
+
+        Directory expected = new FileScanner(source).scan();
+        logger.info("Scanning " + expected.getAllDocuments().size() + " documents in " +
+                expected.getAllDirectories().size() + " directories");
+
+        final int maxParallelism = Runtime.getRuntime().availableProcessors();
+        for (int parallelism = 1; parallelism <= maxParallelism; parallelism *= 2) {
+            long time = 0;
+            for (int i = 0; i < NUM_RUNS; i++) {
+                long cur_time = System.currentTimeMillis();
+                Directory scanned = new FileScanner(source).setParallelism(parallelism).scan();
+                time += System.currentTimeMillis() - cur_time;
+
+                Assertions.assertEquals(expected, scanned);
+            }
+
+            logger.info("Parallelism " + parallelism + " average run time: " + (time / NUM_RUNS) + "ms");
+        }
+    }
+
     @Test
     void testScanner() {
         FileScanner scanner = new FileScanner(".");
@@ -32,6 +99,461 @@ class TestFileScanner {
         System.out.println(manager.getDocumentsBy(DocumentFilter.createFilter(new DirectoryFilter("Code")), 0));
     }
 
+    @Test
+    void parallelScanDeepTreeTest(@TempDir Path root) throws IOException {
+        createTree(root, 7, 3, 5);
+        benchmarkParallelism("parallelScanDeepTreeTest", root);
+    }
+
+    @Test
+    void parallelScanWideTreeTest(@TempDir Path root) throws IOException {
+        createTree(root, 1, 500, 40);
+        benchmarkParallelism("parallelScanWideTreeTest", root);
+    }
+
+    @Test
+    void nioScanTest(@TempDir Path root) throws IOException {
+        final Logger logger = LoggerFactory.getLogger("nioScanTest");
+        final int NUM_RUNS = 5;
+        final String source = root.toAbsolutePath().toString();
+        createTree(root, 4, 4, 20);
+
+        long io_time = 0;
+        long nio_time = 0;
+        for (int i = 0; i < NUM_RUNS; i++) {
+            long cur_time = System.currentTimeMillis();
+            Directory io = new FileScanner(source).scan();
+            io_time += System.currentTimeMillis() - cur_time;
+
+            cur_time = System.currentTimeMillis();
+            Directory nio = new FileScanner(source).setUseNio(true).scan();
+            nio_time += System.currentTimeMillis() - cur_time;
+
+            Assertions.assertEquals(io, nio);
+            List<Document> ioDocuments = io.getAllDocuments();
+            List<Document> nioDocuments = nio.getAllDocuments();
+            for (int j = 0; j < ioDocuments.size(); j++) {
+                Assertions.assertEquals(ioDocuments.get(j).creationDate, nioDocuments.get(j).creationDate);
+                Assertions.assertEquals(ioDocuments.get(j).fileSize, nioDocuments.get(j).fileSize);
+                Assertions.assertEquals(ioDocuments.get(j).lastModified, nioDocuments.get(j).lastModified);
+            }
+        }
+
+        logger.info("java.io scanner average run time: " + (io_time / NUM_RUNS) + "ms");
+        logger.info("java.nio scanner average run time: " + (nio_time / NUM_RUNS) + "ms");
+    }
+
+    @Test
+    void scanSessionTest(@TempDir Path root) throws IOException {
+        final Logger logger = LoggerFactory.getLogger("scanSessionTest");
+        final String source = root.toAbsolutePath().toString();
+        createTree(root, 3, 4, 10);
+
+        for (int parallelism = 1; parallelism <= 4; parallelism *= 2) {
+            ScanSession session = new ScanSession();
+            Directory scanned = new FileScanner(source).setParallelism(parallelism).setSession(session).scan();
+
+            Assertions.assertTrue(session.isDone());
+            Assertions.assertEquals(scanned.getAllDirectories().size(), session.getDirectoriesVisited());
+            Assertions.assertEquals(scanned.getAllDocuments().size(), session.getFilesVisited());
+            Assertions.assertEquals(0, session.getQueueDepth());
+            logger.info("Parallelism " + parallelism + ": " + session);
+
+            // A cancelled session must stop the scan
+            ScanSession cancelled = new ScanSession();
+            cancelled.cancel();
+            FileScanner scanner = new FileScanner(source).setParallelism(parallelism).setSession(cancelled);
+            Assertions.assertThrows(CancellationException.class, scanner::scan);
+            Assertions.assertEquals(0, cancelled.getDirectoriesVisited());
+        }
+    }
+
+    @Test
+    void scanFilterTest(@TempDir Path root) throws IOException {
+        final String source = root.toAbsolutePath().toString();
+        createTree(root, 1, 2, 2);
+        createTree(Files.createDirectories(root.resolve("d0/node_modules")), 2, 3, 3);
+        createTree(Files.createDirectories(root.resolve("cache")), 1, 3, 3);
+        Files.createFile(root.resolve("d1/backup.bak"));
+        Files.createFile(root.resolve("d1/notes.txt"));
+
+        ScanFilter filter = new ScanFilter()
+                .exclude("node_modules")
+                .exclude("/cache")
+                .exclude("*.bak")
+                .include("f*");
+
+        for (boolean useNio : new boolean[]{false, true}) {
+            ScanSession session = new ScanSession();
+            Directory scanned = new FileScanner(source).setUseNio(useNio).setFilter(filter).setSession(session).scan();
+
+            // The excluded subtrees are never listed
+            Assertions.assertEquals(3, scanned.getAllDirectories().size());
+            Assertions.assertEquals(3, session.getDirectoriesVisited());
+            Assertions.assertEquals(6, scanned.getAllDocuments().size());
+            for (Document d : scanned.getAllDocuments()) {
+                Assertions.assertTrue(d.filename.startsWith("f"));
+            }
+
+            Assertions.assertEquals(3, session.getExcluded());
+            Assertions.assertEquals(1, session.getNotIncluded());
+        }
+    }
+
+    @Test
+    void scanFilterGlobTest(@TempDir Path root) throws IOException {
+        for (String name : new String[]{"a.txt", "b.txt", "&.txt", "c.txt", "sub/keep.txt", "sub/skip",
+                "build/x", "sub/build/y", "skip/z", "cache/w"}) {
+            Files.createDirectories(root.resolve(name).getParent());
+            Files.createFile(root.resolve(name));
+        }
+
+        // A trailing '/' is ignored, '&&' in a bracket expression is no intersection,
+        // '**/' also matches the source directory and '/**' also matches the directory itself
+        ScanFilter filter = new ScanFilter()
+                .exclude("build/")
+                .exclude("[a&&b]*")
+                .exclude("**/skip")
+                .exclude("/cache/**");
+
+        ScanSession session = new ScanSession();
+        Directory scanned = new FileScanner(root.toAbsolutePath().toString()).setFilter(filter).setSession(session)
+                .scan();
+
+        Assertions.assertEquals(2, session.getDirectoriesVisited());
+        Assertions.assertEquals(8, session.getExcluded());
+        Assertions.assertEquals(Set.of("c.txt", "sub/keep.txt"), scanned.getAllDocuments().stream()
+                .map(d -> d.absolutePath)
+                .collect(Collectors.toSet()));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ScanFilter().exclude("/"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ScanFilter().exclude("[a"));
+    }
+
+    @Test
+    void sharedPathTest(@TempDir Path root) throws IOException {
+        final Logger logger = LoggerFactory.getLogger("sharedPathTest");
+        createTree(root, 4, 4, 20);
+
+        Directory scanned = new FileScanner(root.toAbsolutePath().toString()).scan();
+        for (Directory dir : scanned.getAllDirectories()) {
+            for (Document d : dir.documents) {
+                // Documents must share the path of their directory
+                Assertions.assertSame(dir.path, d.parentPath);
+                Assertions.assertEquals(dir.path.isEmpty() ? d.filename : dir.path + '/' + d.filename, d.absolutePath);
+            }
+        }
+
+        // Estimate the size of all distinct path strings, assuming compact strings and compressed oops
+        Set<String> strings = Collections.newSetFromMap(new IdentityHashMap<>());
+        long bytes = 0;
+        List<Document> documents = scanned.getAllDocuments();
+        for (Document d : documents) {
+            for (String s : new String[]{d.filename, d.absolutePath, d.parentPath}) {
+                if (strings.add(s)) bytes += 24 + (16 + s.length() + 7) / 8 * 8;
+            }
+        }
+
+        logger.info("Path strings use " + (bytes / documents.size()) + " bytes per document");
+    }
+
+    @Test
+    void skipVisitedTest(@TempDir Path root) throws IOException {
+        final String source = root.toAbsolutePath().toString();
+        createTree(root, 2, 2, 2);
+        Directory expected = new FileScanner(source).scan();
+
+        // Create a symbolic link loop, a second path to a directory and a hard link
+        Files.createSymbolicLink(root.resolve("d0/d0/loop"), root);
+        Files.createSymbolicLink(root.resolve("d1/link"), root.resolve("d0"));
+        Files.createLink(root.resolve("d1/d1/hard"), root.resolve("f0"));
+
+        for (int parallelism = 1; parallelism <= 2; parallelism *= 2) {
+            for (boolean useNio : new boolean[]{false, true}) {
+                ScanSession session = new ScanSession();
+                Directory scanned = new FileScanner(source)
+                        .setParallelism(parallelism)
+                        .setUseNio(useNio)
+                        .setSkipVisitedDirectories(true)
+                        .setSkipHardLinks(true)
+                        .setSession(session)
+                        .scan();
+
+                Assertions.assertEquals(expected.getAllDirectories().size(), scanned.getAllDirectories().size());
+                Assertions.assertEquals(expected.getAllDocuments().size(), scanned.getAllDocuments().size());
+                Assertions.assertEquals(3, session.getSkipped());
+            }
+        }
+    }
+
+    @Test
+    void duplicateFinderTest(@TempDir Path root) throws IOException {
+        final Path tree = Files.createDirectory(root.resolve("tree"));
+        final String source = tree.toAbsolutePath().toString();
+
+        // Three copies of a file, a file of the same size differing
+        // only in the middle and two copies of a small file
+        byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+        Files.write(tree.resolve("a"), data);
+        Files.write(tree.resolve("b"), data);
+        Files.write(Files.createDirectory(tree.resolve("sub")).resolve("c"), data);
+        data[data.length / 2]++;
+        Files.write(tree.resolve("d"), data);
+        Files.write(tree.resolve("e"), "content".getBytes());
+        Files.write(tree.resolve("f"), "content".getBytes());
+
+        try (TestDatabase database = TestDatabase.createManager(root, "duplicates")) {
+            DatabaseManager duplicatesManager = database.manager;
+            Assertions.assertTrue(duplicatesManager.persistDirectory(new FileScanner(source).scan(), source));
+
+            DuplicateFinder finder = new DuplicateFinder(source);
+            List<List<Document>> duplicates = duplicatesManager.findDuplicates(finder);
+            Assertions.assertNotNull(duplicates);
+            Assertions.assertEquals(2, duplicates.size());
+            Assertions.assertEquals(5, duplicates.stream().mapToInt(List::size).sum());
+            Assertions.assertEquals(6, finder.getNumFullyHashed());
+
+            // The hashes are stored, so no file must be hashed again
+            finder = new DuplicateFinder(source);
+            Assertions.assertEquals(2, duplicatesManager.findDuplicates(finder).size());
+            Assertions.assertEquals(0, finder.getNumPartiallyHashed());
+            Assertions.assertEquals(0, finder.getNumFullyHashed());
+        }
+    }
+
+    @Test
+    void streamingPersistTest(@TempDir Path root) throws IOException {
+        final Logger logger = LoggerFactory.getLogger("streamingPersistTest");
+        final Path tree = Files.createDirectory(root.resolve("tree"));
+        final String source = tree.toAbsolutePath().toString();
+        createTree(tree, 4, 4, 10);
+
+        try (TestDatabase database = TestDatabase.createManager(root, "streaming")) {
+            DatabaseManager streamingManager = database.manager;
+
+            long cur_time = System.currentTimeMillis();
+            Assertions.assertTrue(streamingManager.persistDirectoryStreaming(new FileScanner(source), source, 100, 16));
+            logger.info("Streaming scan and persist took " + (System.currentTimeMillis() - cur_time) + "ms");
+
+            Directory expected = new FileScanner(source).scan();
+            Directory persisted = streamingManager.getDirectory("");
+            Assertions.assertNotNull(persisted);
+            Assertions.assertEquals(expected.getAllDocuments().size(), persisted.getAllDocuments().size());
+            Assertions.assertEquals(expected.getAllDirectories().size(), persisted.getAllDirectories().size());
+        }
+    }
+
+    @Test
+    void incrementalScanTest(@TempDir Path root) throws IOException {
+        final Logger logger = LoggerFactory.getLogger("incrementalScanTest");
+        final Path tree = Files.createDirectory(root.resolve("tree"));
+        final String source = tree.toAbsolutePath().toString();
+        createTree(tree, 4, 3, 10);
+
+        try (TestDatabase database = TestDatabase.createManager(root, "incremental")) {
+            DatabaseManager incrementalManager = database.manager;
+
+            Directory initial = new FileScanner(source).setManifest(incrementalManager.getScanManifest()).scan();
+            Assertions.assertTrue(incrementalManager.synchronizeDirectoryIncremental(initial, source));
+
+            // Add and remove a document in one directory and remove a whole subtree
+            final Path changed = tree.resolve("d0").resolve("d1");
+            Files.createFile(changed.resolve("new"));
+            Files.delete(changed.resolve("f0"));
+            deleteTree(tree.resolve("d2"));
+
+            // Make sure the modification times changed, even on file systems with a coarse timestamp resolution
+            final FileTime time = FileTime.fromMillis(System.currentTimeMillis() + 60000);
+            Files.setLastModifiedTime(changed, time);
+            Files.setLastModifiedTime(tree, time);
+
+            long cur_time = System.currentTimeMillis();
+            Directory rescanned = new FileScanner(source).setManifest(incrementalManager.getScanManifest()).scan();
+            logger.info("Incremental scan took " + (System.currentTimeMillis() - cur_time) + "ms");
+            Assertions.assertEquals(2, rescanned.getAllDirectories().stream().filter(d -> !d.unchanged).count());
+
+            cur_time = System.currentTimeMillis();
+            Assertions.assertTrue(incrementalManager.synchronizeDirectoryIncremental(rescanned, source));
+            logger.info("Incremental synchronization took " + (System.currentTimeMillis() - cur_time) + "ms");
+
+            Directory expected = new FileScanner(source).scan();
+            Directory persisted = incrementalManager.getDirectory("");
+            Assertions.assertNotNull(persisted);
+            Assertions.assertEquals(expected.getAllDocuments().size(), persisted.getAllDocuments().size());
+            Assertions.assertEquals(expected.getAllDirectories().size(), persisted.getAllDirectories().size());
+            Assertions.assertEquals(expected.getAllDocuments().size(),
+                    incrementalManager.getNumDocumentsBy(DocumentFilter.createFilter()));
+        }
+    }
+
+    @Test
+    void directoryWatcherTest(@TempDir Path root) throws IOException, InterruptedException {
+        final Path tree = Files.createDirectory(root.resolve("tree"));
+        final String source = tree.toAbsolutePath().toString();
+        createTree(tree, 2, 3, 5);
+
+        try (TestDatabase database = TestDatabase.createManager(root, "watcher")) {
+            DatabaseManager watcherManager = database.manager;
+
+            FileScanner scanner = new FileScanner(source);
+            Directory scanned = scanner.scan();
+            Assertions.assertTrue(watcherManager.persistDirectory(scanned, source));
+
+            try (DirectoryWatcher watcher = new DirectoryWatcher(scanner, source, watcherManager, 100, 200)) {
+                watcher.start(scanned);
+
+                // Create a new directory containing a document and remove an existing document
+                Files.createFile(Files.createDirectory(tree.resolve("d0").resolve("new")).resolve("newFile"));
+                Files.delete(tree.resolve("d1").resolve("f0"));
+
+                // The number of documents doesn't change, so also wait for the new document
+                final long expected = new FileScanner(source).scan().getAllDocuments().size();
+                final DocumentFilter all = DocumentFilter.createFilter();
+                final DocumentFilter added = DocumentFilter.createFilter(new DirectoryFilter("d0/new"));
+                for (int i = 0; i < 100 && (watcherManager.getNumDocumentsBy(all) != expected ||
+                        watcherManager.getNumDocumentsBy(added) != 1); i++) {
+                    Thread.sleep(100);
+                }
+
+                Assertions.assertEquals(expected, watcherManager.getNumDocumentsBy(all));
+                Assertions.assertEquals(1, watcherManager.getDocumentsBy(DocumentFilter.createFilter(
+                        new DirectoryFilter("d0/new")), 0).size());
+            }
+        }
+    }
+
+    @Test
+    void directoryWatcherDeleteTest(@TempDir Path root) throws IOException, InterruptedException {
+        final Path tree = Files.createDirectory(root.resolve("tree"));
+        final String source = tree.toAbsolutePath().toString();
+        createTree(tree, 2, 3, 5);
+
+        try (TestDatabase database = TestDatabase.createManager(root, "delete")) {
+            DatabaseManager watcherManager = database.manager;
+
+            FileScanner scanner = new FileScanner(source);
+            Directory scanned = scanner.scan();
+            Assertions.assertTrue(watcherManager.persistDirectory(scanned, source));
+
+            // Tag a document which is deleted and a document in a directory which is deleted
+            final Tag tag = watcherManager.createTag("watched");
+            final List<Directory> toTag = new ArrayList<>();
+            for (Directory d : scanned.directories) {
+                if (d.name.equals("d1")) {
+                    toTag.add(d);
+                } else if (d.name.equals("d2")) {
+                    toTag.addAll(d.getAllDirectories());
+                }
+            }
+
+            for (Directory d : toTag) {
+                Document document = watcherManager.getDirectory(d.path).documents.stream()
+                        .filter(doc -> doc.filename.equals("f0"))
+                        .findFirst()
+                        .orElseThrow();
+                document.tags.add(tag);
+                watcherManager.persistDocument(document);
+            }
+
+            final DocumentFilter tagged = DocumentFilter.createFilter(new TagFilter("watched"));
+            Assertions.assertTrue(watcherManager.getNumDocumentsBy(tagged) > 1);
+
+            try (DirectoryWatcher watcher = new DirectoryWatcher(scanner, source, watcherManager, 100, 200)) {
+                watcher.start(scanned);
+
+                // Delete a tagged document and a directory containing tagged documents and subdirectories
+                Files.delete(tree.resolve("d1").resolve("f0"));
+                deleteTree(tree.resolve("d2"));
+
+                final long expected = new FileScanner(source).scan().getAllDocuments().size();
+                final DocumentFilter all = DocumentFilter.createFilter();
+                for (int i = 0; i < 100 && watcherManager.getNumDocumentsBy(all) != expected; i++) {
+                    Thread.sleep(100);
+                }
+
+                Assertions.assertEquals(expected, watcherManager.getNumDocumentsBy(all));
+                Assertions.assertEquals(0, watcherManager.getNumDocumentsBy(tagged));
+                Assertions.assertEquals(0, TestDBManager.countOrphanedRows(database.factory));
+            }
+        }
+    }
+
+    @Test
+    void differentialSyncTest(@TempDir Path root) throws IOException {
+        final Logger logger = LoggerFactory.getLogger("differentialSyncTest");
+        final Path tree = Files.createDirectory(root.resolve("tree"));
+        final String source = tree.toAbsolutePath().toString();
+        createTree(tree, 3, 3, 10);
+
+        try (TestDatabase database = TestDatabase.createManager(root, "sync")) {
+            DatabaseManager syncManager = database.manager;
+            EntityManager syncEntityManager = database.entityManager;
+            Assertions.assertTrue(syncManager.persistDirectory(new FileScanner(source).scan(), source));
+
+            // Tag a document which is not changed by the sync
+            final String keptPath = new FileScanner(source).scan().directories.stream()
+                    .filter(d -> d.name.equals("d0"))
+                    .findFirst()
+                    .orElseThrow()
+                    .path;
+            Document tagged = syncManager.getDirectory(keptPath).documents.stream()
+                    .filter(d -> d.filename.equals("f0"))
+                    .findFirst()
+                    .orElseThrow();
+            tagged.tags.add(syncManager.createTag("keep"));
+            syncManager.persistDocument(tagged);
+
+            // Add, remove and change documents and add and remove directories
+            final Path kept = tree.resolve("d0");
+            Files.createFile(kept.resolve("new"));
+            Files.delete(kept.resolve("f1"));
+            Files.write(kept.resolve("f2"), "changed".getBytes());
+            deleteTree(tree.resolve("d2"));
+            createTree(Files.createDirectory(tree.resolve("d3")), 1, 2, 3);
+
+            Directory rescanned = new FileScanner(source).scan();
+            long cur_time = System.currentTimeMillis();
+            Assertions.assertTrue(syncManager.synchronizeDirectory(rescanned, source));
+            logger.info("Differential synchronization took " + (System.currentTimeMillis() - cur_time) + "ms");
+
+            Directory persisted = syncManager.getDirectory("");
+            Assertions.assertNotNull(persisted);
+            Assertions.assertEquals(rescanned.getAllDocuments().size(), persisted.getAllDocuments().size());
+            Assertions.assertEquals(rescanned.getAllDirectories().size(), persisted.getAllDirectories().size());
+            Assertions.assertEquals(rescanned.getAllDocuments().size(),
+                    syncManager.getNumDocumentsBy(DocumentFilter.createFilter()));
+
+            // The tag must survive the sync and the changed document must be updated
+            List<Document> found = syncManager.getDocumentsBy(DocumentFilter.createFilter(new TagFilter("keep")), 0);
+            Assertions.assertEquals(1, found.size());
+            Assertions.assertEquals(tagged.absolutePath, found.get(0).absolutePath);
+            Assertions.assertEquals(Long.valueOf(7), syncManager.getDirectory(keptPath).documents.stream()
+                    .filter(d -> d.filename.equals("f2"))
+                    .findFirst()
+                    .orElseThrow()
+                    .fileSize);
+
+            // Documents and directories persisted before the scanned columns existed must be backfilled
+            syncEntityManager.getTransaction().begin();
+            syncEntityManager.createQuery("update Document set fileSize = null, lastModified = null").executeUpdate();
+            syncEntityManager.createQuery("update Directory set lastModified = null, numChildren = null, " +
+                    "fingerprint = null").executeUpdate();
+            syncEntityManager.getTransaction().commit();
+
+            Assertions.assertTrue(syncManager.synchronizeDirectory(new FileScanner(source).scan(), source));
+            Assertions.assertEquals(0L, syncEntityManager.createQuery("select count(d) from Document as d " +
+                    "where d.fileSize is null or d.lastModified is null", Long.class).getSingleResult());
+            Assertions.assertEquals(0L, syncEntityManager.createQuery("select count(d) from Directory as d " +
+                    "where d.lastModified is null or d.numChildren is null", Long.class).getSingleResult());
+            Assertions.assertEquals(Long.valueOf(7), syncManager.getDirectory(keptPath).documents.stream()
+                    .filter(d -> d.filename.equals("f2"))
+                    .findFirst()
+                    .orElseThrow()
+                    .fileSize);
+        }
+    }
+
     @Test
     void testSearch() {
         Assertions.assertTrue(manager.getDocumentsBy(DocumentFilter.createFilter(new FilenameFilter("a", false)), 0).size() > 0);
@@ -1,16 +1,21 @@
 import io.github.markusjx.database.DatabaseManager;
+import io.github.markusjx.database.filter.DocumentFilter;
+import io.github.markusjx.database.filter.filters.TagFilter;
 import io.github.markusjx.database.persistence.CustomPersistence;
 import io.github.markusjx.database.persistence.MariaDBProvider;
 import io.github.markusjx.database.types.Directory;
 import io.github.markusjx.database.types.Document;
+import io.github.markusjx.database.types.Tag;
 import io.github.markusjx.scanning.FileScanner;
 import org.hibernate.tool.schema.Action;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import java.nio.file.Path;
 import java.util.List;
 
 class TestMariaDBProvider {
@@ -37,4 +42,51 @@ class TestMariaDBProvider {
         Assertions.assertNotNull(source);
         Assertions.assertEquals(allDocuments.size(), source.getAllDocuments().size());
     }
+
+    @Test
+    void bulkInsertTest() {
+        TestDBManager.bulkInsert("mariaDBBulkInsertTest", manager, 1000);
+    }
+
+    @Benchmark
+    void bulkInsertBenchmark() {
+        TestDBManager.bulkInsert("mariaDBBulkInsertBenchmark", manager, 1000000);
+    }
+
+    @Test
+    void copyDatabaseTest(@TempDir Path root) {
+        final int NUM_DIRECTORIES = 10;
+        final int NUM_DOCUMENTS = 100;
+        Directory source = TestDBManager.generateImportTree(NUM_DIRECTORIES, NUM_DOCUMENTS);
+        for (Document d : source.directories.get(0).documents) {
+            d.tags.add(new Tag("copied"));
+        }
+
+        // Copy into a separate database, as the other tests write to the shared one
+        MariaDBProvider provider = new MariaDBProvider("127.0.0.1:3306/documents_copy?createDatabaseIfNotExist=true",
+                "root", "", Action.CREATE_DROP, false);
+        EntityManagerFactory factory = CustomPersistence.createEntityManagerFactory("documents", provider);
+        DatabaseManager copyManager = new DatabaseManager(factory.createEntityManager());
+
+        try (TestDatabase sourceDatabase = TestDatabase.createManager(root, "source");
+             TestDatabase targetDatabase = TestDatabase.createManager(root, "target")) {
+            Assertions.assertTrue(sourceDatabase.manager.importDirectory(source, "source", 1000));
+
+            // SQLite -> MariaDB -> SQLite
+            Assertions.assertTrue(sourceDatabase.manager.copyDatabaseTo(copyManager));
+            Assertions.assertTrue(copyManager.copyDatabaseTo(targetDatabase.manager));
+
+            for (DatabaseManager copied : new DatabaseManager[]{copyManager, targetDatabase.manager}) {
+                Assertions.assertEquals(NUM_DIRECTORIES * NUM_DOCUMENTS,
+                        copied.getNumDocumentsBy(DocumentFilter.createFilter()));
+                Assertions.assertEquals(NUM_DOCUMENTS,
+                        copied.getNumDocumentsBy(DocumentFilter.createFilter(new TagFilter("copied"))));
+                Assertions.assertEquals(NUM_DIRECTORIES, copied.getDirectory("").directories.size());
+                Assertions.assertEquals(NUM_DOCUMENTS, copied.getDirectory("d3").documents.size());
+            }
+        } finally {
+            copyManager.close();
+            factory.close();
+        }
+    }
 }